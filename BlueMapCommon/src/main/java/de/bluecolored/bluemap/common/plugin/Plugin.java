@@ -306,12 +306,29 @@ public void unload() {
 				regionFileWatchServices = null;
 
 				//stop services
-				if (renderManager != null) renderManager.stop();
+				if (renderManager != null) {
+					renderManager.stop();
+
+					// wait for the render-threads, so they don't write to the maps after they are closed
+					try {
+						renderManager.awaitShutdown();
+					} catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+						Logger.global.logWarning("Interrupted while waiting for the render-threads to stop!");
+					}
+				}
 				renderManager = null;
 
 				if (webServer != null) webServer.close();
 				webServer = null;
 
+				//close maps
+				if (maps != null) {
+					for (BmMap map : maps.values()) {
+						map.close();
+					}
+				}
+
 				//clear resources and configs
 				blueMap = null;
 				worlds = null;
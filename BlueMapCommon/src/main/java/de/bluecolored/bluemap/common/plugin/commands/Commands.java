@@ -767,7 +767,9 @@ public int updateCommand(CommandContext<S> context, boolean force) {
 
 					if (force) {
 						MapRenderState state = map.getRenderState();
-						updateTask.getRegions().forEach(region -> state.setRenderTime(region, -1));
+						for (Vector2i region : updateTask.getRegions()) {
+							state.resetRegion(region);
+						}
 					}
 
 					source.sendMessage(Text.of(TextColor.GREEN, "Created new Update-Task for map '" + map.getId() + "' ", TextColor.GRAY, "(" + updateTask.getRegions().size() + " regions, ~" + updateTask.getRegions().size() * 1024L + " chunks)"));
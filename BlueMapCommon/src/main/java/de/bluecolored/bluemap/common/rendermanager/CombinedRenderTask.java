@@ -103,6 +103,28 @@ public boolean contains(RenderTask task) {
 		return false;
 	}
 
+	@Override
+	public RenderTask getFollowUpTask() {
+		List<RenderTask> followUpTasks = new ArrayList<>();
+		for (T task : tasks) {
+			RenderTask followUpTask = task.getFollowUpTask();
+			if (followUpTask != null) followUpTasks.add(followUpTask);
+		}
+
+		if (followUpTasks.isEmpty()) return null;
+		if (followUpTasks.size() == 1) return followUpTasks.get(0);
+		return new CombinedRenderTask<>(description, followUpTasks);
+	}
+
+	@Override
+	public long getDueTime() {
+		long dueTime = Long.MAX_VALUE;
+		for (T task : tasks) {
+			dueTime = Math.min(dueTime, task.getDueTime());
+		}
+		return tasks.isEmpty() ? 0 : dueTime;
+	}
+
 	@Override
 	public String getDescription() {
 		//return description + " (" + (this.currentTaskIndex + 1) + "/" + tasks.size() + ")";
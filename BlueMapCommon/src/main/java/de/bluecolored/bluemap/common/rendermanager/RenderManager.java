@@ -45,6 +45,9 @@ public class RenderManager {
 	private ProgressTracker progressTracker;
 	private volatile boolean newTask;
 
+	private Timer followUpTimer;
+	@DebugDump private int delayedFollowUpTaskCount;
+
 	@DebugDump private final LinkedList<RenderTask> renderTasks;
 
 	public RenderManager() {
@@ -58,6 +61,9 @@ public RenderManager() {
 		this.progressTracker = null;
 		this.newTask = true;
 
+		this.followUpTimer = null;
+		this.delayedFollowUpTaskCount = 0;
+
 		this.renderTasks = new LinkedList<>();
 	}
 
@@ -73,6 +79,12 @@ public void start(int threadCount) throws IllegalStateException {
 			progressTracker = new ProgressTracker(5000, 12); // 5-sec steps over one minute
 			this.newTask = true;
 
+			synchronized (this.renderTasks) {
+				if (followUpTimer != null) followUpTimer.cancel();
+				followUpTimer = new Timer("BlueMap-RenderManager-" + id + "-FollowUpTimer", true);
+				delayedFollowUpTaskCount = 0;
+			}
+
 			this.running = true;
 
 			for (int i = 0; i < threadCount; i++) {
@@ -88,6 +100,14 @@ public void stop() {
 			this.running = false;
 			for (WorkerThread worker : workerThreads) worker.interrupt();
 			if (progressTracker != null) progressTracker.cancel();
+
+			// delayed follow-up tasks are dropped, their work is redone by the next update
+			synchronized (this.renderTasks) {
+				if (followUpTimer != null) followUpTimer.cancel();
+				followUpTimer = null;
+				delayedFollowUpTaskCount = 0;
+				this.renderTasks.notifyAll();
+			}
 		}
 	}
 
@@ -103,7 +123,7 @@ public boolean isRunning() {
 
 	public void awaitIdle() throws InterruptedException {
 		synchronized (this.renderTasks) {
-			while (!this.renderTasks.isEmpty())
+			while (!this.renderTasks.isEmpty() || this.delayedFollowUpTaskCount > 0)
 				this.renderTasks.wait(10000);
 		}
 	}
@@ -276,6 +296,7 @@ private void doWork() throws Exception {
 			if (!task.hasMoreWork()) {
 				if (busyCount.get() <= 0) {
 					this.renderTasks.removeFirst();
+					scheduleFollowUpTask(task);
 					this.renderTasks.notifyAll();
 
 					this.newTask = true;
@@ -301,6 +322,51 @@ private void doWork() throws Exception {
 		}
 	}
 
+	/**
+	 * Schedules the {@link RenderTask#getFollowUpTask() follow-up task} of a finished task at the end of the queue,
+	 * once it is due.
+	 */
+	private void scheduleFollowUpTask(RenderTask finishedTask) {
+		RenderTask followUpTask = finishedTask.getFollowUpTask();
+		if (followUpTask == null) return;
+
+		synchronized (this.renderTasks) {
+			long delay = followUpTask.getDueTime() - System.currentTimeMillis();
+			if (delay <= 0) {
+				addFollowUpTask(followUpTask);
+				return;
+			}
+
+			Timer timer = followUpTimer;
+			if (timer == null) return;
+
+			delayedFollowUpTaskCount++;
+			timer.schedule(new TimerTask() {
+				@Override
+				public void run() {
+					synchronized (RenderManager.this.renderTasks) {
+						if (followUpTimer != timer) return; // the render-manager has been stopped in the meantime
+
+						delayedFollowUpTaskCount--;
+						addFollowUpTask(followUpTask);
+					}
+				}
+			}, delay);
+		}
+	}
+
+	private void addFollowUpTask(RenderTask followUpTask) {
+		synchronized (this.renderTasks) {
+			// other scheduled tasks that include the follow-up task are not replaced (as scheduleRenderTask would do),
+			// they might include more work
+			if (!containsRenderTask(followUpTask)) {
+				renderTasks.addLast(followUpTask);
+			}
+
+			renderTasks.notifyAll();
+		}
+	}
+
 	public class WorkerThread extends Thread {
 
 		private final int id;
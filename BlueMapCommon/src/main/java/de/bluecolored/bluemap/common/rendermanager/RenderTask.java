@@ -53,6 +53,24 @@ default boolean contains(RenderTask task) {
 		return equals(task);
 	}
 
+	/**
+	 * Returns a task with the work that this task postponed (e.g. tiles that should be rendered again later), or
+	 * <code>null</code> if there is none.<br>
+	 * The {@link RenderManager} schedules the follow-up task at the end of its queue once this task has no more work,
+	 * but not before the {@link #getDueTime() due-time} of the follow-up task.
+	 */
+	default RenderTask getFollowUpTask() {
+		return null;
+	}
+
+	/**
+	 * The time (in milliseconds since the epoch) before which this task has no work to do, or <code>0</code> if it can
+	 * start right away.
+	 */
+	default long getDueTime() {
+		return 0;
+	}
+
 	String getDescription();
 
 }
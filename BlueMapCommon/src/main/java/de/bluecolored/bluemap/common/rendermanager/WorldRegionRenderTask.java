@@ -27,23 +27,47 @@
 import com.flowpowered.math.vector.Vector2i;
 import com.flowpowered.math.vector.Vector2l;
 import de.bluecolored.bluemap.core.debug.DebugDump;
+import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.map.BmMap;
+import de.bluecolored.bluemap.core.map.MapRenderState;
 import de.bluecolored.bluemap.core.world.Grid;
+import de.bluecolored.bluemap.core.world.PinnedChunks;
 import de.bluecolored.bluemap.core.world.Region;
+import de.bluecolored.bluemap.core.world.World;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.stream.Collectors;
 
 public class WorldRegionRenderTask implements RenderTask {
 
+	/**
+	 * How often a tile is rendered again because chunks it needs failed to load, and the delay before the first retry
+	 * (doubled for each further retry)
+	 */
+	private static final int MAX_TILE_RETRIES = 3;
+	private static final long TILE_RETRY_DELAY_MILLIS = 1000;
+
 	@DebugDump private final BmMap map;
 	@DebugDump private final Vector2i worldRegion;
 	@DebugDump private final boolean force;
 
 	private Deque<Vector2i> tiles;
+	private PinnedChunks pinnedChunks;
+	private Vector2i regionChunkMin;
+	private int regionChunksX, regionChunksZ;
+	private long[] chunkFingerprints;
+	private int[] chunkPendingTiles;
+	private Map<Vector2i, int[]> tileChunks;
+	private boolean[] chunkLoadFailed;
+	private PriorityQueue<TileRetry> tileRetries;
+	@DebugDump private int tileRetryCount;
+	@DebugDump private int failedTileCount;
 	@DebugDump private int tileCount;
+	@DebugDump private int unchangedChunkCount;
 	@DebugDump private long startTime;
 
+	@DebugDump private boolean initializing;
 	@DebugDump private volatile int atWork;
 	@DebugDump private volatile boolean cancelled;
 
@@ -57,59 +81,206 @@ public WorldRegionRenderTask(BmMap map, Vector2i worldRegion, boolean force) {
 		this.force = force;
 
 		this.tiles = null;
+		this.pinnedChunks = null;
+		this.regionChunkMin = null;
+		this.chunkFingerprints = null;
+		this.chunkPendingTiles = null;
+		this.tileChunks = null;
+		this.chunkLoadFailed = null;
+		this.tileRetries = new PriorityQueue<>(Comparator.comparingLong(retry -> retry.due));
+		this.tileRetryCount = 0;
+		this.failedTileCount = 0;
 		this.tileCount = -1;
+		this.unchangedChunkCount = 0;
 		this.startTime = -1;
 
+		this.initializing = false;
 		this.atWork = 0;
 		this.cancelled = false;
 	}
 
-	private synchronized void init() {
+	/**
+	 * Collects the tiles that need to be rendered and starts loading their chunks.<br>
+	 * This loads all changed chunks to compare their fingerprints, so it is not synchronized: other threads only wait
+	 * for it without holding the lock of this task. The results are published to the other threads at the end by
+	 * setting {@link #tiles}.
+	 */
+	private void init() throws IOException {
 		Set<Vector2l> tileSet = new HashSet<>();
 		startTime = System.currentTimeMillis();
 
 		//Logger.global.logInfo("Starting: " + worldRegion);
 
-		long changesSince = 0;
-		if (!force) changesSince = map.getRenderState().getRenderTime(worldRegion);
-
-		Region region = map.getWorld().getRegion(worldRegion.getX(), worldRegion.getY());
-		Collection<Vector2i> chunks = region.listChunks(changesSince);
+		World world = map.getWorld();
+		MapRenderState renderState = map.getRenderState();
 
 		Grid tileGrid = map.getHiresModelManager().getTileGrid();
-		Grid chunkGrid = map.getWorld().getChunkGrid();
+		Grid chunkGrid = world.getChunkGrid();
+		Grid regionGrid = world.getRegionGrid();
+
+		// the render-state is stored per chunk, indexed by the region-local chunk-position
+		regionChunkMin = regionGrid.getCellMin(worldRegion, chunkGrid);
+		Vector2i regionChunkMax = regionGrid.getCellMax(worldRegion, chunkGrid);
+		regionChunksX = regionChunkMax.getX() - regionChunkMin.getX() + 1;
+		regionChunksZ = regionChunkMax.getY() - regionChunkMin.getY() + 1;
+
+		long[] renderTimes = renderState.getChunkRenderTimes(worldRegion);
+		Region region = world.getRegion(worldRegion.getX(), worldRegion.getY());
+		Collection<Vector2i> chunks = region.listChunks(chunk -> {
+			if (force) return 0;
+			int index = getChunkIndex(chunk);
+			return index >= 0 ? renderTimes[index] : 0;
+		});
+
+		// chunks are often saved without any visual change, so we compare their fingerprints
+		// with the ones from the last render to only render tiles with actually changed chunks
+		long[] fingerprints = renderState.getChunkFingerprints(worldRegion);
+		this.chunkFingerprints = new long[fingerprints.length];
+
+		// load the listed chunks in parallel, we need all of them to get their fingerprints
+		// (but not the chunks around them, unchanged tiles don't need those)
+		PinnedChunks listedChunks = world.pinChunksWithFingerprints(chunks);
+		try {
+			Map<Vector2l, List<Integer>> tileChunkIndices = new HashMap<>();
+			this.chunkPendingTiles = new int[fingerprints.length];
+			this.chunkLoadFailed = new boolean[fingerprints.length];
+			for (Vector2i chunk : chunks) {
+				int index = getChunkIndex(chunk);
+				if (index >= 0) {
+					long fingerprint = world.getChunk(chunk.getX(), chunk.getY()).getFingerprint();
+					chunkFingerprints[index] = fingerprint;
+
+					if (!force && fingerprint != 0 && fingerprint == fingerprints[index]) {
+						renderState.setChunkRenderState(worldRegion, index, startTime, fingerprint);
+						unchangedChunkCount++;
+						continue;
+					}
+				}
+
+				Vector2i tileMin = chunkGrid.getCellMin(chunk, tileGrid);
+				Vector2i tileMax = chunkGrid.getCellMax(chunk, tileGrid);
 
-		for (Vector2i chunk : chunks) {
-			Vector2i tileMin = chunkGrid.getCellMin(chunk, tileGrid);
-			Vector2i tileMax = chunkGrid.getCellMax(chunk, tileGrid);
+				for (int x = tileMin.getX(); x <= tileMax.getX(); x++) {
+					for (int z = tileMin.getY(); z <= tileMax.getY(); z++) {
+						Vector2l tile = new Vector2l(x, z);
+						tileSet.add(tile);
 
-			for (int x = tileMin.getX(); x <= tileMax.getX(); x++) {
-				for (int z = tileMin.getY(); z <= tileMax.getY(); z++) {
-					tileSet.add(new Vector2l(x, z));
+						if (index >= 0) {
+							tileChunkIndices.computeIfAbsent(tile, t -> new ArrayList<>(4)).add(index);
+							chunkPendingTiles[index]++;
+						}
+					}
 				}
 			}
-		}
 
-		this.tileCount = tileSet.size();
-		this.tiles = tileSet.stream()
-				.sorted(WorldRegionRenderTask::compareVec2L) //sort with longs to avoid overflow (comparison uses distanceSquared)
-				.map(Vector2l::toInt) // back to ints
-				.collect(Collectors.toCollection(ArrayDeque::new));
+			Deque<Vector2i> tiles = tileSet.stream()
+					.sorted(WorldRegionRenderTask::compareVec2L) //sort with longs to avoid overflow (comparison uses distanceSquared)
+					.map(Vector2l::toInt) // back to ints
+					.collect(Collectors.toCollection(ArrayDeque::new));
+
+			// remember which chunks are finished with each tile, so we can checkpoint the progress chunk by chunk
+			this.tileChunks = new HashMap<>(tileChunkIndices.size());
+			tileChunkIndices.forEach((tile, indices) -> this.tileChunks.put(tile.toInt(), indices.stream().mapToInt(Integer::intValue).toArray()));
+
+			if (tiles.isEmpty()) {
+				synchronized (this) {
+					this.tileCount = 0;
+					this.tiles = tiles;
+					this.initializing = false;
+					if (!cancelled) complete();
+					this.notifyAll();
+				}
+				return;
+			}
+
+			// start loading all chunks needed for the tiles in parallel and keep them until we are done
+			Set<Vector2i> tileChunks = new LinkedHashSet<>();
+			for (Vector2i tile : tiles) {
+				Vector2i chunkMin = tileGrid.getCellMin(tile, chunkGrid);
+				Vector2i chunkMax = tileGrid.getCellMax(tile, chunkGrid);
 
-		if (tiles.isEmpty()) complete();
+				for (int x = chunkMin.getX(); x <= chunkMax.getX(); x++) {
+					for (int z = chunkMin.getY(); z <= chunkMax.getY(); z++) {
+						tileChunks.add(new Vector2i(x, z));
+					}
+				}
+			}
+			PinnedChunks pinnedChunks = world.pinChunks(tileChunks);
+
+			synchronized (this) {
+				this.tileCount = tiles.size();
+				this.tiles = tiles;
+				this.initializing = false;
+
+				if (cancelled) {
+					this.tiles.clear();
+					pinnedChunks.release();
+				} else {
+					this.pinnedChunks = pinnedChunks;
+				}
+
+				this.notifyAll();
+			}
+		} finally {
+			// released after the tile-chunks are pinned, so the chunks they share stay loaded
+			listedChunks.release();
+		}
 	}
 
 	@Override
-	public void doWork() {
+	public void doWork() throws IOException {
 		if (cancelled) return;
 
 		Vector2i tile;
+		int attempt;
 
+		boolean initialize = false;
 		synchronized (this) {
-			if (tiles == null) init();
-			if (tiles.isEmpty()) return;
+			if (tiles == null) {
+				if (!initializing) {
+					initializing = true;
+					initialize = true;
+				} else {
+					// another thread is collecting the tiles, wait for it
+					try {
+						while (initializing && !cancelled) this.wait();
+					} catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+					}
+					return;
+				}
+			}
+		}
 
-			tile = tiles.pollFirst();
+		if (initialize) {
+			try {
+				init();
+			} finally {
+				synchronized (this) {
+					if (initializing) {
+						// init failed, let the next call try again
+						initializing = false;
+						this.notifyAll();
+					}
+				}
+			}
+			return;
+		}
+
+		synchronized (this) {
+			if (!tiles.isEmpty()) {
+				tile = tiles.pollFirst();
+				attempt = 0;
+			} else {
+				// only tiles waiting for a retry are left, if none of them is due yet the render-manager continues with
+				// other tasks and schedules this task again later (see getFollowUpTask())
+				TileRetry retry = tileRetries.peek();
+				if (retry == null || retry.due > System.currentTimeMillis()) return;
+
+				tileRetries.poll();
+				tile = retry.tile;
+				attempt = retry.attempt;
+			}
 
 			this.atWork++;
 		}
@@ -120,21 +291,130 @@ public void doWork() {
 		synchronized (this) {
 			this.atWork--;
 
+			boolean failed = hasFailedChunks(tile);
+			if (failed && attempt < MAX_TILE_RETRIES && !cancelled) {
+				// render the tile again later, the chunks might have been written by the server at the same time
+				long delay = TILE_RETRY_DELAY_MILLIS << attempt;
+				tileRetries.add(new TileRetry(tile, attempt + 1, System.currentTimeMillis() + delay));
+				tileRetryCount++;
+			} else {
+				if (failed) {
+					// give up for now, but make sure the chunks of this tile are rendered again on the next update
+					failedTileCount++;
+					markChunksLoadFailed(tile);
+				}
+
+				checkpoint(tile);
+			}
+
 			if (atWork <= 0 && tiles.isEmpty() && !cancelled) {
-				complete();
+				if (tileRetries.isEmpty()) {
+					complete();
+				} else {
+					// the pinned chunks are not kept while waiting for the retries, they only need a few chunks
+					releaseChunks();
+				}
+			}
+
+			this.notifyAll();
+		}
+	}
+
+	private boolean hasFailedChunks(Vector2i tile) {
+		World world = map.getWorld();
+		Grid tileGrid = map.getHiresModelManager().getTileGrid();
+		Grid chunkGrid = world.getChunkGrid();
+
+		// the blocks at the edges of the tile also need the neighboring chunks (e.g. for culling, light and biome-blending)
+		Vector2i chunkMin = tileGrid.getCellMin(tile, chunkGrid).sub(1, 1);
+		Vector2i chunkMax = tileGrid.getCellMax(tile, chunkGrid).add(1, 1);
+		for (int x = chunkMin.getX(); x <= chunkMax.getX(); x++) {
+			for (int z = chunkMin.getY(); z <= chunkMax.getY(); z++) {
+				if (world.isChunkLoadFailed(x, z)) return true;
+			}
+		}
+
+		return false;
+	}
+
+	private void markChunksLoadFailed(Vector2i tile) {
+		int[] indices = tileChunks.get(tile);
+		if (indices == null) return;
+
+		for (int index : indices) {
+			chunkLoadFailed[index] = true;
+		}
+	}
+
+	/**
+	 * Saves the render-state of all chunks that have no more tiles left to render after this tile is done,
+	 * so a cancelled or interrupted render continues with the remaining chunks next time.
+	 */
+	private void checkpoint(Vector2i finishedTile) {
+		int[] indices = tileChunks.get(finishedTile);
+		if (indices == null) return;
+
+		for (int index : indices) {
+			if (--chunkPendingTiles[index] > 0) continue;
+			if (chunkLoadFailed[index]) continue;
+
+			try {
+				map.getRenderState().setChunkRenderState(worldRegion, index, startTime, chunkFingerprints[index]);
+			} catch (IOException ex) {
+				Logger.global.noFloodWarning("rstate-checkpoint-" + map.getId(), "Failed to save render-state for map '" + map.getId() + "': " + ex);
 			}
 		}
 	}
 
 	private void complete() {
-		map.getRenderState().setRenderTime(worldRegion, startTime);
+		try {
+			// all chunks that have not been listed were unchanged, so they are now up to date as well
+			MapRenderState renderState = map.getRenderState();
+			renderState.setRenderTime(worldRegion, startTime);
+
+			for (int index = 0; index < chunkLoadFailed.length; index++) {
+				if (chunkLoadFailed[index]) renderState.setChunkRenderState(worldRegion, index, -1, 0);
+			}
+		} catch (IOException ex) {
+			Logger.global.noFloodWarning("rstate-checkpoint-" + map.getId(), "Failed to save render-state for map '" + map.getId() + "': " + ex);
+		}
+		releaseChunks();
 
 		//Logger.global.logInfo("Done with: " + worldRegion);
 	}
 
+	private int getChunkIndex(Vector2i chunk) {
+		int localX = chunk.getX() - regionChunkMin.getX();
+		int localZ = chunk.getY() - regionChunkMin.getY();
+		if (localX < 0 || localX >= regionChunksX || localZ < 0 || localZ >= regionChunksZ) return -1;
+		return localX * regionChunksZ + localZ;
+	}
+
 	@Override
 	public synchronized boolean hasMoreWork() {
-		return !cancelled && (tiles == null || !tiles.isEmpty());
+		return !cancelled && (tiles == null || !tiles.isEmpty() || isRetryDue());
+	}
+
+	private boolean isRetryDue() {
+		TileRetry retry = tileRetries.peek();
+		return retry != null && retry.due <= System.currentTimeMillis();
+	}
+
+	/**
+	 * If tiles are waiting to be rendered again later, this task continues with them as its own follow-up task
+	 */
+	@Override
+	public synchronized RenderTask getFollowUpTask() {
+		if (cancelled || tileRetries.isEmpty()) return null;
+
+		releaseChunks();
+		return this;
+	}
+
+	@Override
+	public synchronized long getDueTime() {
+		TileRetry retry = tileRetries.peek();
+		return retry != null ? retry.due : 0;
 	}
 
 	@Override
@@ -142,7 +422,7 @@ public double estimateProgress() {
 		if (tiles == null) return 0;
 		if (tileCount == 0) return 1;
 
-		double remainingTiles = tiles.size();
+		double remainingTiles = tiles.size() + tileRetries.size();
 		return 1 - (remainingTiles / this.tileCount);
 	}
 
@@ -152,9 +432,19 @@ public void cancel() {
 
 		synchronized (this) {
 			if (tiles != null) this.tiles.clear();
+			this.tileRetries.clear();
+			releaseChunks();
+			this.notifyAll();
 		}
 	}
 
+	private synchronized void releaseChunks() {
+		if (pinnedChunks == null) return;
+
+		pinnedChunks.release();
+		pinnedChunks = null;
+	}
+
 	public BmMap getMap() {
 		return map;
 	}
@@ -194,6 +484,20 @@ public static Comparator<WorldRegionRenderTask> defaultComparator(final Vector2i
 		};
 	}
 
+	private static class TileRetry {
+
+		private final Vector2i tile;
+		private final int attempt;
+		private final long due;
+
+		private TileRetry(Vector2i tile, int attempt, long due) {
+			this.tile = tile;
+			this.attempt = attempt;
+			this.due = due;
+		}
+
+	}
+
 	/**
 	 * Comparison method that doesn't overflow that easily
 	 */
@@ -0,0 +1,99 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.config;
+
+import de.bluecolored.bluemap.core.BlueMap;
+import de.bluecolored.bluemap.core.logger.Logger;
+import org.spongepowered.configurate.ConfigurationNode;
+import org.spongepowered.configurate.loader.ConfigurationLoader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Collects changes that should be auto-populated into a config-file and writes them in batches on the {@link BlueMap#THREAD_POOL}.<br>
+ * This way the (render-) threads that discover a missing mapping don't have to load and save the whole config-file themselves.
+ */
+class AutopopulationWriter {
+
+	private final ConfigurationLoader<? extends ConfigurationNode> loader;
+	private final String name;
+
+	private final Queue<NodeUpdate> pending;
+	private final AtomicBoolean flushScheduled;
+
+	AutopopulationWriter(ConfigurationLoader<? extends ConfigurationNode> loader, String name) {
+		this.loader = loader;
+		this.name = name;
+
+		this.pending = new ConcurrentLinkedQueue<>();
+		this.flushScheduled = new AtomicBoolean(false);
+	}
+
+	/**
+	 * Queues the update to be written to the config-file with the next batch
+	 */
+	void write(NodeUpdate update) {
+		pending.add(update);
+
+		if (flushScheduled.compareAndSet(false, true)) {
+			BlueMap.THREAD_POOL.execute(this::flush);
+		}
+	}
+
+	/**
+	 * Writes all pending updates to the config-file
+	 */
+	void flush() {
+		flushScheduled.set(false);
+
+		List<NodeUpdate> batch = new ArrayList<>();
+		NodeUpdate update;
+		while ((update = pending.poll()) != null) batch.add(update);
+		if (batch.isEmpty()) return;
+
+		synchronized (loader) {
+			try {
+				ConfigurationNode node = loader.load();
+				for (NodeUpdate u : batch) u.apply(node);
+				loader.save(node);
+			} catch (IOException ex) {
+				Logger.global.noFloodError(name + "-autopopulate-ioex", "Failed to auto-populate " + name + "!", ex);
+			}
+		}
+	}
+
+	@FunctionalInterface
+	interface NodeUpdate {
+
+		void apply(ConfigurationNode node) throws IOException;
+
+	}
+
+}
@@ -24,62 +24,93 @@
  */
 package de.bluecolored.bluemap.core.config;
 
-import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.mca.mapping.BiomeMapper;
 import de.bluecolored.bluemap.core.world.Biome;
 import org.spongepowered.configurate.ConfigurationNode;
 import org.spongepowered.configurate.loader.ConfigurationLoader;
 
-import java.io.IOException;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class BiomeConfig implements BiomeMapper {
 
-	private final ConfigurationLoader<? extends ConfigurationNode> autopoulationConfigLoader;
-	private final Map<Integer, Biome> biomes;
+	/**
+	 * Biomes with a numeral-id below this are stored in the array, others (e.g. from corrupted chunks or mods using huge
+	 * ids) in a map, so a single huge id can not grow the array to an arbitrary size
+	 */
+	private static final int MAX_ARRAY_ID = 1024;
+
+	private final AutopopulationWriter autopopulationWriter;
+
+	/*
+	 * Copy-on-write: lookups are plain (lock-free) array-reads and only a missing biome copies the array
+	 * (guarded by the monitor of this config) and publishes the copy.
+	 */
+	private volatile Biome[] biomes; // indexed by numeral-id
+	private final Map<Integer, Biome> otherBiomes; // biomes with a numeral-id outside of the array-bounds
 	
 	public BiomeConfig(ConfigurationNode node) {
 		this(node, null);
 	}
 
 	public BiomeConfig(ConfigurationNode node, ConfigurationLoader<? extends ConfigurationNode> autopoulationConfigLoader) {
-		this.autopoulationConfigLoader = autopoulationConfigLoader;
+		this.autopopulationWriter = autopoulationConfigLoader != null ? new AutopopulationWriter(autopoulationConfigLoader, "BiomeConfig") : null;
 		
-		biomes = new ConcurrentHashMap<>(200, 0.5f, 8);
+		Biome[] biomes = new Biome[256];
+		this.otherBiomes = new ConcurrentHashMap<>();
 
 		for (Entry<Object, ? extends ConfigurationNode> e : node.childrenMap().entrySet()){
 			String id = e.getKey().toString();
 			Biome biome = Biome.create(id, e.getValue());
-			biomes.put(biome.getNumeralId(), biome);
+
+			int numeralId = biome.getNumeralId();
+			if (numeralId < 0 || numeralId >= MAX_ARRAY_ID) {
+				otherBiomes.put(numeralId, biome);
+				continue;
+			}
+
+			if (numeralId >= biomes.length) biomes = Arrays.copyOf(biomes, Math.max(numeralId + 1, biomes.length * 2));
+			biomes[numeralId] = biome;
 		}
-		
+
+		this.biomes = biomes;
 	}
 	
 	@Override
 	public Biome get(int id) {
-		Biome biome = biomes.get(id);
-		
-		if (biome == null) {
-			if (autopoulationConfigLoader != null) {
-				biomes.put(id, Biome.DEFAULT);
-				
-				synchronized (autopoulationConfigLoader) {
-					try {
-						ConfigurationNode node = autopoulationConfigLoader.load();
-						node.node("unknown:" + id).node("id").set(id);
-						autopoulationConfigLoader.save(node);
-					} catch (IOException ex) {
-						Logger.global.noFloodError("biomeconf-autopopulate-ioex", "Failed to auto-populate BiomeConfig!", ex);
-					}
-				}
-			}
-			
-			return Biome.DEFAULT;
+		if (id < 0 || id >= MAX_ARRAY_ID) {
+			Biome biome = otherBiomes.get(id);
+			if (biome != null) return biome;
+			return autopopulate(id);
 		}
-		
-		return biome;
+
+		Biome[] biomes = this.biomes;
+		if (id < biomes.length) {
+			Biome biome = biomes[id];
+			if (biome != null) return biome;
+		}
+
+		return autopopulate(id);
+	}
+
+	private synchronized Biome autopopulate(int id) {
+		if (id < 0 || id >= MAX_ARRAY_ID) {
+			Biome biome = otherBiomes.putIfAbsent(id, Biome.DEFAULT);
+			if (biome != null) return biome;
+		} else {
+			Biome[] biomes = this.biomes;
+			if (id < biomes.length && biomes[id] != null) return biomes[id];
+
+			biomes = Arrays.copyOf(biomes, Math.max(id + 1, biomes.length));
+			biomes[id] = Biome.DEFAULT;
+			this.biomes = biomes;
+		}
+
+		if (autopopulationWriter != null) autopopulationWriter.write(node -> node.node("unknown:" + id).node("id").set(id));
+
+		return Biome.DEFAULT;
 	}
 	
 }
@@ -27,34 +27,37 @@
 import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.mca.mapping.BlockIdMapper;
 import de.bluecolored.bluemap.core.world.BlockState;
+import de.bluecolored.bluemap.core.world.BlockStateRegistry;
 import org.spongepowered.configurate.ConfigurationNode;
 import org.spongepowered.configurate.loader.ConfigurationLoader;
 
-import java.io.IOException;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class BlockIdConfig implements BlockIdMapper {
 
-	private final ConfigurationLoader<? extends ConfigurationNode> autopoulationConfigLoader;
-	private final Map<BlockNumeralIDMeta, BlockState> numeralMappings;
-	private final Map<BlockIDMeta, BlockState> idMappings;
+	private static final int MAX_NUMERAL_ID = 4095; // 12 bits (8 bits block-id + 4 bits "add")
+	private static final int META_COUNT = 16;
 
-	private final ReentrantReadWriteLock lock;
+	private final AutopopulationWriter autopopulationWriter;
+
+	/*
+	 * Both mappings are copy-on-write: lookups are plain (lock-free) array-reads and only a missing mapping
+	 * copies the array (guarded by the monitor of this config) and publishes the copy.
+	 */
+	private volatile BlockState[] numeralMappings; // indexed by (numeralId << 4 | meta)
+	private final Map<String, BlockState[]> idMappings; // values indexed by meta
 
 	public BlockIdConfig(ConfigurationNode node) {
 		this(node, null);
 	}
 	
 	public BlockIdConfig(ConfigurationNode node, ConfigurationLoader<? extends ConfigurationNode> autopoulationConfigLoader) {
-		this.autopoulationConfigLoader = autopoulationConfigLoader;
+		this.autopopulationWriter = autopoulationConfigLoader != null ? new AutopopulationWriter(autopoulationConfigLoader, "BlockIdConfig") : null;
 		
-		this.numeralMappings = new ConcurrentHashMap<>(200, 0.5f, 8);
+		BlockState[] numeralMappings = new BlockState[(MAX_NUMERAL_ID + 1) * META_COUNT];
 		this.idMappings = new ConcurrentHashMap<>(200, 0.5f, 8);
-
-		this.lock = new ReentrantReadWriteLock();
 		
 		for (Entry<Object, ? extends ConfigurationNode> e : node.childrenMap().entrySet()){
 			String key = e.getKey().toString();
@@ -76,176 +79,102 @@ public BlockIdConfig(ConfigurationNode node, ConfigurationLoader<? extends Confi
 					blockNumeralId = -1;
 				}
 				int blockMeta = Integer.parseInt(key.substring(splitIndex + 1));
-				BlockState state = BlockState.fromString(value);
+				BlockState state = BlockStateRegistry.intern(BlockState.fromString(value));
+
+				if (blockMeta < 0 || blockMeta >= META_COUNT || blockNumeralId > MAX_NUMERAL_ID) {
+					Logger.global.logWarning("Loading BlockIdConfig: blockid:meta '" + key + "' is out of range");
+					continue;
+				}
 				
 				if (blockNumeralId >= 0) {
-					BlockNumeralIDMeta idmeta = new BlockNumeralIDMeta(blockNumeralId, blockMeta);
 					if (blockNumeralId == 0) state = BlockState.AIR; //use the static field to increase render speed (== comparison)
-					numeralMappings.put(idmeta, state);
+					numeralMappings[numeralIndex(blockNumeralId, blockMeta)] = state;
 				} else {
-					BlockIDMeta idmeta = new BlockIDMeta(blockId, blockMeta);
-					idMappings.put(idmeta, state);
+					idMappings.computeIfAbsent(blockId, k -> new BlockState[META_COUNT])[blockMeta] = state;
 				}
 			} catch (NumberFormatException ex) {
 				Logger.global.logWarning("Loading BlockIdConfig: Failed to parse blockid:meta from key '" + key + "'");
 			} catch (IllegalArgumentException ex) {
 				Logger.global.logWarning("Loading BlockIdConfig: Failed to parse BlockState from value '" + value + "'");
 			}
-		}	
+		}
+
+		this.numeralMappings = numeralMappings;
 	}
 	
 	@Override
 	public BlockState get(int numeralId, int meta) {
 		if (numeralId == 0) return BlockState.AIR;
+		if (numeralId < 0 || numeralId > MAX_NUMERAL_ID) return BlockState.MISSING;
 
-		BlockNumeralIDMeta numidmeta;
-		BlockState state;
-
-		try { lock.readLock().lock();
-
-			numidmeta = new BlockNumeralIDMeta(numeralId, meta);
-			state = numeralMappings.get(numidmeta);
-
-		} finally { lock.readLock().unlock(); }
-
-		if (state == null) {
-
-			try { lock.writeLock().lock();
-
-				state = numeralMappings.getOrDefault(new BlockNumeralIDMeta(numeralId, 0), BlockState.MISSING); //meta-fallback
-				numeralMappings.put(numidmeta, state);
-
-				if (autopoulationConfigLoader != null) {
-					try {
-						ConfigurationNode node = autopoulationConfigLoader.load();
-						node.node(numeralId + ":" + meta).set(state.toString());
-						autopoulationConfigLoader.save(node);
-					} catch (IOException ex) {
-						Logger.global.noFloodError("blockidconf-autopopulate-ioex", "Failed to auto-populate BlockIdConfig!", ex);
-					}
-				}
-
-			} finally { lock.writeLock().unlock(); }
-
-		}
-
-		return state;
+		BlockState state = numeralMappings[numeralIndex(numeralId, meta)];
+		if (state != null) return state;
 
+		return autopopulate(numeralId, meta);
 	}
 
 	@Override
 	public BlockState get(String id, int numeralId, int meta) {
 		if (numeralId == 0) return BlockState.AIR;
 
-		BlockNumeralIDMeta numidmeta;
 		BlockState state;
-		BlockIDMeta idmeta = null;
+		if (numeralId > 0 && numeralId <= MAX_NUMERAL_ID) {
+			state = numeralMappings[numeralIndex(numeralId, meta)];
+			if (state != null) return state;
+		}
 
-		try { lock.readLock().lock();
+		BlockState[] metaMappings = idMappings.get(id);
+		if (metaMappings != null) {
+			state = metaMappings[meta & 0xF];
+			if (state != null) return state;
+		}
 
-			numidmeta = new BlockNumeralIDMeta(numeralId, meta);
-			state = numeralMappings.get(numidmeta);
+		return autopopulate(id, numeralId, meta);
+	}
 
-			if (state == null) {
-				idmeta = new BlockIDMeta(id, meta);
-				state = idMappings.get(idmeta);
-			}
+	private synchronized BlockState autopopulate(int numeralId, int meta) {
+		BlockState[] numeralMappings = this.numeralMappings;
 
-		} finally { lock.readLock().unlock(); }
+		int index = numeralIndex(numeralId, meta);
+		BlockState state = numeralMappings[index];
+		if (state != null) return state;
 
-		if (state == null) {
+		state = numeralMappings[numeralIndex(numeralId, 0)]; //meta-fallback
+		if (state == null) state = BlockState.MISSING;
 
-			try { lock.writeLock().lock();
+		numeralMappings = numeralMappings.clone();
+		numeralMappings[index] = state;
+		this.numeralMappings = numeralMappings;
 
-				state = idMappings.get(new BlockIDMeta(id, 0));
-				if (state == null) {
-					state = numeralMappings.get(new BlockNumeralIDMeta(numeralId, 0));
-					if (state == null) state = new BlockState(id);
-				}
+		final String key = numeralId + ":" + meta, value = state.toString();
+		if (autopopulationWriter != null) autopopulationWriter.write(node -> node.node(key).set(value));
 
-				idMappings.put(idmeta, state);
+		return state;
+	}
 
-				if (autopoulationConfigLoader != null) {
-					try {
-						ConfigurationNode node = autopoulationConfigLoader.load();
-						node.node(id + ":" + meta).set(state.toString());
-						autopoulationConfigLoader.save(node);
-					} catch (IOException ex) {
-						Logger.global.noFloodError("blockidconf-autopopulate-ioex", "Failed to auto-populate BlockIdConfig!", ex);
-					}
-				}
+	private synchronized BlockState autopopulate(String id, int numeralId, int meta) {
+		meta = meta & 0xF;
 
-			} finally { lock.writeLock().unlock(); }
+		BlockState[] metaMappings = idMappings.get(id);
+		BlockState state = metaMappings != null ? metaMappings[meta] : null;
+		if (state != null) return state;
 
-		}
+		if (metaMappings != null) state = metaMappings[0];
+		if (state == null && numeralId > 0 && numeralId <= MAX_NUMERAL_ID) state = numeralMappings[numeralIndex(numeralId, 0)];
+		if (state == null) state = BlockStateRegistry.intern(new BlockState(id));
+
+		metaMappings = metaMappings != null ? metaMappings.clone() : new BlockState[META_COUNT];
+		metaMappings[meta] = state;
+		idMappings.put(id, metaMappings);
+
+		final String key = id + ":" + meta, value = state.toString();
+		if (autopopulationWriter != null) autopopulationWriter.write(node -> node.node(key).set(value));
 
 		return state;
 	}
-	
-	static class BlockNumeralIDMeta {
-		private final int id;
-		private final int meta;
-		
-		public BlockNumeralIDMeta(int id, int meta) {
-			this.id = id;
-			this.meta = meta;
-		}
-		
-		public int getId() {
-			return id;
-		}
-		
-		public int getMeta() {
-			return meta;
-		}
-		
-		@Override
-		public int hashCode() {
-			return id * 16 + meta;
-		}
-		
-		@Override
-		public boolean equals(Object obj) {
-			if (obj instanceof BlockNumeralIDMeta) {
-				BlockNumeralIDMeta other = (BlockNumeralIDMeta) obj;
-				return other.id == id && other.meta == meta;
-			}
-			
-			return false;
-		}
-	}
-	
-	static class BlockIDMeta {
-		private final String id;
-		private final int meta;
-		
-		public BlockIDMeta(String id, int meta) {
-			this.id = id;
-			this.meta = meta;
-		}
-		
-		public String getId() {
-			return id;
-		}
-		
-		public int getMeta() {
-			return meta;
-		}
-		
-		@Override
-		public int hashCode() {
-			return id.hashCode() * 16 + meta;
-		}
-		
-		@Override
-		public boolean equals(Object obj) {
-			if (obj instanceof BlockIDMeta) {
-				BlockIDMeta other = (BlockIDMeta) obj;
-				return other.id.equals(id) && other.meta == meta;
-			}
-			
-			return false;
-		}
+
+	private static int numeralIndex(int numeralId, int meta) {
+		return numeralId << 4 | (meta & 0xF);
 	}
 	
 }
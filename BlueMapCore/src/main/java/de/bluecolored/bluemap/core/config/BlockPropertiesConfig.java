@@ -24,9 +24,6 @@
  */
 package de.bluecolored.bluemap.core.config;
 
-import com.github.benmanes.caffeine.cache.Caffeine;
-import com.github.benmanes.caffeine.cache.LoadingCache;
-import de.bluecolored.bluemap.core.BlueMap;
 import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.mca.mapping.BlockPropertiesMapper;
 import de.bluecolored.bluemap.core.resourcepack.NoSuchResourceException;
@@ -34,10 +31,10 @@
 import de.bluecolored.bluemap.core.resourcepack.TransformedBlockModelResource;
 import de.bluecolored.bluemap.core.world.BlockProperties;
 import de.bluecolored.bluemap.core.world.BlockState;
+import de.bluecolored.bluemap.core.world.BlockStateIdMap;
 import org.spongepowered.configurate.ConfigurationNode;
 import org.spongepowered.configurate.loader.ConfigurationLoader;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -47,10 +44,10 @@
 
 public class BlockPropertiesConfig implements BlockPropertiesMapper {
 	
-	private final ConfigurationLoader<? extends ConfigurationNode> autopoulationConfigLoader;
+	private final AutopopulationWriter autopopulationWriter;
 	
 	private final Map<String, List<BlockStateMapping<BlockProperties>>> mappings;
-	private final LoadingCache<BlockState, BlockProperties> mappingCache;
+	private final BlockStateIdMap<BlockProperties> mappingCache;
 	
 	private final ResourcePack resourcePack;
 	
@@ -60,7 +57,7 @@ public BlockPropertiesConfig(ConfigurationNode node, ResourcePack resourcePack)
 	
 	public BlockPropertiesConfig(ConfigurationNode node, ResourcePack resourcePack, ConfigurationLoader<? extends ConfigurationNode> autopoulationConfigLoader) {
 		this.resourcePack = resourcePack;
-		this.autopoulationConfigLoader = autopoulationConfigLoader;
+		this.autopopulationWriter = autopoulationConfigLoader != null ? new AutopopulationWriter(autopoulationConfigLoader, "BlockPropertiesConfig") : null;
 
 		mappings = new ConcurrentHashMap<>();
 		
@@ -80,10 +77,7 @@ public BlockPropertiesConfig(ConfigurationNode node, ResourcePack resourcePack,
 			}
 		}
 		
-		mappingCache = Caffeine.newBuilder()
-				.executor(BlueMap.THREAD_POOL)
-				.maximumSize(10000)
-				.build(this::mapNoCache);
+		mappingCache = new BlockStateIdMap<>(this::mapNoCache);
 	}
 	
 	@Override
@@ -116,19 +110,15 @@ private BlockProperties mapNoCache(BlockState bs){
 		}
 		
 		mappings.computeIfAbsent(bs.getFullId(), k -> new ArrayList<>()).add(new BlockStateMapping<>(new BlockState(bs.getFullId()), generated));
-		if (autopoulationConfigLoader != null) {
-			synchronized (autopoulationConfigLoader) {
-				try {
-					ConfigurationNode node = autopoulationConfigLoader.load();
-					ConfigurationNode bpNode = node.node(bs.getFullId());
-					bpNode.node("culling").set(generated.isCulling());
-					bpNode.node("occluding").set(generated.isOccluding());
-					bpNode.node("flammable").set(generated.isFlammable());
-					autopoulationConfigLoader.save(node);
-				} catch (IOException ex) {
-					Logger.global.noFloodError("blockpropsconf-autopopulate-ioex", "Failed to auto-populate BlockPropertiesConfig!", ex);
-				}
-			}
+		if (autopopulationWriter != null) {
+			final String id = bs.getFullId();
+			final BlockProperties properties = generated;
+			autopopulationWriter.write(node -> {
+				ConfigurationNode bpNode = node.node(id);
+				bpNode.node("culling").set(properties.isCulling());
+				bpNode.node("occluding").set(properties.isOccluding());
+				bpNode.node("flammable").set(properties.isFlammable());
+			});
 		}
 		
 		return generated;
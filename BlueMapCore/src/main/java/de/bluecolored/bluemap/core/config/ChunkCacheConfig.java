@@ -0,0 +1,94 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.config;
+
+import de.bluecolored.bluemap.core.debug.DebugDump;
+import de.bluecolored.bluemap.core.mca.ChunkCacheSettings;
+import org.spongepowered.configurate.ConfigurationNode;
+
+import java.io.File;
+import java.nio.file.Path;
+
+@DebugDump
+public class ChunkCacheConfig implements ChunkCacheSettings {
+
+	private boolean unpackBlockStates;
+	private int prefetchDepth;
+	private int maxMemoryMB;
+	private int regionMaxMemoryMB;
+	private int expireAfterSeconds;
+	private Path diskCacheFolder;
+
+	public ChunkCacheConfig(ConfigurationNode node, File dataFolder) {
+
+		//unpackBlockStates
+		unpackBlockStates = node.node("unpackBlockStates").getBoolean(true);
+
+		//prefetchDepth
+		prefetchDepth = node.node("prefetchDepth").getInt(1);
+
+		//maxMemory
+		maxMemoryMB = Math.max(node.node("maxMemory").getInt(128), 1);
+		regionMaxMemoryMB = Math.max(node.node("regionMaxMemory").getInt(1), 1);
+
+		//expireAfterSeconds
+		expireAfterSeconds = Math.max(node.node("expireAfterSeconds").getInt(60), 1);
+
+		//diskCache
+		diskCacheFolder = node.node("diskCache").getBoolean(false) ? dataFolder.toPath().resolve("chunkcache") : null;
+
+	}
+
+	@Override
+	public boolean isUnpackBlockStates() {
+		return unpackBlockStates;
+	}
+
+	@Override
+	public int getPrefetchDepth() {
+		return prefetchDepth;
+	}
+
+	@Override
+	public int getMaxMemoryMB() {
+		return maxMemoryMB;
+	}
+
+	@Override
+	public int getRegionMaxMemoryMB() {
+		return regionMaxMemoryMB;
+	}
+
+	@Override
+	public int getExpireAfterSeconds() {
+		return expireAfterSeconds;
+	}
+
+	@Override
+	public Path getDiskCacheFolder() {
+		return diskCacheFolder;
+	}
+
+}
@@ -37,6 +37,7 @@ public class CoreConfig {
 	private int renderThreadCount = 0;
 	private boolean metricsEnabled = false;
 	private File dataFolder = new File("data");
+	private ChunkCacheConfig chunkCacheConfig;
 
 	public CoreConfig(ConfigurationNode node) throws IOException {
 		
@@ -55,6 +56,9 @@ public CoreConfig(ConfigurationNode node) throws IOException {
 		//data
 		dataFolder = ConfigManager.toFolder(node.node("data").getString("data"));
 
+		//chunkCache
+		chunkCacheConfig = new ChunkCacheConfig(node.node("chunkCache"), dataFolder);
+
 	}
 	
 	public File getDataFolder() {
@@ -73,4 +77,8 @@ public int getRenderThreadCount() {
 		return renderThreadCount;
 	}
 
+	public ChunkCacheConfig getChunkCacheConfig() {
+		return chunkCacheConfig;
+	}
+
 }
@@ -50,6 +50,7 @@ public class MapConfig implements MapSettings {
 	
 	private Vector3i min, max;
 	private boolean renderEdges;
+	private boolean greedyMeshing;
 	
 	private boolean useGzip;
 	private boolean ignoreMissingLightData;
@@ -99,6 +100,9 @@ public MapConfig(ConfigurationNode node) throws IOException {
 		//renderEdges
 		this.renderEdges = node.node("renderEdges").getBoolean(true);
 
+		//greedyMeshing
+		this.greedyMeshing = node.node("greedyMeshing").getBoolean(false);
+
 		//useCompression
 		this.useGzip = node.node("useCompression").getBoolean(true);
 		
@@ -183,6 +187,11 @@ public boolean isRenderEdges() {
 		return renderEdges;
 	}
 	
+	@Override
+	public boolean isGreedyMeshing() {
+		return greedyMeshing;
+	}
+	
 	@Override
 	public boolean useGzipCompression() {
 		return useGzip;
@@ -36,6 +36,7 @@
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Objects;
 import java.util.function.Predicate;
@@ -67,15 +68,23 @@ public BmMap(String id, String name, World world, Path fileRoot, ResourcePack re
 		Objects.requireNonNull(resourcePack);
 		Objects.requireNonNull(settings);
 
-		this.renderState = new MapRenderState();
+		Vector2i regionChunkMin = world.getRegionGrid().getCellMin(Vector2i.ZERO, world.getChunkGrid());
+		Vector2i regionChunkMax = world.getRegionGrid().getCellMax(Vector2i.ZERO, world.getChunkGrid());
+		Vector2i regionChunks = regionChunkMax.sub(regionChunkMin).add(Vector2i.ONE);
+		this.renderState = new MapRenderState(getRenderStateFile().toPath(), regionChunks.getX() * regionChunks.getY());
 
-		File rstateFile = getRenderStateFile();
-		if (rstateFile.exists()) {
-			try {
-				this.renderState.load(rstateFile);
-			} catch (IOException ex) {
-				Logger.global.logWarning("Failed to load render-state for map '" + getId() + "': " + ex);
+		try {
+			this.renderState.load();
+
+			// migrate the region-granular render-state of older versions
+			File legacyRstateFile = getLegacyRenderStateFile();
+			if (legacyRstateFile.exists()) {
+				this.renderState.loadLegacy(legacyRstateFile);
+				this.renderState.save();
+				Files.delete(legacyRstateFile.toPath());
 			}
+		} catch (IOException ex) {
+			Logger.global.logWarning("Failed to load render-state for map '" + getId() + "': " + ex);
 		}
 
 		this.hiresModelManager = new HiresModelManager(
@@ -117,13 +126,30 @@ public synchronized void save() {
 		lowresModelManager.save();
 
 		try {
-			this.renderState.save(getRenderStateFile());
+			this.renderState.save();
 		} catch (IOException ex){
 			Logger.global.logError("Failed to save render-state for map: '" + this.id + "'!", ex);
 		}
 	}
 
+	/**
+	 * Saves and closes the open render-state file of this map, call this when the map is no longer used
+	 */
+	public synchronized void close() {
+		save();
+
+		try {
+			this.renderState.close();
+		} catch (IOException ex){
+			Logger.global.logError("Failed to close render-state for map: '" + this.id + "'!", ex);
+		}
+	}
+
 	public File getRenderStateFile() {
+		return fileRoot.resolve(".rstate.bin").toFile();
+	}
+
+	private File getLegacyRenderStateFile() {
 		return fileRoot.resolve(".rstate").toFile();
 	}
 
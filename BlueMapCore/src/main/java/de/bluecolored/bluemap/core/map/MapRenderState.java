@@ -26,64 +26,191 @@
 
 import com.flowpowered.math.vector.Vector2i;
 import de.bluecolored.bluemap.core.debug.DebugDump;
-import de.bluecolored.bluemap.core.util.AtomicFileHelper;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
+/**
+ * Stores for each chunk of a map when it has last been rendered and the {@link de.bluecolored.bluemap.core.world.Chunk#getFingerprint() fingerprint}
+ * it had at that time.<br>
+ * <br>
+ * The state is kept in a binary file with a fixed layout, so every change can be written in place as soon as it happens:
+ * <ul>
+ *     <li>a file-header: <code>int magic, int version, int regionChunkCount, int reserved</code></li>
+ *     <li>followed by one record per region: <code>int regionX, int regionZ, int flags, int reserved</code> and
+ *     <code>regionChunkCount</code> times <code>long renderTime, long fingerprint</code></li>
+ * </ul>
+ * All values are big-endian, the records are aligned to 16 bytes.
+ * Chunks are indexed by their region-local position: <code>localX * regionChunksZ + localZ</code>.
+ */
 @DebugDump
-public class MapRenderState {
+public class MapRenderState implements Closeable {
 
-	private final Map<Vector2i, Long> regionRenderTimes;
+	private static final int MAGIC = 0x424D5253; // "BMRS"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+	private static final int RECORD_HEADER_SIZE = 16;
+	private static final int ENTRY_SIZE = 16;
+	private static final int RECORD_FLAG_USED = 1;
 
-	public MapRenderState() {
-		regionRenderTimes = new HashMap<>();
-	}
+	private final Path file;
+	private final int regionChunkCount;
+	private final int recordSize;
+
+	private final transient Map<Vector2i, Long> recordPositions;
+	private transient FileChannel channel;
+	private long fileEnd;
+
+	public MapRenderState(Path file, int regionChunkCount) {
+		if (regionChunkCount <= 0) throw new IllegalArgumentException("regionChunkCount has to be greater than 0");
 
-	public synchronized void setRenderTime(Vector2i regionPos, long renderTime) {
-		regionRenderTimes.put(regionPos, renderTime);
+		this.file = file;
+		this.regionChunkCount = regionChunkCount;
+		this.recordSize = RECORD_HEADER_SIZE + regionChunkCount * ENTRY_SIZE;
+
+		this.recordPositions = new HashMap<>();
+		this.channel = null;
+		this.fileEnd = HEADER_SIZE;
 	}
 
-	public synchronized long getRenderTime(Vector2i regionPos) {
-		Long renderTime = regionRenderTimes.get(regionPos);
-		if (renderTime == null) return -1;
-		else return renderTime;
+	/**
+	 * Returns the render-times of all chunks in the region, or <code>-1</code> for chunks that have not been rendered yet
+	 */
+	public synchronized long[] getChunkRenderTimes(Vector2i regionPos) throws IOException {
+		long[] renderTimes = new long[regionChunkCount];
+		Arrays.fill(renderTimes, -1);
+
+		ByteBuffer record = readRecord(regionPos);
+		if (record != null) {
+			for (int i = 0; i < regionChunkCount; i++) {
+				renderTimes[i] = record.getLong(RECORD_HEADER_SIZE + i * ENTRY_SIZE);
+			}
+		}
+
+		return renderTimes;
 	}
 
-	public synchronized void reset() {
-		regionRenderTimes.clear();
+	/**
+	 * Returns the fingerprints of all chunks in the region as they have been when the chunk was last rendered,
+	 * or <code>0</code> for chunks with an unknown fingerprint.
+	 */
+	public synchronized long[] getChunkFingerprints(Vector2i regionPos) throws IOException {
+		long[] fingerprints = new long[regionChunkCount];
+
+		ByteBuffer record = readRecord(regionPos);
+		if (record != null) {
+			for (int i = 0; i < regionChunkCount; i++) {
+				fingerprints[i] = record.getLong(RECORD_HEADER_SIZE + i * ENTRY_SIZE + 8);
+			}
+		}
+
+		return fingerprints;
 	}
 
-	public synchronized void save(File file) throws IOException {
-		OutputStream fOut = AtomicFileHelper.createFilepartOutputStream(file);
-		GZIPOutputStream gOut = new GZIPOutputStream(fOut);
+	/**
+	 * Sets the render-time and fingerprint of one chunk, the change is written to the render-state file immediately.
+	 */
+	public synchronized void setChunkRenderState(Vector2i regionPos, int chunkIndex, long renderTime, long fingerprint) throws IOException {
+		if (chunkIndex < 0 || chunkIndex >= regionChunkCount) throw new IndexOutOfBoundsException("chunkIndex: " + chunkIndex);
 
-		try (
-				DataOutputStream dOut = new DataOutputStream(gOut)
-		) {
-			dOut.writeInt(regionRenderTimes.size());
+		ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+		entry.putLong(renderTime);
+		entry.putLong(fingerprint);
+		entry.flip();
 
-			for (Map.Entry<Vector2i, Long> entry : regionRenderTimes.entrySet()) {
-				Vector2i regionPos = entry.getKey();
-				long renderTime = entry.getValue();
+		writeFully(entry, getOrCreateRecord(regionPos) + RECORD_HEADER_SIZE + (long) chunkIndex * ENTRY_SIZE);
+	}
 
-				dOut.writeInt(regionPos.getX());
-				dOut.writeInt(regionPos.getY());
-				dOut.writeLong(renderTime);
-			}
+	/**
+	 * Sets the render-time of all chunks in the region, keeping their fingerprints.
+	 */
+	public synchronized void setRenderTime(Vector2i regionPos, long renderTime) throws IOException {
+		long position = getOrCreateRecord(regionPos);
+		ByteBuffer record = readRecord(regionPos);
 
-			dOut.flush();
+		for (int i = 0; i < regionChunkCount; i++) {
+			record.putLong(RECORD_HEADER_SIZE + i * ENTRY_SIZE, renderTime);
 		}
+
+		record.position(0);
+		writeFully(record, position);
+	}
+
+	/**
+	 * Resets the state of all chunks in the region, so they are all rendered again on the next update.
+	 */
+	public synchronized void resetRegion(Vector2i regionPos) throws IOException {
+		Long position = recordPositions.get(regionPos);
+		if (position == null) return;
+
+		writeFully(createRecord(regionPos), position);
+	}
+
+	/**
+	 * Resets the state of all chunks and deletes the render-state file.
+	 */
+	public synchronized void reset() throws IOException {
+		close();
+		recordPositions.clear();
+		fileEnd = HEADER_SIZE;
+		Files.deleteIfExists(file);
 	}
 
-	public synchronized void load(File file) throws IOException {
-		regionRenderTimes.clear();
+	/**
+	 * Reads the positions of all region-records from the render-state file.<br>
+	 * If the file has been written for a different amount of chunks per region it is discarded.
+	 */
+	public synchronized void load() throws IOException {
+		recordPositions.clear();
+		fileEnd = HEADER_SIZE;
+
+		if (!Files.exists(file)) return;
+
+		FileChannel channel = getChannel();
+		long size = channel.size();
+
+		if (size < HEADER_SIZE) {
+			reset();
+			return;
+		}
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		readFully(header, 0);
+		if (header.getInt(0) != MAGIC) {
+			reset();
+			throw new IOException("The file " + file + " is not a render-state file, it has been reset!");
+		}
+		if (header.getInt(4) != VERSION || header.getInt(8) != regionChunkCount) {
+			reset();
+			return;
+		}
+
+		ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+		for (long position = HEADER_SIZE; position + recordSize <= size; position += recordSize) {
+			recordHeader.clear();
+			readFully(recordHeader, position);
+			if ((recordHeader.getInt(8) & RECORD_FLAG_USED) == 0) break;
 
+			recordPositions.put(new Vector2i(recordHeader.getInt(0), recordHeader.getInt(4)), position);
+			fileEnd = position + recordSize;
+		}
+	}
+
+	/**
+	 * Imports the region-granular render-times of the gzip-compressed render-state format used by older versions.<br>
+	 * Each chunk of a region gets the render-time of its region.
+	 */
+	public synchronized void loadLegacy(File legacyFile) throws IOException {
 		try (
-				FileInputStream fIn = new FileInputStream(file);
+				FileInputStream fIn = new FileInputStream(legacyFile);
 				GZIPInputStream gIn = new GZIPInputStream(fIn);
 				DataInputStream dIn = new DataInputStream(gIn)
 		) {
@@ -96,9 +223,100 @@ public synchronized void load(File file) throws IOException {
 				);
 				long renderTime = dIn.readLong();
 
-				regionRenderTimes.put(regionPos, renderTime);
+				setRenderTime(regionPos, renderTime);
 			}
 		}
 	}
 
+	/**
+	 * Makes sure all changes are written to the storage device
+	 */
+	public synchronized void save() throws IOException {
+		if (channel != null && channel.isOpen()) channel.force(false);
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (channel == null) return;
+
+		try {
+			channel.close();
+		} finally {
+			channel = null;
+		}
+	}
+
+	private ByteBuffer readRecord(Vector2i regionPos) throws IOException {
+		Long position = recordPositions.get(regionPos);
+		if (position == null) return null;
+
+		ByteBuffer record = ByteBuffer.allocate(recordSize);
+		readFully(record, position);
+		return record;
+	}
+
+	private long getOrCreateRecord(Vector2i regionPos) throws IOException {
+		Long position = recordPositions.get(regionPos);
+		if (position != null) return position;
+
+		if (fileEnd == HEADER_SIZE) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC);
+			header.putInt(VERSION);
+			header.putInt(regionChunkCount);
+			header.putInt(0);
+			header.flip();
+			writeFully(header, 0);
+		}
+
+		position = fileEnd;
+		writeFully(createRecord(regionPos), position);
+
+		fileEnd += recordSize;
+		recordPositions.put(regionPos, position);
+		return position;
+	}
+
+	private ByteBuffer createRecord(Vector2i regionPos) {
+		ByteBuffer record = ByteBuffer.allocate(recordSize);
+		record.putInt(regionPos.getX());
+		record.putInt(regionPos.getY());
+		record.putInt(RECORD_FLAG_USED);
+		record.putInt(0);
+		for (int i = 0; i < regionChunkCount; i++) {
+			record.putLong(-1);
+			record.putLong(0);
+		}
+		record.flip();
+		return record;
+	}
+
+	private void readFully(ByteBuffer buffer, long position) throws IOException {
+		FileChannel channel = getChannel();
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position + buffer.position());
+			if (read < 0) throw new EOFException();
+		}
+		buffer.flip();
+	}
+
+	private void writeFully(ByteBuffer buffer, long position) throws IOException {
+		FileChannel channel = getChannel();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer, position + buffer.position());
+		}
+	}
+
+	/**
+	 * Returns the channel to the render-state file, (re-)opening it if it is not open yet or has been closed
+	 * (e.g. because a thread got interrupted while reading or writing)
+	 */
+	private FileChannel getChannel() throws IOException {
+		if (channel == null || !channel.isOpen()) {
+			Files.createDirectories(file.toAbsolutePath().normalize().getParent());
+			channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+		}
+		return channel;
+	}
+
 }
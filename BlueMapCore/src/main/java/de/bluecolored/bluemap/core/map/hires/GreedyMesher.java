@@ -0,0 +1,342 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map.hires;
+
+import com.flowpowered.math.vector.Vector3f;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Collects the faces of a tile that cover one full side of a block and merges adjacent, coplanar faces
+ * with the same material, tint, light and ao into bigger quads.<br>
+ * <br>
+ * The texture of a merged quad is repeated once per block: its uvs go beyond the range of 0 to 1,
+ * so this only looks right if the textures are rendered with repeat-wrapping.
+ */
+class GreedyMesher {
+
+	// positions, uvs and normals that are closer than this to a whole number are treated as that number
+	private static final float EPSILON = 0.0001f;
+
+	// the in-plane axes (a and b) for faces on a plane of the x-, y- and z-axis
+	private static final int[] AXIS_A = {2, 0, 0};
+	private static final int[] AXIS_B = {1, 2, 1};
+
+	private final Map<FaceAttributes, Integer> attributeIds;
+	private final List<FaceAttributes> attributes;
+	private final TreeMap<Long, Plane> planes;
+	private final FaceAttributes lookup;
+
+	private final int[] cornerIndices;
+	private final float[] offset;
+	private final float[] positions, uvs, normals, ao;
+	private boolean[] mask;
+
+	GreedyMesher() {
+		this.attributeIds = new HashMap<>();
+		this.attributes = new ArrayList<>();
+		this.planes = new TreeMap<>();
+		this.lookup = new FaceAttributes();
+
+		this.cornerIndices = new int[4];
+		this.offset = new float[3];
+		this.positions = new float[4 * 3];
+		this.uvs = new float[4 * 2];
+		this.normals = new float[2 * 3];
+		this.ao = new float[4];
+		this.mask = new boolean[256];
+	}
+
+	/**
+	 * Adds the quad to be merged later, if it covers a full side of a block (and is not moved by a fraction of a block).
+	 * @return <code>true</code> if the quad has been added, <code>false</code> if it can not be merged and needs to be added as it is
+	 */
+	boolean add(
+			int materialIndex,
+			float[] positions, float[] uvs, float[] normals, float[] ao,
+			Vector3f color, float blockLight, float sunLight,
+			float offsetX, float offsetY, float offsetZ
+	) {
+		if (!isWhole(offsetX) || !isWhole(offsetY) || !isWhole(offsetZ)) return false;
+		if (ao[0] != ao[1] || ao[0] != ao[2] || ao[0] != ao[3]) return false;
+
+		//the axis of the plane (all corners have the same coordinate on it)
+		int axis = -1;
+		for (int k = 0; k < 3; k++) {
+			if (positions[k] == positions[3 + k] && positions[k] == positions[6 + k] && positions[k] == positions[9 + k]) {
+				axis = k;
+				break;
+			}
+		}
+		if (axis == -1) return false;
+
+		//both triangles need the same normal, pointing along the axis
+		for (int k = 0; k < 3; k++) {
+			if (normals[k] != normals[3 + k]) return false;
+			if (!isWhole(normals[k]) || (k == axis) == (Math.round(normals[k]) == 0)) return false;
+		}
+		int direction = axis * 2 + (normals[axis] > 0 ? 1 : 0);
+
+		//the corners have to be the corners of the block-side (in any order)
+		int axisA = AXIS_A[axis], axisB = AXIS_B[axis];
+		int cornerPattern = 0, cornersFound = 0;
+		for (int i = 0; i < 4; i++) {
+			float a = positions[i * 3 + axisA], b = positions[i * 3 + axisB];
+			if (!isBit(a) || !isBit(b)) return false;
+
+			int corner = Math.round(a) | Math.round(b) << 1;
+			cornerPattern |= corner << (i * 2);
+			cornersFound |= 1 << corner;
+			cornerIndices[corner] = i;
+		}
+		if (cornersFound != 0b1111) return false;
+
+		//the texture has to be mapped completely and without distortion (only rotated or mirrored)
+		int c00 = cornerIndices[0], c10 = cornerIndices[1], c01 = cornerIndices[2], c11 = cornerIndices[3];
+		for (int i = 0; i < 8; i++) {
+			if (!isBit(uvs[i])) return false;
+		}
+		int u00 = Math.round(uvs[c00 * 2]), v00 = Math.round(uvs[c00 * 2 + 1]);
+		int duA = Math.round(uvs[c10 * 2]) - u00, dvA = Math.round(uvs[c10 * 2 + 1]) - v00;
+		int duB = Math.round(uvs[c01 * 2]) - u00, dvB = Math.round(uvs[c01 * 2 + 1]) - v00;
+		if (Math.abs(duA) + Math.abs(dvA) != 1 || Math.abs(duB) + Math.abs(dvB) != 1 || duA * duB + dvA * dvB != 0) return false;
+		if (Math.round(uvs[c11 * 2]) != u00 + duA + duB || Math.round(uvs[c11 * 2 + 1]) != v00 + dvA + dvB) return false;
+
+		//find (or create) the id of the attributes of this face
+		lookup.set(materialIndex, cornerPattern, u00, v00, duA, dvA, duB, dvB, color, blockLight, sunLight, ao[0]);
+		Integer attributeId = attributeIds.get(lookup);
+		if (attributeId == null) {
+			FaceAttributes faceAttributes = new FaceAttributes();
+			faceAttributes.set(lookup);
+			attributeId = attributes.size();
+			attributes.add(faceAttributes);
+			attributeIds.put(faceAttributes, attributeId);
+		}
+
+		//add the face to the cells of its plane
+		offset[0] = offsetX;
+		offset[1] = offsetY;
+		offset[2] = offsetZ;
+		float planePosition = (isWhole(positions[axis]) ? Math.round(positions[axis]) : positions[axis]) + offset[axis];
+
+		long planeKey = (long) attributeId << 35 | (long) direction << 32 | (Float.floatToIntBits(planePosition) & 0xFFFFFFFFL);
+		Plane plane = planes.get(planeKey);
+		if (plane == null) {
+			plane = new Plane(direction, planePosition, attributeId);
+			planes.put(planeKey, plane);
+		}
+		plane.add(Math.round(offset[axisA]), Math.round(offset[axisB]));
+
+		return true;
+	}
+
+	/**
+	 * Merges all collected faces and adds the resulting quads to the given model, then clears this mesher
+	 */
+	void merge(HiresTileModel model) {
+		for (Plane plane : planes.values()) {
+			merge(plane, model);
+		}
+
+		clear();
+	}
+
+	void clear() {
+		attributeIds.clear();
+		attributes.clear();
+		planes.clear();
+	}
+
+	private void merge(Plane plane, HiresTileModel model) {
+		int minA = Integer.MAX_VALUE, minB = Integer.MAX_VALUE, maxA = Integer.MIN_VALUE, maxB = Integer.MIN_VALUE;
+		for (int i = 0; i < plane.size; i++) {
+			minA = Math.min(minA, plane.cells[i * 2]);
+			maxA = Math.max(maxA, plane.cells[i * 2]);
+			minB = Math.min(minB, plane.cells[i * 2 + 1]);
+			maxB = Math.max(maxB, plane.cells[i * 2 + 1]);
+		}
+
+		int width = maxA - minA + 1, height = maxB - minB + 1;
+		if (mask.length < width * height) mask = new boolean[Math.max(width * height, mask.length * 2)];
+		Arrays.fill(mask, 0, width * height, false);
+		for (int i = 0; i < plane.size; i++) {
+			mask[(plane.cells[i * 2 + 1] - minB) * width + (plane.cells[i * 2] - minA)] = true;
+		}
+
+		//take the first cell that is left, make the quad as wide as possible and then as high as possible
+		for (int b = 0; b < height; b++) {
+			for (int a = 0; a < width; a++) {
+				if (!mask[b * width + a]) continue;
+
+				int quadWidth = 1;
+				while (a + quadWidth < width && mask[b * width + a + quadWidth]) quadWidth++;
+
+				int quadHeight = 1;
+				expand:
+				while (b + quadHeight < height) {
+					int row = (b + quadHeight) * width;
+					for (int i = a; i < a + quadWidth; i++) {
+						if (!mask[row + i]) break expand;
+					}
+					quadHeight++;
+				}
+
+				for (int j = b; j < b + quadHeight; j++) {
+					Arrays.fill(mask, j * width + a, j * width + a + quadWidth, false);
+				}
+
+				addQuad(plane, minA + a, minB + b, quadWidth, quadHeight, model);
+			}
+		}
+	}
+
+	private void addQuad(Plane plane, int a, int b, int quadWidth, int quadHeight, HiresTileModel model) {
+		FaceAttributes attr = attributes.get(plane.attributeId);
+		int axis = plane.direction / 2, axisA = AXIS_A[axis], axisB = AXIS_B[axis];
+
+		for (int i = 0; i < 4; i++) {
+			int corner = attr.cornerPattern >> (i * 2) & 0b11;
+			int cornerA = corner & 1, cornerB = corner >> 1;
+
+			positions[i * 3 + axis] = plane.position;
+			positions[i * 3 + axisA] = a + cornerA * quadWidth;
+			positions[i * 3 + axisB] = b + cornerB * quadHeight;
+
+			uvs[i * 2] = attr.u00 + cornerA * quadWidth * attr.duA + cornerB * quadHeight * attr.duB;
+			uvs[i * 2 + 1] = attr.v00 + cornerA * quadWidth * attr.dvA + cornerB * quadHeight * attr.dvB;
+
+			ao[i] = attr.ao;
+		}
+
+		Arrays.fill(normals, 0f);
+		normals[axis] = normals[3 + axis] = plane.direction % 2 == 0 ? -1f : 1f;
+
+		model.appendQuad(attr.materialIndex, positions, uvs, normals, ao, attr.color, attr.blockLight, attr.sunLight, 0, 0, 0);
+	}
+
+	private static boolean isWhole(float value) {
+		return Math.abs(value - Math.round(value)) < EPSILON;
+	}
+
+	private static boolean isBit(float value) {
+		return isWhole(value) && (Math.round(value) == 0 || Math.round(value) == 1);
+	}
+
+	/**
+	 * All faces of one plane with the same attributes and the cells (block-positions on the plane) they are covering
+	 */
+	private static class Plane {
+
+		private final int direction;
+		private final float position;
+		private final int attributeId;
+
+		private int[] cells;
+		private int size;
+
+		private Plane(int direction, float position, int attributeId) {
+			this.direction = direction;
+			this.position = position;
+			this.attributeId = attributeId;
+			this.cells = new int[32];
+			this.size = 0;
+		}
+
+		private void add(int a, int b) {
+			if (cells.length < size * 2 + 2) cells = Arrays.copyOf(cells, cells.length * 2);
+			cells[size * 2] = a;
+			cells[size * 2 + 1] = b;
+			size++;
+		}
+
+	}
+
+	/**
+	 * Everything except the position, that needs to be equal for two faces to be merged
+	 */
+	private static class FaceAttributes {
+
+		private int materialIndex;
+		private int cornerPattern;
+		private int u00, v00, duA, dvA, duB, dvB;
+		private Vector3f color;
+		private float blockLight, sunLight, ao;
+
+		private void set(int materialIndex, int cornerPattern, int u00, int v00, int duA, int dvA, int duB, int dvB, Vector3f color, float blockLight, float sunLight, float ao) {
+			this.materialIndex = materialIndex;
+			this.cornerPattern = cornerPattern;
+			this.u00 = u00;
+			this.v00 = v00;
+			this.duA = duA;
+			this.dvA = dvA;
+			this.duB = duB;
+			this.dvB = dvB;
+			this.color = color;
+			this.blockLight = blockLight;
+			this.sunLight = sunLight;
+			this.ao = ao;
+		}
+
+		private void set(FaceAttributes other) {
+			set(other.materialIndex, other.cornerPattern, other.u00, other.v00, other.duA, other.dvA, other.duB, other.dvB, other.color, other.blockLight, other.sunLight, other.ao);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) return true;
+			if (!(obj instanceof FaceAttributes)) return false;
+			FaceAttributes other = (FaceAttributes) obj;
+			return
+					materialIndex == other.materialIndex &&
+					cornerPattern == other.cornerPattern &&
+					u00 == other.u00 && v00 == other.v00 &&
+					duA == other.duA && dvA == other.dvA &&
+					duB == other.duB && dvB == other.dvB &&
+					color.equals(other.color) &&
+					Float.compare(blockLight, other.blockLight) == 0 &&
+					Float.compare(sunLight, other.sunLight) == 0 &&
+					Float.compare(ao, other.ao) == 0;
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = materialIndex;
+			hash = hash * 31 + cornerPattern;
+			hash = hash * 31 + (u00 | v00 << 1 | (duA + 1) << 2 | (dvA + 1) << 4 | (duB + 1) << 6 | (dvB + 1) << 8);
+			hash = hash * 31 + color.hashCode();
+			hash = hash * 31 + Float.floatToIntBits(blockLight);
+			hash = hash * 31 + Float.floatToIntBits(sunLight);
+			hash = hash * 31 + Float.floatToIntBits(ao);
+			return hash;
+		}
+
+	}
+
+}
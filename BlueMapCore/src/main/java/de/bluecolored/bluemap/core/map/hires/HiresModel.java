@@ -26,20 +26,22 @@
 
 import com.flowpowered.math.vector.Vector3i;
 import com.flowpowered.math.vector.Vector4f;
-import de.bluecolored.bluemap.core.model.ExtendedModel;
+import de.bluecolored.bluemap.core.threejs.BufferGeometry;
 
 import java.util.UUID;
 
 /**
- * A model, containing additional information about the tile it represents
+ * The rendered geometry of a tile, containing additional information about the tile it represents
  */
-public class HiresModel extends ExtendedModel {
+public class HiresModel {
 
 	private UUID world;
 	private Vector3i blockMin, blockMax, blockSize;
 
 	private int[][] heights;
 	private Vector4f[][] colors;
+
+	private BufferGeometry geometry;
 	
 	public HiresModel(UUID world, Vector3i blockMin, Vector3i blockMax) {
 		this.world = world;
@@ -69,6 +71,14 @@ public int getHeight(int x, int z){
 		return heights[x - blockMin.getX()][z - blockMin.getZ()];
 	}
 	
+	public BufferGeometry getGeometry() {
+		return geometry;
+	}
+
+	public void setGeometry(BufferGeometry geometry) {
+		this.geometry = geometry;
+	}
+	
 	public UUID getWorld(){
 		return world;
 	}
@@ -27,6 +27,7 @@
 import com.flowpowered.math.vector.Vector2i;
 import com.flowpowered.math.vector.Vector3d;
 import com.flowpowered.math.vector.Vector3i;
+import de.bluecolored.bluemap.core.debug.DebugDump;
 import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.resourcepack.ResourcePack;
 import de.bluecolored.bluemap.core.util.AtomicFileHelper;
@@ -42,7 +43,7 @@
 public class HiresModelManager {
 
 	private final Path fileRoot;
-	private final HiresModelRenderer renderer;
+	@DebugDump private final HiresModelRenderer renderer;
 	private final Grid tileGrid;
 	private final boolean useGzip;
 
@@ -75,7 +76,7 @@ public HiresModel render(World world, Vector2i tile) {
 	}
 	
 	private void save(final HiresModel model, Vector2i tile) {
-		final String modelJson = model.toBufferGeometry().toJson();
+		final String modelJson = model.getGeometry().toJson();
 		save(modelJson, tile);
 	}
 	
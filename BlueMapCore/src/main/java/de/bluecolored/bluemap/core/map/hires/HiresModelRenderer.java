@@ -28,13 +28,17 @@
 import com.flowpowered.math.vector.Vector3i;
 import com.flowpowered.math.vector.Vector4f;
 import de.bluecolored.bluemap.core.MinecraftVersion;
+import de.bluecolored.bluemap.core.debug.DebugDump;
 import de.bluecolored.bluemap.core.map.hires.blockmodel.BlockStateModel;
 import de.bluecolored.bluemap.core.map.hires.blockmodel.BlockStateModelFactory;
+import de.bluecolored.bluemap.core.resourcepack.BiomeColorField;
+import de.bluecolored.bluemap.core.resourcepack.BlockColorCalculator;
 import de.bluecolored.bluemap.core.resourcepack.NoSuchResourceException;
 import de.bluecolored.bluemap.core.resourcepack.ResourcePack;
 import de.bluecolored.bluemap.core.util.MathUtils;
-import de.bluecolored.bluemap.core.world.Block;
+import de.bluecolored.bluemap.core.world.BlockNeighborhood;
 import de.bluecolored.bluemap.core.world.BlockState;
+import de.bluecolored.bluemap.core.world.BlockWindow;
 import de.bluecolored.bluemap.core.world.World;
 
 public class HiresModelRenderer {
@@ -42,11 +46,18 @@ public class HiresModelRenderer {
 	private final String grassId; 
 	
 	private RenderSettings renderSettings;
-	private BlockStateModelFactory modelFactory;
+	@DebugDump private BlockStateModelFactory modelFactory;
+
+	private final ThreadLocal<BlockWindow> blockWindows;
+	private final ThreadLocal<BiomeColorField> colorFields;
+	private final ThreadLocal<HiresTileModel> tileModels;
 	
 	public HiresModelRenderer(ResourcePack resourcePack, RenderSettings renderSettings) {
 		this.renderSettings = renderSettings;
 		this.modelFactory = new BlockStateModelFactory(resourcePack, renderSettings);
+		this.blockWindows = new ThreadLocal<>();
+		this.colorFields = ThreadLocal.withInitial(resourcePack.getBlockColorCalculator()::createColorField);
+		this.tileModels = ThreadLocal.withInitial(() -> new HiresTileModel(renderSettings.isGreedyMeshing()));
 
 		if (resourcePack.getMinecraftVersion().isBefore(MinecraftVersion.THE_FLATTENING)) {
 			grassId = "minecraft:tall_grass";
@@ -56,11 +67,66 @@ public HiresModelRenderer(ResourcePack resourcePack, RenderSettings renderSettin
 	}
 	
 	public HiresModel render(World world, Vector3i modelMin, Vector3i modelMax) {
+		HiresModel model = new HiresModel(world.getUUID(), modelMin, modelMax);
+
+		// the faces are collected in buffers that are reused for all tiles of this thread,
+		// so only the arrays of the final geometry are allocated for each tile
+		HiresTileModel tileModel = tileModels.get();
+		tileModel.clear();
+
+		render(world, modelMin, modelMax, model, tileModel);
+
+		model.setGeometry(tileModel.toBufferGeometry());
+
+		return model;
+	}
+
+	private void render(World world, Vector3i modelMin, Vector3i modelMax, HiresModel model, HiresTileModel tileModel) {
 		Vector3i min = modelMin.max(renderSettings.getMin());
 		Vector3i max = modelMax.min(renderSettings.getMax());
 		Vector3f modelAnchor = new Vector3f(modelMin.getX(), 0, modelMin.getZ());
 		
-		HiresModel model = new HiresModel(world.getUUID(), modelMin, modelMax);
+		if (min.getX() > max.getX() || min.getZ() > max.getZ()) return;
+
+		// the y-range of each column, the top is bounded by the chunks heightmaps (if available)
+		int sizeX = max.getX() - min.getX() + 1, sizeZ = max.getZ() - min.getZ() + 1;
+		int[] columnMinY = new int[sizeX * sizeZ], columnMaxY = new int[sizeX * sizeZ];
+		int windowMinY = Integer.MAX_VALUE, windowMaxY = Integer.MIN_VALUE;
+		for (int x = min.getX(); x <= max.getX(); x++){
+			for (int z = min.getZ(); z <= max.getZ(); z++){
+				int column = (z - min.getZ()) * sizeX + (x - min.getX());
+				columnMinY[column] = Math.max(min.getY(), world.getMinY(x, z));
+				columnMaxY[column] = Math.min(max.getY(), world.getMaxY(x, z));
+
+				if (columnMinY[column] > columnMaxY[column]) continue;
+				windowMinY = Math.min(windowMinY, columnMinY[column]);
+				windowMaxY = Math.max(windowMaxY, columnMaxY[column]);
+			}
+		}
+		if (windowMinY > windowMaxY) return;
+
+		// load all blocks of the tile (and the blocks around it) once, so all (neighbor-) lookups are served from flat arrays
+		// the biomes are loaded a bit further around the tile, so the biome-blending does not need to leave the window either
+		// (the sky-light bounding looks at the columns 2 blocks around the tile, so in that case the window needs a bigger margin)
+		int margin = renderSettings.isExcludeFacesWithoutSunlight() ? 2 : 1;
+
+		BlockWindow window = getBlockWindow(world);
+		window.load(
+				min.getX() - margin, windowMinY - 1, min.getZ() - margin,
+				max.getX() + margin, windowMaxY + 1, max.getZ() + margin,
+				Math.max(BlockColorCalculator.BIOME_BLEND_RADIUS - margin, 0)
+		);
+
+		// the biome-colors are blended once per layer of the tile, instead of for each tinted block
+		BiomeColorField colorField = colorFields.get();
+		colorField.load(window, min.getX(), windowMinY, min.getZ(), max.getX(), windowMaxY, max.getZ());
+
+		if (renderSettings.isExcludeFacesWithoutSunlight()) {
+			boundColumnsBySkyLight(window, min, max, windowMinY, windowMaxY, columnMinY);
+		}
+
+		BlockNeighborhood block = new BlockNeighborhood(window);
+		BlockStateModel blockModel = new BlockStateModel(tileModel);
 		
 		for (int x = min.getX(); x <= max.getX(); x++){
 			for (int z = min.getZ(); z <= max.getZ(); z++){
@@ -68,47 +134,44 @@ public HiresModel render(World world, Vector3i modelMin, Vector3i modelMax) {
 				int maxHeight = 0;
 				Vector4f color = Vector4f.ZERO;
 
-				int minY = Math.max(min.getY(), world.getMinY(x, z));
-				int maxY = Math.min(max.getY(), world.getMaxY(x, z));
+				int column = (z - min.getZ()) * sizeX + (x - min.getX());
+				int minY = columnMinY[column];
+				int maxY = columnMaxY[column];
 
 				for (int y = minY; y <= maxY; y++){
-					Block block = world.getBlock(x, y, z);
-					if (block.getBlockState().equals(BlockState.AIR)) continue;
+					block.moveTo(x, y, z);
+					if (block.getBlockState() == BlockState.AIR) continue;
+
+					// the position of the block-model in the tile
+					float offsetX = x - modelAnchor.getX(), offsetY = y - modelAnchor.getY(), offsetZ = z - modelAnchor.getZ();
 
-					BlockStateModel blockModel;
+					//quick hack to random offset grass
+					if (block.getBlockState().getFullId().equals(grassId)){
+						offsetX += (MathUtils.hashToFloat(x, y, z, 123984) - 0.5f) * 0.75f;
+						offsetZ += (MathUtils.hashToFloat(x, y, z, 345542) - 0.5f) * 0.75f;
+					}
+
+					blockModel.reset(offsetX, offsetY, offsetZ);
 					try {
-						blockModel = modelFactory.createFrom(block);
+						modelFactory.render(block, blockModel, colorField);
 					} catch (NoSuchResourceException e) {
 						try {
-							blockModel = modelFactory.createFrom(block, BlockState.MISSING);
+							modelFactory.render(block, BlockState.MISSING, blockModel, colorField);
 						} catch (NoSuchResourceException e2) {
 							e.addSuppressed(e2);
-							blockModel = new BlockStateModel();
 						}
 						//Logger.global.noFloodDebug(block.getBlockState().getFullId() + "-hiresModelRenderer-blockmodelerr", "Failed to create BlockModel for BlockState: " + block.getBlockState() + " (" + e.toString() + ")");
 					}
 
 					// skip empty blocks
-					if (blockModel.getFaces().isEmpty()) continue;
+					if (blockModel.isEmpty()) continue;
 
-					// move block-model to correct position
-					blockModel.translate(new Vector3f(x - modelAnchor.getX(), y - modelAnchor.getY(), z - modelAnchor.getZ()));
-					
 					//update color and height (only if not 100% translucent)
 					Vector4f blockColor = blockModel.getMapColor();
 					if (blockColor.getW() > 0) {
 						maxHeight = y;
 						color = MathUtils.overlayColors(blockModel.getMapColor(), color);
 					}
-					
-					//quick hack to random offset grass
-					if (block.getBlockState().getFullId().equals(grassId)){
-						float dx = (MathUtils.hashToFloat(x, y, z, 123984) - 0.5f) * 0.75f;
-						float dz = (MathUtils.hashToFloat(x, y, z, 345542) - 0.5f) * 0.75f;
-						blockModel.translate(new Vector3f(dx, 0, dz));
-					}
-					
-					model.merge(blockModel);
 				}
 
 				model.setHeight(x, z, maxHeight);
@@ -116,8 +179,51 @@ public HiresModel render(World world, Vector3i modelMin, Vector3i modelMax) {
 				
 			}
 		}
-		
-		return model;
+	}
+
+	/**
+	 * Raises the bottom of each column to the lowest block that can have a face with sun-light.<br>
+	 * A face gets its light from the block it is facing or (if that is completely dark) from one of that block's neighbors,
+	 * so a block needs a sky-lit block within a (manhattan-) distance of 2 to have any face that is not excluded.
+	 */
+	private void boundColumnsBySkyLight(World world, Vector3i min, Vector3i max, int scanMinY, int scanMaxY, int[] columnMinY) {
+		int sizeX = max.getX() - min.getX() + 1, sizeZ = max.getZ() - min.getZ() + 1;
+		int litSizeX = sizeX + 4, litSizeZ = sizeZ + 4;
+
+		// the lowest sky-lit block of each column (in a margin of 2 around the tile)
+		int[] lowestSkyLit = new int[litSizeX * litSizeZ];
+		for (int lz = 0; lz < litSizeZ; lz++) {
+			for (int lx = 0; lx < litSizeX; lx++) {
+				int x = min.getX() - 2 + lx, z = min.getZ() - 2 + lz;
+
+				int y = scanMinY - 1;
+				while (y <= scanMaxY + 1 && world.getPackedLight(x, y, z) >> 4 == 0) y++;
+				lowestSkyLit[lz * litSizeX + lx] = y;
+			}
+		}
+
+		for (int z = 0; z < sizeZ; z++) {
+			for (int x = 0; x < sizeX; x++) {
+				int lowest = Integer.MAX_VALUE;
+				for (int lz = z; lz <= z + 4; lz++) {
+					for (int lx = x; lx <= x + 4; lx++) {
+						lowest = Math.min(lowest, lowestSkyLit[lz * litSizeX + lx]);
+					}
+				}
+
+				int column = z * sizeX + x;
+				columnMinY[column] = Math.max(columnMinY[column], lowest - 2);
+			}
+		}
+	}
+
+	private BlockWindow getBlockWindow(World world) {
+		BlockWindow window = blockWindows.get();
+		if (window == null || window.getWorld() != world) {
+			window = new BlockWindow(world);
+			blockWindows.set(window);
+		}
+		return window;
 	}
 	
 }
@@ -0,0 +1,237 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map.hires;
+
+import com.flowpowered.math.vector.Vector3f;
+import de.bluecolored.bluemap.core.threejs.BufferAttribute;
+import de.bluecolored.bluemap.core.threejs.BufferGeometry;
+import de.bluecolored.bluemap.core.threejs.MaterialGroup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The geometry of a hires-tile, stored in growable primitive arrays (one for each vertex-attribute).<br>
+ * The triangles are kept in a separate set of arrays for each material, so they are already grouped by material
+ * and can be written into a {@link BufferGeometry} without sorting or creating any objects per face.<br>
+ * <br>
+ * The arrays keep their capacity when the model is {@link #clear() cleared}, so one instance can be reused for many tiles.<br>
+ * <br>
+ * With greedy-meshing enabled, quads that cover a full side of a block are collected first and merged with their
+ * neighbors (see {@link GreedyMesher}) when the {@link BufferGeometry} is created.
+ */
+public class HiresTileModel {
+
+	private static final int INITIAL_CAPACITY = 64; // triangles per material
+
+	// the corners of the two triangles (0, 1, 2) and (0, 2, 3) of a quad
+	private static final int[] QUAD_CORNERS = {0, 1, 2, 0, 2, 3};
+
+	private MaterialBuffer[] materials;
+	private int triangleCount;
+
+	private final GreedyMesher greedyMesher;
+
+	public HiresTileModel() {
+		this(false);
+	}
+
+	public HiresTileModel(boolean greedyMeshing) {
+		this.materials = new MaterialBuffer[16];
+		this.triangleCount = 0;
+		this.greedyMesher = greedyMeshing ? new GreedyMesher() : null;
+	}
+
+	/**
+	 * Adds a quad as the two triangles (p0, p1, p2) and (p0, p2, p3).
+	 *
+	 * @param materialIndex the (non-negative) index of the material of the quad
+	 * @param positions the 4 corners (x, y, z), they are moved by the given offset
+	 * @param uvs the texture-coordinates (u, v) of the 4 corners
+	 * @param normals the normalized normals (x, y, z) of the two triangles
+	 * @param ao the ambient-occlusion of the 4 corners
+	 * @param color the vertex-color of all corners
+	 */
+	public void addQuad(
+			int materialIndex,
+			float[] positions, float[] uvs, float[] normals, float[] ao,
+			Vector3f color, float blockLight, float sunLight,
+			float offsetX, float offsetY, float offsetZ
+	) {
+		if (greedyMesher != null && greedyMesher.add(materialIndex, positions, uvs, normals, ao, color, blockLight, sunLight, offsetX, offsetY, offsetZ)) return;
+		appendQuad(materialIndex, positions, uvs, normals, ao, color, blockLight, sunLight, offsetX, offsetY, offsetZ);
+	}
+
+	void appendQuad(
+			int materialIndex,
+			float[] positions, float[] uvs, float[] normals, float[] ao,
+			Vector3f color, float blockLight, float sunLight,
+			float offsetX, float offsetY, float offsetZ
+	) {
+		MaterialBuffer buffer = getMaterialBuffer(materialIndex);
+		buffer.ensureCapacity(buffer.size + 2);
+
+		float r = color.getX(), g = color.getY(), b = color.getZ();
+
+		int vertex = buffer.size * 3;
+		for (int i = 0; i < 6; i++, vertex++) {
+			int corner = QUAD_CORNERS[i];
+			int v3 = vertex * 3, c3 = corner * 3, n3 = (i / 3) * 3;
+
+			buffer.position[v3    ] = positions[c3    ] + offsetX;
+			buffer.position[v3 + 1] = positions[c3 + 1] + offsetY;
+			buffer.position[v3 + 2] = positions[c3 + 2] + offsetZ;
+
+			buffer.normal[v3    ] = normals[n3    ];
+			buffer.normal[v3 + 1] = normals[n3 + 1];
+			buffer.normal[v3 + 2] = normals[n3 + 2];
+
+			buffer.color[v3    ] = r;
+			buffer.color[v3 + 1] = g;
+			buffer.color[v3 + 2] = b;
+
+			buffer.uv[vertex * 2    ] = uvs[corner * 2    ];
+			buffer.uv[vertex * 2 + 1] = uvs[corner * 2 + 1];
+
+			buffer.ao[vertex] = ao[corner];
+			buffer.blockLight[vertex] = blockLight;
+			buffer.sunLight[vertex] = sunLight;
+		}
+
+		buffer.size += 2;
+		triangleCount += 2;
+	}
+
+	/**
+	 * Removes all triangles, but keeps the allocated arrays
+	 */
+	public void clear() {
+		if (greedyMesher != null) greedyMesher.clear();
+		for (MaterialBuffer buffer : materials) {
+			if (buffer != null) buffer.size = 0;
+		}
+		triangleCount = 0;
+	}
+
+	/**
+	 * The number of triangles of this model, not counting the faces that are still waiting to be merged
+	 */
+	public int getTriangleCount() {
+		return triangleCount;
+	}
+
+	/**
+	 * Creates a {@link BufferGeometry} of this model, with the triangles grouped by ascending material-index.<br>
+	 * If greedy-meshing is enabled, the collected faces are merged and added to this model first.
+	 */
+	public BufferGeometry toBufferGeometry() {
+		if (greedyMesher != null) greedyMesher.merge(this);
+
+		float[] position = new float[triangleCount * 9];
+		float[] normal = new float[triangleCount * 9];
+		float[] color = new float[triangleCount * 9];
+		float[] uv = new float[triangleCount * 6];
+		float[] ao = new float[triangleCount * 3];
+		float[] blockLight = new float[triangleCount * 3];
+		float[] sunLight = new float[triangleCount * 3];
+
+		List<MaterialGroup> groups = new ArrayList<>();
+		int start = 0;
+		for (int materialIndex = 0; materialIndex < materials.length; materialIndex++) {
+			MaterialBuffer buffer = materials[materialIndex];
+			if (buffer == null || buffer.size == 0) continue;
+
+			int size = buffer.size;
+			System.arraycopy(buffer.position, 0, position, start * 9, size * 9);
+			System.arraycopy(buffer.normal, 0, normal, start * 9, size * 9);
+			System.arraycopy(buffer.color, 0, color, start * 9, size * 9);
+			System.arraycopy(buffer.uv, 0, uv, start * 6, size * 6);
+			System.arraycopy(buffer.ao, 0, ao, start * 3, size * 3);
+			System.arraycopy(buffer.blockLight, 0, blockLight, start * 3, size * 3);
+			System.arraycopy(buffer.sunLight, 0, sunLight, start * 3, size * 3);
+
+			groups.add(new MaterialGroup(materialIndex, start * 3, size * 3));
+			start += size;
+		}
+
+		// an empty model still has one (empty) group
+		if (groups.isEmpty()) groups.add(new MaterialGroup(-1, 0, 0));
+
+		BufferGeometry geo = new BufferGeometry(position, normal, color, uv, groups.toArray(new MaterialGroup[groups.size()]));
+		geo.addAttribute("ao", new BufferAttribute(ao, 1));
+		geo.addAttribute("blocklight", new BufferAttribute(blockLight, 1));
+		geo.addAttribute("sunlight", new BufferAttribute(sunLight, 1));
+
+		return geo;
+	}
+
+	private MaterialBuffer getMaterialBuffer(int materialIndex) {
+		if (materialIndex >= materials.length) {
+			materials = Arrays.copyOf(materials, Math.max(materials.length * 2, materialIndex + 1));
+		}
+
+		MaterialBuffer buffer = materials[materialIndex];
+		if (buffer == null) {
+			buffer = new MaterialBuffer();
+			materials[materialIndex] = buffer;
+		}
+
+		return buffer;
+	}
+
+	private static class MaterialBuffer {
+
+		private float[] position, normal, color, uv, ao, blockLight, sunLight;
+		private int size; // triangles
+
+		private MaterialBuffer() {
+			allocate(INITIAL_CAPACITY);
+			this.size = 0;
+		}
+
+		private void ensureCapacity(int triangles) {
+			if (ao.length >= triangles * 3) return;
+			allocate(Math.max(triangles, size * 2));
+		}
+
+		private void allocate(int triangles) {
+			position = grow(position, triangles * 9);
+			normal = grow(normal, triangles * 9);
+			color = grow(color, triangles * 9);
+			uv = grow(uv, triangles * 6);
+			ao = grow(ao, triangles * 3);
+			blockLight = grow(blockLight, triangles * 3);
+			sunLight = grow(sunLight, triangles * 3);
+		}
+
+		private static float[] grow(float[] array, int length) {
+			if (array == null) return new float[length];
+			return Arrays.copyOf(array, length);
+		}
+
+	}
+
+}
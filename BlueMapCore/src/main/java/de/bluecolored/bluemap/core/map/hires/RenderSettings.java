@@ -61,6 +61,14 @@ default boolean isRenderEdges() {
 		return true;
 	}
 	
+	/**
+	 * If adjacent, coplanar block-faces with the same texture, tint, light and ao are merged into bigger faces.<br>
+	 * The textures of merged faces repeat once per block, so the web-application has to render them with repeat-wrapping.
+	 */
+	default boolean isGreedyMeshing() {
+		return false;
+	}
+	
 	/**
 	 * If gzip compression will be used to compress the generated files
 	 */
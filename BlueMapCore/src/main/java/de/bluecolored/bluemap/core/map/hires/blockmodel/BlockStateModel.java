@@ -24,35 +24,54 @@
  */
 package de.bluecolored.bluemap.core.map.hires.blockmodel;
 
+import com.flowpowered.math.vector.Vector3f;
 import com.flowpowered.math.vector.Vector4f;
 
-import de.bluecolored.bluemap.core.model.ExtendedFace;
-import de.bluecolored.bluemap.core.model.ExtendedModel;
-import de.bluecolored.bluemap.core.model.Model;
+import de.bluecolored.bluemap.core.map.hires.HiresTileModel;
 import de.bluecolored.bluemap.core.util.MathUtils;
 
 /**
- * A model with some extra information about the BlockState it represents
+ * The model of the BlockState at one position of a tile.<br>
+ * The faces are not stored here, they are added directly into the {@link HiresTileModel} (moved to the position of the block),
+ * this only keeps track of the map-color and whether the block added any faces.
  */
-public class BlockStateModel extends ExtendedModel {
+public class BlockStateModel {
 
+	private final HiresTileModel tileModel;
+	private float offsetX, offsetY, offsetZ;
+	private int quadCount;
 	private Vector4f mapColor;
 	
-	public BlockStateModel(){
-		this(Vector4f.ZERO);
+	public BlockStateModel(HiresTileModel tileModel) {
+		this.tileModel = tileModel;
+		reset(0, 0, 0);
 	}
-	
-	public BlockStateModel(Vector4f mapColor) {
-		this.mapColor = mapColor;
+
+	/**
+	 * Clears this model to be used for the next block, which will be added to the tile at the given position
+	 */
+	public void reset(float offsetX, float offsetY, float offsetZ) {
+		this.offsetX = offsetX;
+		this.offsetY = offsetY;
+		this.offsetZ = offsetZ;
+		this.quadCount = 0;
+		this.mapColor = Vector4f.ZERO;
+	}
+
+	/**
+	 * Adds a quad to the tile-model, see {@link HiresTileModel#addQuad}
+	 */
+	public void addQuad(
+			int materialIndex,
+			float[] positions, float[] uvs, float[] normals, float[] ao,
+			Vector3f color, float blockLight, float sunLight
+	) {
+		tileModel.addQuad(materialIndex, positions, uvs, normals, ao, color, blockLight, sunLight, offsetX, offsetY, offsetZ);
+		quadCount++;
 	}
 
-	@Override
-	public void merge(Model<ExtendedFace> model) {
-		super.merge(model);
-		
-		if (model instanceof BlockStateModel){
-			mergeMapColor(((BlockStateModel) model).getMapColor());
-		}
+	public boolean isEmpty() {
+		return quadCount == 0;
 	}
 	
 	public Vector4f getMapColor() {
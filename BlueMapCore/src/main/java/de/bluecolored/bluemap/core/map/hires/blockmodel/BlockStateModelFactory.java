@@ -24,30 +24,62 @@
  */
 package de.bluecolored.bluemap.core.map.hires.blockmodel;
 
+import de.bluecolored.bluemap.core.debug.DebugDump;
 import de.bluecolored.bluemap.core.map.hires.RenderSettings;
-import de.bluecolored.bluemap.core.resourcepack.BlockColorCalculator;
-import de.bluecolored.bluemap.core.resourcepack.BlockStateResource;
+import de.bluecolored.bluemap.core.resourcepack.BakedBlockModel;
+import de.bluecolored.bluemap.core.resourcepack.BiomeColorField;
+import de.bluecolored.bluemap.core.resourcepack.BlockStateResource.Variant;
 import de.bluecolored.bluemap.core.resourcepack.NoSuchResourceException;
 import de.bluecolored.bluemap.core.resourcepack.ResourcePack;
 import de.bluecolored.bluemap.core.resourcepack.TransformedBlockModelResource;
-import de.bluecolored.bluemap.core.world.Block;
+import de.bluecolored.bluemap.core.world.BlockNeighborhood;
 import de.bluecolored.bluemap.core.world.BlockState;
+import de.bluecolored.bluemap.core.world.BlockStateIdMap;
+
+import java.util.concurrent.atomic.LongAdder;
 
 public class BlockStateModelFactory {
 
 	private RenderSettings renderSettings;
 	private ResourcePack resourcePack;
+
+	private final BlockStateIdMap<Variant[]> stateVariants;
+	private final LongAdder bakedModelHits, bakedModelMisses;
+
+	// the builders only hold the state of the block they are currently building, so each render-thread reuses its own
+	private final ThreadLocal<ResourceModelBuilder> modelBuilders;
+	private final ThreadLocal<LiquidModelBuilder> liquidBuilders;
 	
 	public BlockStateModelFactory(ResourcePack resourcePack, RenderSettings renderSettings) {
 		this.renderSettings = renderSettings;
 		this.resourcePack = resourcePack;
+
+		this.stateVariants = new BlockStateIdMap<>(this::loadVariants);
+		this.bakedModelHits = new LongAdder();
+		this.bakedModelMisses = new LongAdder();
+
+		this.modelBuilders = ThreadLocal.withInitial(() -> new ResourceModelBuilder(renderSettings, resourcePack.getBlockColorCalculator()));
+		this.liquidBuilders = ThreadLocal.withInitial(() -> new LiquidModelBuilder(resourcePack.getMinecraftVersion(), renderSettings, resourcePack.getBlockColorCalculator()));
 	}
 
-	public BlockStateModel createFrom(Block block) throws NoSuchResourceException {
-		return createFrom(block, block.getBlockState());
+	public void render(BlockNeighborhood block, BlockStateModel model) throws NoSuchResourceException {
+		render(block, block.getBlockState(), model);
 	}
 	
-	public BlockStateModel createFrom(Block block, BlockState blockState) throws NoSuchResourceException {
+	public void render(BlockNeighborhood block, BlockState blockState, BlockStateModel model) throws NoSuchResourceException {
+		render(block, blockState, model, null);
+	}
+
+	public void render(BlockNeighborhood block, BlockStateModel model, BiomeColorField colorField) throws NoSuchResourceException {
+		render(block, block.getBlockState(), model, colorField);
+	}
+
+	/**
+	 * Adds the faces of the block with the given block-state to the model.<br>
+	 * If a {@link BiomeColorField} is given (may be <code>null</code>), the biome-tints are looked up there.<br>
+	 * If there is no resource for the block-state, a {@link NoSuchResourceException} is thrown before any face has been added.
+	 */
+	public void render(BlockNeighborhood block, BlockState blockState, BlockStateModel model, BiomeColorField colorField) throws NoSuchResourceException {
 		
 		//shortcut for air
 		if (
@@ -55,40 +87,88 @@ public BlockStateModel createFrom(Block block, BlockState blockState) throws NoS
 				blockState.getFullId().equals("minecraft:cave_air") ||
 				blockState.getFullId().equals("minecraft:void_air")
 		) {
-			return new BlockStateModel();
+			return;
 		}
 		
-		BlockStateModel model = createModel(block, blockState);
+		Variant[] variants = getVariants(blockState);
+		Variant[] waterVariants = null;
 		
 		// if block is waterlogged
 		if (LiquidModelBuilder.isWaterlogged(blockState)) {
-			model.merge(createModel(block, WATERLOGGED_BLOCKSTATE));
+			waterVariants = getVariants(WATERLOGGED_BLOCKSTATE);
+		}
+
+		renderModel(block, blockState, variants, model, colorField);
+		if (waterVariants != null) {
+			renderModel(block, WATERLOGGED_BLOCKSTATE, waterVariants, model, colorField);
 		}
-		
-		return model;
 	}
 
-	private BlockStateModel createModel(Block block, BlockState blockState) throws NoSuchResourceException {
-		
-		BlockStateResource resource = resourcePack.getBlockStateResource(blockState);
-		BlockStateModel model = new BlockStateModel();
-		BlockColorCalculator colorCalculator = resourcePack.getBlockColorCalculator();
-		ResourceModelBuilder modelBuilder = new ResourceModelBuilder(block, renderSettings, colorCalculator);
-		LiquidModelBuilder liquidBuilder = new LiquidModelBuilder(block, blockState, resourcePack.getMinecraftVersion(), renderSettings, colorCalculator);
+	private void renderModel(BlockNeighborhood block, BlockState blockState, Variant[] variants, BlockStateModel model, BiomeColorField colorField) {
+		ResourceModelBuilder modelBuilder = modelBuilders.get();
+		modelBuilder.reset(block, colorField);
+		LiquidModelBuilder liquidBuilder = null;
 		
-		for (TransformedBlockModelResource bmr : resource.getModels(blockState, block.getPosition())){
+		for (Variant variant : variants){
+			TransformedBlockModelResource bmr = variant.getModel(block.getX(), block.getY(), block.getZ());
 			switch (bmr.getModel().getType()){
 			case LIQUID:
-				model.merge(liquidBuilder.build(bmr));
+				if (liquidBuilder == null) {
+					liquidBuilder = liquidBuilders.get();
+					liquidBuilder.reset(block, blockState, colorField);
+				}
+				liquidBuilder.build(bmr, model);
 				break;
 			default:
-				model.merge(modelBuilder.build(bmr));
+				modelBuilder.build(getBakedModel(bmr), model);
 				break;
 			}
 		}
 		
-		return model;
-		
+	}
+
+	private Variant[] getVariants(BlockState blockState) throws NoSuchResourceException {
+		Variant[] variants = stateVariants.get(blockState);
+		if (variants == null) throw new NoSuchResourceException("No resource for blockstate: " + blockState.getFullId());
+		return variants;
+	}
+
+	/**
+	 * Returns the baked geometry of the model, models that have not been baked with the resource-pack are baked the first time they are requested
+	 */
+	private BakedBlockModel getBakedModel(TransformedBlockModelResource bmr) {
+		BakedBlockModel bakedModel = bmr.getBakedModel();
+		if (bakedModel != null) {
+			bakedModelHits.increment();
+			return bakedModel;
+		}
+
+		bakedModelMisses.increment();
+		return bmr.bake();
+	}
+
+	private Variant[] loadVariants(BlockState blockState) {
+		try {
+			return resourcePack.getBlockStateResource(blockState).getVariants(blockState).toArray(new Variant[0]);
+		} catch (NoSuchResourceException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * The number of model-lookups that were served by a model baked with the resource-pack
+	 */
+	@DebugDump("bakedModelHits")
+	public long getBakedModelHits() {
+		return bakedModelHits.sum();
+	}
+
+	/**
+	 * The number of model-lookups that needed to bake the model (or did not have a baked model yet)
+	 */
+	@DebugDump("bakedModelMisses")
+	public long getBakedModelMisses() {
+		return bakedModelMisses.sum();
 	}
 	
 	private BlockState WATERLOGGED_BLOCKSTATE = new BlockState("minecraft:water");
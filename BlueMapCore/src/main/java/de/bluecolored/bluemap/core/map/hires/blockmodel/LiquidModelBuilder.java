@@ -24,20 +24,18 @@
  */
 package de.bluecolored.bluemap.core.map.hires.blockmodel;
 
-import com.flowpowered.math.matrix.Matrix3f;
-import com.flowpowered.math.vector.Vector2f;
 import com.flowpowered.math.vector.Vector3f;
 import com.flowpowered.math.vector.Vector4f;
 import de.bluecolored.bluemap.core.MinecraftVersion;
 import de.bluecolored.bluemap.core.map.hires.RenderSettings;
-import de.bluecolored.bluemap.core.model.ExtendedFace;
-import de.bluecolored.bluemap.core.model.ExtendedModel;
+import de.bluecolored.bluemap.core.resourcepack.BiomeColorField;
 import de.bluecolored.bluemap.core.resourcepack.BlockColorCalculator;
 import de.bluecolored.bluemap.core.resourcepack.BlockModelResource;
 import de.bluecolored.bluemap.core.resourcepack.Texture;
 import de.bluecolored.bluemap.core.resourcepack.TransformedBlockModelResource;
 import de.bluecolored.bluemap.core.util.Direction;
 import de.bluecolored.bluemap.core.world.Block;
+import de.bluecolored.bluemap.core.world.BlockNeighborhood;
 import de.bluecolored.bluemap.core.world.BlockState;
 
 import java.util.Arrays;
@@ -55,29 +53,61 @@ public class LiquidModelBuilder {
 			"minecraft:kelp_plant",
 			"minecraft:bubble_column"
 	));
+
+	// the uvs of the 4 corners of a face, liquids always use the full texture
+	private static final float[] UVS = {0f, 1f, 1f, 1f, 1f, 0f, 0f, 0f};
+	private static final float[] NO_AO = {1f, 1f, 1f, 1f};
 	
-	private final BlockState liquidBlockState;
-	private final Block block;
 	private final RenderSettings renderSettings;
 	private final BlockColorCalculator colorCalculator;
 
 	private final boolean useWaterColorMap;
+
+	private final float[] corners, positions, normals;
+
+	private BlockState liquidBlockState;
+	private BlockNeighborhood block;
+	private BiomeColorField colorField;
 	
-	public LiquidModelBuilder(Block block, BlockState liquidBlockState, MinecraftVersion minecraftVersion, RenderSettings renderSettings, BlockColorCalculator colorCalculator) {
-		this.block = block;
+	public LiquidModelBuilder(BlockNeighborhood block, BlockState liquidBlockState, MinecraftVersion minecraftVersion, RenderSettings renderSettings, BlockColorCalculator colorCalculator) {
+		this(block, liquidBlockState, minecraftVersion, renderSettings, colorCalculator, null);
+	}
+	
+	public LiquidModelBuilder(BlockNeighborhood block, BlockState liquidBlockState, MinecraftVersion minecraftVersion, RenderSettings renderSettings, BlockColorCalculator colorCalculator, BiomeColorField colorField) {
+		this(minecraftVersion, renderSettings, colorCalculator);
+		reset(block, liquidBlockState, colorField);
+	}
+
+	/**
+	 * Creates a builder that can be reused for many blocks, it needs to be {@link #reset(BlockNeighborhood, BlockState, BiomeColorField) reset}
+	 * to a block before it can build anything.
+	 */
+	public LiquidModelBuilder(MinecraftVersion minecraftVersion, RenderSettings renderSettings, BlockColorCalculator colorCalculator) {
 		this.renderSettings = renderSettings;
-		this.liquidBlockState = liquidBlockState;
 		this.colorCalculator = colorCalculator;
 
 		this.useWaterColorMap = minecraftVersion.isAtLeast(new MinecraftVersion(1, 13));
+
+		this.corners = new float[8 * 3];
+		this.positions = new float[4 * 3];
+		this.normals = new float[2 * 3];
 	}
 
-	public BlockStateModel build(TransformedBlockModelResource bmr) {
-		return build(bmr.getModel());
+	/**
+	 * Moves this builder to the given block, rendered with the given liquid block-state (the {@link BiomeColorField} may be <code>null</code>)
+	 */
+	public void reset(BlockNeighborhood block, BlockState liquidBlockState, BiomeColorField colorField) {
+		this.block = block;
+		this.liquidBlockState = liquidBlockState;
+		this.colorField = colorField;
+	}
+
+	public void build(TransformedBlockModelResource bmr, BlockStateModel model) {
+		build(bmr.getModel(), model);
 	}
 	
-	public BlockStateModel build(BlockModelResource bmr) {
-		if (this.renderSettings.isExcludeFacesWithoutSunlight() && block.getSunLightLevel() == 0) return new BlockStateModel();
+	public void build(BlockModelResource bmr, BlockStateModel model) {
+		if (this.renderSettings.isExcludeFacesWithoutSunlight() && block.getSunLightLevel() == 0) return;
 		
 		int level = getLiquidLevel(block.getBlockState());
 		float[] heights = new float[]{16f, 16f, 16f, 16f};
@@ -94,42 +124,41 @@ public BlockStateModel build(BlockModelResource bmr) {
 			coloralpha = 0.8f;
 		}
 		
-		BlockStateModel model = new BlockStateModel();
 		Texture texture = bmr.getTexture("still");
 		
-		Vector3f[] c = new Vector3f[]{
-			new Vector3f( 0, 0, 0 ),
-			new Vector3f( 0, 0, 16 ),
-			new Vector3f( 16, 0, 0 ),
-			new Vector3f( 16, 0, 16 ),
-			new Vector3f( 0, heights[0], 0 ),
-			new Vector3f( 0, heights[1], 16 ),
-			new Vector3f( 16, heights[2], 0 ),
-			new Vector3f( 16, heights[3], 16 ),
-		};
+		//the corners, scaled down to block-size
+		setCorner(0, 0, 0, 0);
+		setCorner(1, 0, 0, 16);
+		setCorner(2, 16, 0, 0);
+		setCorner(3, 16, 0, 16);
+		setCorner(4, 0, heights[0], 0);
+		setCorner(5, 0, heights[1], 16);
+		setCorner(6, 16, heights[2], 0);
+		setCorner(7, 16, heights[3], 16);
 
 		int textureId = texture.getId();
 		Vector3f tintcolor = Vector3f.ONE;
 		if (useWaterColorMap && liquidBlockState.getFullId().equals("minecraft:water")) {
-			tintcolor = colorCalculator.getWaterAverageColor(block);
+			tintcolor = colorCalculator.getWaterAverageColor(block, colorField);
 		}
 		
-		createElementFace(model, Direction.DOWN, c[0], c[2], c[3], c[1], tintcolor, textureId);
-		createElementFace(model, Direction.UP, c[5], c[7], c[6], c[4], tintcolor, textureId);
-		createElementFace(model, Direction.NORTH, c[2], c[0], c[4], c[6], tintcolor, textureId);
-		createElementFace(model, Direction.SOUTH, c[1], c[3], c[7], c[5], tintcolor, textureId);
-		createElementFace(model, Direction.WEST, c[0], c[1], c[5], c[4], tintcolor, textureId);
-		createElementFace(model, Direction.EAST, c[3], c[2], c[6], c[7], tintcolor, textureId);
-	
-		//scale down
-		model.transform(Matrix3f.createScaling(1f / 16f));
+		createElementFace(model, Direction.DOWN, 0, 2, 3, 1, tintcolor, textureId);
+		createElementFace(model, Direction.UP, 5, 7, 6, 4, tintcolor, textureId);
+		createElementFace(model, Direction.NORTH, 2, 0, 4, 6, tintcolor, textureId);
+		createElementFace(model, Direction.SOUTH, 1, 3, 7, 5, tintcolor, textureId);
+		createElementFace(model, Direction.WEST, 0, 1, 5, 4, tintcolor, textureId);
+		createElementFace(model, Direction.EAST, 3, 2, 6, 7, tintcolor, textureId);
 
 		//calculate mapcolor
 		Vector4f mapcolor = texture.getColor();
 		mapcolor = mapcolor.mul(tintcolor.toVector4(coloralpha));
-		model.setMapColor(mapcolor);
-		
-		return model;
+		model.mergeMapColor(mapcolor);
+	}
+
+	private void setCorner(int corner, float x, float y, float z) {
+		corners[corner * 3    ] = x / 16f;
+		corners[corner * 3 + 1] = y / 16f;
+		corners[corner * 3 + 2] = z / 16f;
 	}
 	
 	private float getLiquidCornerHeight(int x, int y, int z){
@@ -168,7 +197,7 @@ else if (!isLiquidBlockingBlock(b)){
 	}
 	
 	private boolean isLiquidBlockingBlock(Block block){
-		if (block.getBlockState().equals(BlockState.AIR)) return false;
+		if (block.getBlockState() == BlockState.AIR) return false;
 		return true;
 	}
 
@@ -194,61 +223,49 @@ private int getLiquidLevel(BlockState block){
 		return 0;
 	}
 	
-	private void createElementFace(ExtendedModel model, Direction faceDir, Vector3f c0, Vector3f c1, Vector3f c2, Vector3f c3, Vector3f color, int textureId) {
+	private void createElementFace(BlockStateModel model, Direction faceDir, int c0, int c1, int c2, int c3, Vector3f color, int textureId) {
 		
 		//face culling
 		Block bl = block.getRelativeBlock(faceDir);
 		if (isLiquid(bl) || (faceDir != Direction.UP && bl.isCullingNeighborFaces())) return;
-		
-		//UV
-		Vector4f uv = new Vector4f(0, 0, 16, 16).div(16);
 
-		//create both triangles
-		Vector2f[] uvs = new Vector2f[4];
-		uvs[0] = new Vector2f(uv.getX(), uv.getW());
-		uvs[1] = new Vector2f(uv.getZ(), uv.getW());
-		uvs[2] = new Vector2f(uv.getZ(), uv.getY());
-		uvs[3] = new Vector2f(uv.getX(), uv.getY());
-		
-		ExtendedFace f1 = new ExtendedFace(c0, c1, c2, uvs[0], uvs[1], uvs[2], textureId);
-		ExtendedFace f2 = new ExtendedFace(c0, c2, c3, uvs[0], uvs[2], uvs[3], textureId);
+		System.arraycopy(corners, c0 * 3, positions, 0, 3);
+		System.arraycopy(corners, c1 * 3, positions, 3, 3);
+		System.arraycopy(corners, c2 * 3, positions, 6, 3);
+		System.arraycopy(corners, c3 * 3, positions, 9, 3);
+
+		//the normals of both triangles (0, 1, 2) and (0, 2, 3)
+		setSurfaceNormal(0, 0, 1, 2);
+		setSurfaceNormal(1, 0, 2, 3);
 		
 		// move face in a tiny bit to avoid z-fighting with waterlogged blocks (doesn't work because it is rounded back when storing the model later)
 		//f1.translate(faceDir.opposite().toVector().toFloat().mul(0.01));
 		//f2.translate(faceDir.opposite().toVector().toFloat().mul(0.01));
 		
-		float blockLight = bl.getBlockLightLevel();
-		float sunLight = bl.getSunLightLevel();
-		
-		if (faceDir == Direction.UP) {
-			blockLight = block.getBlockLightLevel();
-			sunLight = block.getSunLightLevel();
-		}
-		
-		f1.setC1(color);
-		f1.setC2(color);
-		f1.setC3(color);
-		f2.setC1(color);
-		f2.setC2(color);
-		f2.setC3(color);
-		
-		f1.setBl1(blockLight);
-		f1.setBl2(blockLight);
-		f1.setBl3(blockLight);
-		f2.setBl1(blockLight);
-		f2.setBl2(blockLight);
-		f2.setBl3(blockLight);
-		
-		f1.setSl1(sunLight);
-		f1.setSl2(sunLight);
-		f1.setSl3(sunLight);
-		f2.setSl1(sunLight);
-		f2.setSl2(sunLight);
-		f2.setSl3(sunLight);
+		int light = faceDir == Direction.UP ? block.getPackedLight() : bl.getPackedLight();
+		float blockLight = light & 0xF;
+		float sunLight = light >> 4;
 		
 		//add the face
-		model.addFace(f1);
-		model.addFace(f2);
+		model.addQuad(textureId, positions, UVS, normals, NO_AO, color, blockLight, sunLight);
+	}
+
+	private void setSurfaceNormal(int triangle, int p1, int p2, int p3) {
+		float ux = positions[p2 * 3    ] - positions[p1 * 3    ];
+		float uy = positions[p2 * 3 + 1] - positions[p1 * 3 + 1];
+		float uz = positions[p2 * 3 + 2] - positions[p1 * 3 + 2];
+		float vx = positions[p3 * 3    ] - positions[p1 * 3    ];
+		float vy = positions[p3 * 3 + 1] - positions[p1 * 3 + 1];
+		float vz = positions[p3 * 3 + 2] - positions[p1 * 3 + 2];
+
+		float nx = uy * vz - uz * vy;
+		float ny = uz * vx - ux * vz;
+		float nz = ux * vy - uy * vx;
+		float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+
+		normals[triangle * 3    ] = nx / length;
+		normals[triangle * 3 + 1] = ny / length;
+		normals[triangle * 3 + 2] = nz / length;
 	}
 	
 	public static boolean isWaterlogged(BlockState blockState) {
@@ -25,10 +25,13 @@
 package de.bluecolored.bluemap.core.mca;
 
 import com.flowpowered.math.vector.Vector3i;
+import de.bluecolored.bluemap.core.mca.extensions.BlockAccess;
 import de.bluecolored.bluemap.core.mca.mapping.BiomeMapper;
 import de.bluecolored.bluemap.core.mca.mapping.BlockIdMapper;
+import de.bluecolored.bluemap.core.mca.mapping.BlockPropertiesMapper;
 import de.bluecolored.bluemap.core.world.Biome;
 import de.bluecolored.bluemap.core.world.BlockState;
+import de.bluecolored.bluemap.core.world.BlockStateRegistry;
 import de.bluecolored.bluemap.core.world.LightData;
 import net.querz.nbt.CompoundTag;
 import net.querz.nbt.ListTag;
@@ -37,22 +40,38 @@
 import java.util.Arrays;
 import java.util.function.IntFunction;
 
+/**
+ * A chunk in the legacy (pre 1.13) format.<br>
+ * The numeral block-ids of the sections are mapped to interned block-states once, when the chunk is loaded. 
+ * The block-state-extensions are resolved in the same pass, for all blocks whose extensions only need to look at neighbors that are inside this chunk.
+ * Only for the remaining blocks (at the chunk-borders) the extensions need to be applied by the world when the block is requested, 
+ * see {@link #isExtensionPending(int, int, int)}.
+ */
 public class ChunkAnvil112 extends MCAChunk {
-	private final BiomeMapper biomeIdMapper;
-	private final BlockIdMapper blockIdMapper;
+	/** The NBT-paths of the chunk-data this class reads */
+	static final String[] NBT_PATHS = {
+			"Level.LightPopulated",
+			"Level.TerrainPopulated",
+			"Level.Biomes",
+			"Level.Sections.Y",
+			"Level.Sections.Blocks",
+			"Level.Sections.Add",
+			"Level.Sections.Data",
+			"Level.Sections.BlockLight",
+			"Level.Sections.SkyLight"
+	};
+
 	private final IntFunction<String> forgeBlockIdMapper;
 	
 	private boolean isGenerated;
 	private boolean hasLight;
 	private Section[] sections;
-	private byte[] biomes;
+	private Biome[] biomes;
 	
 	@SuppressWarnings("unchecked")
-	public ChunkAnvil112(CompoundTag chunkTag, boolean ignoreMissingLightData, BiomeMapper biomeIdMapper, BlockIdMapper blockIdMapper, IntFunction<String> forgeBlockIdMapper) {
+	public ChunkAnvil112(CompoundTag chunkTag, boolean ignoreMissingLightData, BiomeMapper biomeIdMapper, BlockIdMapper blockIdMapper, IntFunction<String> forgeBlockIdMapper, MCAWorld world) {
 		super(chunkTag);
 		
-		this.blockIdMapper = blockIdMapper;
-		this.biomeIdMapper = biomeIdMapper;
 		this.forgeBlockIdMapper = forgeBlockIdMapper;
 		
 		CompoundTag levelData = chunkTag.getCompoundTag("Level");
@@ -69,17 +88,38 @@ public ChunkAnvil112(CompoundTag chunkTag, boolean ignoreMissingLightData, Biome
 				Section section = new Section(sectionTag);
 				if (section.getSectionY() >= 0 && section.getSectionY() < sections.length) sections[section.getSectionY()] = section;
 			}
+			
+			// first map all id:meta's to their plain block-states, so the extensions can look at the neighbors in the second pass
+			KeyTable rawStateCache = new KeyTable();
+			int[][] rawStates = new int[sections.length][];
+			for (Section section : sections) {
+				if (section == null) continue;
+				rawStates[section.getSectionY()] = section.decodeRawStates(rawStateCache, blockIdMapper, forgeBlockIdMapper, world);
+			}
+			
+			ChunkBlockAccess blockAccess = new ChunkBlockAccess(rawStates, world);
+			for (Section section : sections) {
+				if (section == null) continue;
+				section.buildPalette(rawStates[section.getSectionY()], blockAccess, world);
+			}
 		}
 		
-		biomes = levelData.getByteArray("Biomes");
+		byte[] biomeIds = levelData.getByteArray("Biomes");
 		
-		if (biomes == null || biomes.length == 0) {
-			biomes = new byte[256];
+		if (biomeIds == null || biomeIds.length == 0) {
+			biomeIds = new byte[256];
 		}
 		
-		if (biomes.length < 256) {
-			biomes = Arrays.copyOf(biomes, 256);
+		if (biomeIds.length < 256) {
+			biomeIds = Arrays.copyOf(biomeIds, 256);
 		}
+		
+		int[] unsignedBiomeIds = new int[biomeIds.length];
+		for (int i = 0; i < biomeIds.length; i++) {
+			unsignedBiomeIds[i] = biomeIds[i] & 0xFF;
+		}
+		
+		this.biomes = resolveBiomes(unsignedBiomeIds, biomeIdMapper);
 	}
 
 	@Override
@@ -88,38 +128,66 @@ public boolean isGenerated() {
 	}
 
 	@Override
-	public BlockState getBlockState(Vector3i pos) {
-		int sectionY = pos.getY() >> 4;
-		if (sectionY < 0 || sectionY >= this.sections.length) return BlockState.AIR;
+	public BlockState getBlockState(int x, int y, int z) {
+		return BlockStateRegistry.get(getBlockStateId(x, y, z));
+	}
+	
+	@Override
+	public int getBlockStateId(int x, int y, int z) {
+		Section section = getSection(y);
+		if (section == null) return BlockState.AIR.getStateId();
 		
-		Section section = this.sections[sectionY];
+		return section.getBlockStateId(x, y, z);
+	}
+	
+	/**
+	 * Returns the block-state at this position as it is saved in the chunk, without any block-state-extensions applied.
+	 */
+	public BlockState getRawBlockState(int x, int y, int z) {
+		Section section = getSection(y);
 		if (section == null) return BlockState.AIR;
 		
-		return section.getBlockState(pos);
+		return BlockStateRegistry.get(section.getRawBlockStateId(x, y, z));
 	}
 	
-	public String getBlockIdMeta(Vector3i pos) {
-		int sectionY = pos.getY() >> 4;
-		if (sectionY < 0 || sectionY >= this.sections.length) return "0:0";
+	/**
+	 * Returns <code>true</code> if the block-state-extensions of the block at this position could not be resolved 
+	 * when the chunk was loaded, because they need to look at a neighbor-chunk.<br>
+	 * In this case {@link #getBlockState(int, int, int)} returns the {@link #getRawBlockState(int, int, int) raw block-state}.
+	 */
+	public boolean isExtensionPending(int x, int y, int z) {
+		Section section = getSection(y);
+		if (section == null) return false;
 		
-		Section section = this.sections[sectionY];
+		return section.isExtensionPending(x, y, z);
+	}
+	
+	public String getBlockIdMeta(Vector3i pos) {
+		Section section = getSection(pos.getY());
 		if (section == null) return "0:0";
 		
-		return section.getBlockIdMeta(pos);
+		int key = section.getLegacyKey(pos.getX(), pos.getY(), pos.getZ());
+		int blockId = key >> 4;
+		return blockId + ":" + (key & 0xF) + " " + forgeBlockIdMapper.apply(blockId);
 	}
 	
 	@Override
-	public LightData getLightData(Vector3i pos) {
-		if (!hasLight) return LightData.SKY;
+	public LightData getLightData(int x, int y, int z) {
+		return LightData.of(getPackedLight(x, y, z));
+	}
+
+	@Override
+	public int getPackedLight(int x, int y, int z) {
+		if (!hasLight) return LightData.SKY.getPacked();
 
-		int sectionY = pos.getY() >> 4;
+		int sectionY = y >> 4;
 		if (sectionY < 0 || sectionY >= this.sections.length)
-			return (pos.getY() < 0) ? LightData.ZERO : LightData.SKY;
+			return (y < 0) ? LightData.ZERO.getPacked() : LightData.SKY.getPacked();
 		
 		Section section = this.sections[sectionY];
-		if (section == null) return LightData.SKY;
+		if (section == null) return LightData.SKY.getPacked();
 		
-		return section.getLightData(pos);
+		return section.getPackedLight(x, y, z);
 	}
 
 	@Override
@@ -129,16 +197,64 @@ public Biome getBiome(int x, int y, int z) {
 		int biomeByteIndex = z * 16 + x;
 
 		if (biomeByteIndex >= this.biomes.length) return Biome.DEFAULT;
-		return biomeIdMapper.get(biomes[biomeByteIndex] & 0xFF);
+		return biomes[biomeByteIndex];
+	}
+
+	@Override
+	public int estimateMemorySize() {
+		int size = super.estimateMemorySize() + estimateMemorySize(biomes) + 16 + sections.length * 4;
+		for (Section section : sections) {
+			if (section != null) size += section.estimateMemorySize();
+		}
+		return size;
+	}
+	
+	private Section getSection(int y) {
+		int sectionY = y >> 4;
+		if (sectionY < 0 || sectionY >= this.sections.length) return null;
+		return this.sections[sectionY];
 	}
 
-	private class Section {
+	private static int blockIndex(int x, int y, int z) {
+		return (y & 0xF) * 256 + (z & 0xF) * 16 + (x & 0xF);
+	}
+	
+	/**
+	 * Extracts the 4 bits of the left (largeHalf = <code>true</code>) or the right (largeHalf = <code>false</code>) side of the byte stored in <code>value</code>.<br> 
+	 * The value is treated as an unsigned byte.
+	 */
+	private static int getByteHalf(int value, boolean largeHalf) {
+		value = value & 0xFF;
+		if (largeHalf) {
+			value = value >> 4;
+		}
+		value = value & 0xF;
+		return value;
+	}
+
+	private static class Section {
 		private int sectionY;
-		private byte[] blocks;
-		private byte[] add;
 		private byte[] blockLight;
 		private byte[] skyLight;
+		
+		// only needed until the palette is built
+		private byte[] blocks;
+		private byte[] add;
 		private byte[] data;
+		private int[] rawKeys;
+		
+		/** the (extended) state-id of each palette-entry */
+		private int[] palette;
+		/** the not extended state-id of each palette-entry */
+		private int[] rawPalette;
+		/** the legacy <code>id << 4 | meta</code> of each palette-entry */
+		private int[] keyPalette;
+		/** whether the extensions of a palette-entry still need to be applied, <code>null</code> if there are no such entries */
+		private boolean[] pendingPalette;
+		
+		/** the palette-index of each block, only one of them is set, none if the palette only has one entry */
+		private byte[] byteIndices;
+		private short[] shortIndices;
 		
 		public Section(CompoundTag sectionData) {
 			this.sectionY = sectionData.get("Y", NumberTag.class).asInt();
@@ -153,80 +269,276 @@ public Section(CompoundTag sectionData) {
 			if (skyLight.length < 2048) skyLight = Arrays.copyOf(skyLight, 2048);
 			if (data.length < 2048) data = Arrays.copyOf(data, 2048);
 		}
-
-		public int getSectionY() {
-			return sectionY;
-		}
 		
-		public BlockState getBlockState(Vector3i pos) {
-			int x = pos.getX() & 0xF; // Math.floorMod(pos.getX(), 16)
-			int y = pos.getY() & 0xF;
-			int z = pos.getZ() & 0xF;
-			int blockByteIndex = y * 256 + z * 16 + x;
-			int blockHalfByteIndex = blockByteIndex >> 1; // blockByteIndex / 2 
-			boolean largeHalf = (blockByteIndex & 0x1) != 0; // (blockByteIndex % 2) == 0
-			
-			int blockId = this.blocks[blockByteIndex] & 0xFF;
+		/**
+		 * Maps the legacy id:meta of each block to its plain block-state.<br>
+		 * Returns the state-ids shifted left by one, the lowest bit marks states that have block-state-extensions.
+		 */
+		private int[] decodeRawStates(KeyTable rawStateCache, BlockIdMapper blockIdMapper, IntFunction<String> forgeBlockIdMapper, MCAWorld world) {
+			rawKeys = new int[4096];
+			int[] rawStates = new int[4096];
 			
-			if (this.add.length > blockHalfByteIndex) {
-				blockId = blockId | (getByteHalf(this.add[blockHalfByteIndex], largeHalf) << 8);
+			for (int i = 0; i < 4096; i++) {
+				int halfByteIndex = i >> 1;
+				boolean largeHalf = (i & 0x1) != 0;
+				
+				int blockId = blocks[i] & 0xFF;
+				if (add.length > halfByteIndex) {
+					blockId = blockId | (getByteHalf(add[halfByteIndex], largeHalf) << 8);
+				}
+				int blockData = getByteHalf(data[halfByteIndex], largeHalf);
+				
+				int key = blockId << 4 | blockData;
+				rawKeys[i] = key;
+				
+				int rawState = rawStateCache.get(key);
+				if (rawState == -1) {
+					BlockState state;
+					String forgeIdMapping = forgeBlockIdMapper.apply(blockId);
+					if (forgeIdMapping != null) {
+						state = blockIdMapper.get(forgeIdMapping, blockId, blockData);
+					} else {
+						state = blockIdMapper.get(blockId, blockData);
+					}
+					
+					state = BlockStateRegistry.intern(state);
+					boolean extended = world != null && world.hasBlockStateExtensions(state);
+					rawState = state.getStateId() << 1 | (extended ? 1 : 0);
+					rawStateCache.put(key, rawState);
+				}
+				
+				rawStates[i] = rawState;
 			}
 			
-			int blockData = getByteHalf(this.data[blockHalfByteIndex], largeHalf);
+			blocks = null;
+			add = null;
+			data = null;
 			
-			String forgeIdMapping = forgeBlockIdMapper.apply(blockId);
-			if (forgeIdMapping != null) {
-				return blockIdMapper.get(forgeIdMapping, blockId, blockData);
-			} else {
-				return blockIdMapper.get(blockId, blockData);
-			}
+			return rawStates;
 		}
 		
-		public String getBlockIdMeta(Vector3i pos) {
-			int x = pos.getX() & 0xF; // Math.floorMod(pos.getX(), 16)
-			int y = pos.getY() & 0xF;
-			int z = pos.getZ() & 0xF;
-			int blockByteIndex = y * 256 + z * 16 + x;
-			int blockHalfByteIndex = blockByteIndex >> 1; // blockByteIndex / 2 
-			boolean largeHalf = (blockByteIndex & 0x1) != 0; // (blockByteIndex % 2) == 0
+		private void buildPalette(int[] rawStates, ChunkBlockAccess blockAccess, MCAWorld world) {
+			KeyTable paletteIndices = new KeyTable();
+			int[] indices = new int[4096];
+			int size = 0;
 			
-			int blockId = this.blocks[blockByteIndex] & 0xFF;
+			palette = new int[16];
+			rawPalette = new int[16];
+			keyPalette = new int[16];
+			boolean[] pending = new boolean[16];
+			boolean anyPending = false;
 			
-			if (this.add.length > blockHalfByteIndex) {
-				blockId = blockId | (getByteHalf(this.add[blockHalfByteIndex], largeHalf) << 8);
+			int baseY = sectionY << 4;
+			for (int i = 0; i < 4096; i++) {
+				int rawState = rawStates[i];
+				int rawStateId = rawState >> 1;
+				int stateId = rawStateId;
+				boolean extensionPending = false;
+				
+				if ((rawState & 1) != 0) {
+					Vector3i pos = new Vector3i(i & 0xF, baseY + (i >> 8), (i >> 4) & 0xF);
+					BlockState extended = world.extendBlockState(blockAccess.reset(), pos, BlockStateRegistry.get(rawStateId));
+					
+					if (blockAccess.isOutOfBounds()) {
+						extensionPending = true;
+					} else {
+						stateId = extended.getStateId();
+					}
+				}
+				
+				long entryKey = (long) stateId << 17 | rawKeys[i] << 1 | (extensionPending ? 1 : 0);
+				int index = paletteIndices.get(entryKey);
+				if (index == -1) {
+					index = size++;
+					if (index >= palette.length) {
+						int newLength = palette.length * 2;
+						palette = Arrays.copyOf(palette, newLength);
+						rawPalette = Arrays.copyOf(rawPalette, newLength);
+						keyPalette = Arrays.copyOf(keyPalette, newLength);
+						pending = Arrays.copyOf(pending, newLength);
+					}
+					
+					palette[index] = stateId;
+					rawPalette[index] = rawStateId;
+					keyPalette[index] = rawKeys[i];
+					pending[index] = extensionPending;
+					anyPending |= extensionPending;
+					
+					paletteIndices.put(entryKey, index);
+				}
+				
+				indices[i] = index;
 			}
 			
-			int blockData = getByteHalf(this.data[blockHalfByteIndex], largeHalf);
-			String forgeIdMapping = forgeBlockIdMapper.apply(blockId);
+			palette = Arrays.copyOf(palette, size);
+			rawPalette = Arrays.copyOf(rawPalette, size);
+			keyPalette = Arrays.copyOf(keyPalette, size);
+			pendingPalette = anyPending ? Arrays.copyOf(pending, size) : null;
+			
+			if (size > 256) {
+				shortIndices = new short[4096];
+				for (int i = 0; i < 4096; i++) shortIndices[i] = (short) indices[i];
+			} else if (size > 1) {
+				byteIndices = new byte[4096];
+				for (int i = 0; i < 4096; i++) byteIndices[i] = (byte) indices[i];
+			}
 			
-			return blockId + ":" + blockData + " " + forgeIdMapping;
+			rawKeys = null;
+		}
+
+		public int estimateMemorySize() {
+			return 64 +
+					MCAChunk.estimateMemorySize(palette) +
+					MCAChunk.estimateMemorySize(rawPalette) +
+					MCAChunk.estimateMemorySize(keyPalette) +
+					(pendingPalette == null ? 0 : 16 + pendingPalette.length) +
+					MCAChunk.estimateMemorySize(byteIndices) +
+					MCAChunk.estimateMemorySize(shortIndices) +
+					MCAChunk.estimateMemorySize(blockLight) +
+					MCAChunk.estimateMemorySize(skyLight);
+		}
+
+		public int getSectionY() {
+			return sectionY;
+		}
+		
+		private int getPaletteIndex(int x, int y, int z) {
+			if (byteIndices != null) return byteIndices[blockIndex(x, y, z)] & 0xFF;
+			if (shortIndices != null) return shortIndices[blockIndex(x, y, z)];
+			return 0;
+		}
+		
+		public int getBlockStateId(int x, int y, int z) {
+			return palette[getPaletteIndex(x, y, z)];
+		}
+		
+		public int getRawBlockStateId(int x, int y, int z) {
+			return rawPalette[getPaletteIndex(x, y, z)];
+		}
+		
+		public boolean isExtensionPending(int x, int y, int z) {
+			return pendingPalette != null && pendingPalette[getPaletteIndex(x, y, z)];
+		}
+		
+		public int getLegacyKey(int x, int y, int z) {
+			return keyPalette[getPaletteIndex(x, y, z)];
 		}
 		
-		public LightData getLightData(Vector3i pos) {
-			int x = pos.getX() & 0xF; // Math.floorMod(pos.getX(), 16)
-			int y = pos.getY() & 0xF;
-			int z = pos.getZ() & 0xF;
-			int blockByteIndex = y * 256 + z * 16 + x;
+		public int getPackedLight(int x, int y, int z) {
+			int blockByteIndex = blockIndex(x, y, z);
 			int blockHalfByteIndex = blockByteIndex >> 1; // blockByteIndex / 2 
 			boolean largeHalf = (blockByteIndex & 0x1) != 0; // (blockByteIndex % 2) == 0
 
 			int blockLight = getByteHalf(this.blockLight[blockHalfByteIndex], largeHalf);
 			int skyLight = getByteHalf(this.skyLight[blockHalfByteIndex], largeHalf);
 			
-			return new LightData(skyLight, blockLight);
+			return skyLight << 4 | blockLight;
+		}
+		
+	}
+	
+	/**
+	 * The {@link BlockAccess} that the extensions use while the chunk is loaded.<br>
+	 * It uses chunk-local x and z coordinates and remembers if an extension tried to look outside of the chunk.
+	 */
+	private static class ChunkBlockAccess implements BlockAccess {
+		
+		private final int[][] rawStates;
+		private final BlockPropertiesMapper blockPropertiesMapper;
+		private boolean outOfBounds;
+		
+		public ChunkBlockAccess(int[][] rawStates, MCAWorld world) {
+			this.rawStates = rawStates;
+			this.blockPropertiesMapper = world != null ? world.getBlockPropertiesMapper() : null;
+		}
+		
+		public ChunkBlockAccess reset() {
+			outOfBounds = false;
+			return this;
+		}
+		
+		public boolean isOutOfBounds() {
+			return outOfBounds;
+		}
+
+		@Override
+		public BlockState getBlockState(Vector3i pos) {
+			int x = pos.getX(), y = pos.getY(), z = pos.getZ();
+			if (x < 0 || x > 15 || z < 0 || z > 15) {
+				outOfBounds = true;
+				return BlockState.AIR;
+			}
+			
+			int sectionY = y >> 4;
+			if (sectionY < 0 || sectionY >= rawStates.length || rawStates[sectionY] == null) return BlockState.AIR;
+			
+			return BlockStateRegistry.get(rawStates[sectionY][blockIndex(x, y, z)] >> 1);
 		}
+
+		@Override
+		public BlockPropertiesMapper getBlockPropertiesMapper() {
+			return blockPropertiesMapper;
+		}
+		
+	}
+	
+	/**
+	 * A minimal open-addressing hash-map from non-negative long keys to int values, so that mapping the blocks does not box every key.
+	 */
+	private static final class KeyTable {
+		
+		private long[] keys = new long[64]; // stored as key + 1, 0 marks an empty slot
+		private int[] values = new int[64];
+		private int size = 0;
 		
 		/**
-		 * Extracts the 4 bits of the left (largeHalf = <code>true</code>) or the right (largeHalf = <code>false</code>) side of the byte stored in <code>value</code>.<br> 
-		 * The value is treated as an unsigned byte.
+		 * Returns the value of the key or -1 if there is none
 		 */
-		private int getByteHalf(int value, boolean largeHalf) {
-			value = value & 0xFF;
-			if (largeHalf) {
-				value = value >> 4;
+		public int get(long key) {
+			long storedKey = key + 1;
+			int mask = keys.length - 1;
+			for (int slot = hash(key) & mask;; slot = (slot + 1) & mask) {
+				long k = keys[slot];
+				if (k == storedKey) return values[slot];
+				if (k == 0) return -1;
+			}
+		}
+		
+		public void put(long key, int value) {
+			if ((size + 1) * 2 > keys.length) grow();
+			
+			long storedKey = key + 1;
+			int mask = keys.length - 1;
+			for (int slot = hash(key) & mask;; slot = (slot + 1) & mask) {
+				long k = keys[slot];
+				if (k == storedKey) {
+					values[slot] = value;
+					return;
+				}
+				if (k == 0) {
+					keys[slot] = storedKey;
+					values[slot] = value;
+					size++;
+					return;
+				}
 			}
-			value = value & 0xF;
-			return value;
+		}
+		
+		private void grow() {
+			long[] oldKeys = keys;
+			int[] oldValues = values;
+			keys = new long[oldKeys.length * 2];
+			values = new int[oldValues.length * 2];
+			size = 0;
+			
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != 0) put(oldKeys[i] - 1, oldValues[i]);
+			}
+		}
+		
+		private static int hash(long key) {
+			int h = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+			return h ^ (h >>> 16);
 		}
 		
 	}
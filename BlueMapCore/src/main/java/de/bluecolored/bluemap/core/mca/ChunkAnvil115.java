@@ -24,11 +24,11 @@
  */
 package de.bluecolored.bluemap.core.mca;
 
-import com.flowpowered.math.vector.Vector3i;
 import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.mca.mapping.BiomeMapper;
 import de.bluecolored.bluemap.core.world.Biome;
 import de.bluecolored.bluemap.core.world.BlockState;
+import de.bluecolored.bluemap.core.world.BlockStateRegistry;
 import de.bluecolored.bluemap.core.world.LightData;
 import net.querz.nbt.*;
 
@@ -38,18 +38,32 @@
 import java.util.Map.Entry;
 
 public class ChunkAnvil115 extends MCAChunk {
-	private BiomeMapper biomeIdMapper;
+	private static final int AIR_ID = BlockState.AIR.getStateId();
+	private static final int MISSING_ID = BlockState.MISSING.getStateId();
+
+	/** The NBT-paths of the chunk-data this class reads */
+	static final String[] NBT_PATHS = {
+			"Level.Status",
+			"Level.Heightmaps.WORLD_SURFACE",
+			"Level.Biomes",
+			"Level.Sections.Y",
+			"Level.Sections.Palette",
+			"Level.Sections.BlockStates",
+			"Level.Sections.BlockLight",
+			"Level.Sections.SkyLight"
+	};
+
 
 	private boolean isGenerated;
 	private boolean hasLight;
 	private Section[] sections;
-	private int[] biomes;
+	private Biome[] biomes;
+	private short[] worldSurfaceHeights;
 	
 	@SuppressWarnings("unchecked")
-	public ChunkAnvil115(CompoundTag chunkTag, boolean ignoreMissingLightData, BiomeMapper biomeIdMapper) {
+	public ChunkAnvil115(CompoundTag chunkTag, boolean ignoreMissingLightData, boolean unpackBlockStates, BiomeMapper biomeIdMapper) {
 		super(chunkTag);
 		
-		this.biomeIdMapper = biomeIdMapper;
 		
 		CompoundTag levelData = chunkTag.getCompoundTag("Level");
 		
@@ -64,30 +78,38 @@ public ChunkAnvil115(CompoundTag chunkTag, boolean ignoreMissingLightData, Biome
 		sections = new Section[32]; //32 supports a max world-height of 512 which is the max that the hightmaps of Minecraft V1.13+ can store with 9 bits, i believe?
 		if (levelData.containsKey("Sections")) {
 			for (CompoundTag sectionTag : ((ListTag<CompoundTag>) levelData.getListTag("Sections"))) {
-				Section section = new Section(sectionTag);
+				Section section = new Section(sectionTag, unpackBlockStates);
 				if (section.getSectionY() >= 0 && section.getSectionY() < sections.length) sections[section.getSectionY()] = section;
 			}
 		}
 		
+		int[] biomeIds = null;
 		Tag<?> tag = levelData.get("Biomes"); //tag can be byte-array or int-array
 		if (tag instanceof ByteArrayTag) {
 			byte[] bs = ((ByteArrayTag) tag).getValue();
-			biomes = new int[bs.length];
+			biomeIds = new int[bs.length];
 			
 			for (int i = 0; i < bs.length; i++) {
-				biomes[i] = bs[i] & 0xFF;
+				biomeIds[i] = bs[i] & 0xFF;
 			}
 		}
 		else if (tag instanceof IntArrayTag) {
-			biomes = ((IntArrayTag) tag).getValue();
+			biomeIds = ((IntArrayTag) tag).getValue();
+		}
+		
+		if (biomeIds == null || biomeIds.length == 0) {
+			biomeIds = new int[1024];
 		}
 		
-		if (biomes == null || biomes.length == 0) {
-			biomes = new int[1024];
+		if (biomeIds.length < 1024) {
+			biomeIds = Arrays.copyOf(biomeIds, 1024);
 		}
 		
-		if (biomes.length < 1024) {
-			biomes = Arrays.copyOf(biomes, 1024);
+		this.biomes = resolveBiomes(biomeIds, biomeIdMapper);
+		
+		// the heightmaps are only complete and up to date in fully generated chunks
+		if (hasLight) {
+			this.worldSurfaceHeights = readWorldSurfaceHeightmap(levelData, true);
 		}
 	}
 
@@ -97,28 +119,38 @@ public boolean isGenerated() {
 	}
 
 	@Override
-	public BlockState getBlockState(Vector3i pos) {
-		int sectionY = pos.getY() >> 4;
-		if (sectionY < 0 || sectionY >= this.sections.length) return BlockState.AIR;
+	public BlockState getBlockState(int x, int y, int z) {
+		return BlockStateRegistry.get(getBlockStateId(x, y, z));
+	}
+
+	@Override
+	public int getBlockStateId(int x, int y, int z) {
+		int sectionY = y >> 4;
+		if (sectionY < 0 || sectionY >= this.sections.length) return AIR_ID;
 		
 		Section section = this.sections[sectionY];
-		if (section == null) return BlockState.AIR;
+		if (section == null) return AIR_ID;
 		
-		return section.getBlockState(pos);
+		return section.getBlockStateId(x, y, z);
 	}
 
 	@Override
-	public LightData getLightData(Vector3i pos) {
-		if (!hasLight) return LightData.SKY;
+	public LightData getLightData(int x, int y, int z) {
+		return LightData.of(getPackedLight(x, y, z));
+	}
+
+	@Override
+	public int getPackedLight(int x, int y, int z) {
+		if (!hasLight) return LightData.SKY.getPacked();
 
-		int sectionY = pos.getY() >> 4;
+		int sectionY = y >> 4;
 		if (sectionY < 0 || sectionY >= this.sections.length)
-			return (pos.getY() < 0) ? LightData.ZERO : LightData.SKY;
+			return (y < 0) ? LightData.ZERO.getPacked() : LightData.SKY.getPacked();
 		
 		Section section = this.sections[sectionY];
-		if (section == null) return LightData.SKY;
+		if (section == null) return LightData.SKY.getPacked();
 		
-		return section.getLightData(pos);
+		return section.getPackedLight(x, y, z);
 	}
 
 	@Override
@@ -129,22 +161,41 @@ public Biome getBiome(int x, int y, int z) {
 		int biomeIntIndex = y * 16 + z * 4 + x;
 
 		if (biomeIntIndex >= this.biomes.length) return Biome.DEFAULT;
-		return biomeIdMapper.get(biomes[biomeIntIndex]);
+		return biomes[biomeIntIndex];
+	}
+	
+	@Override
+	public int getMaxY(int x, int z) {
+		if (worldSurfaceHeights == null) return super.getMaxY(x, z);
+		return Math.min(super.getMaxY(x, z), worldSurfaceHeights[(z & 0xF) * 16 + (x & 0xF)] - 1);
 	}
 	
+	@Override
+	public int estimateMemorySize() {
+		int size = super.estimateMemorySize() + estimateMemorySize(biomes) + estimateMemorySize(worldSurfaceHeights) + 16 + sections.length * 4;
+		for (Section section : sections) {
+			if (section != null) size += section.estimateMemorySize();
+		}
+		return size;
+	}
+
 	private static class Section {
-		private static final String AIR_ID = "minecraft:air";
+		private static final String AIR_NAME = "minecraft:air";
 		
 		private int sectionY;
 		private byte[] blockLight;
 		private byte[] skyLight;
 		private long[] blocks;
-		private BlockState[] palette;
+		private int[] palette;
+
+		private int constantStateId;
+		private byte[] byteIndices;
+		private short[] shortIndices;
 		
 		private int bitsPerBlock;
 		
 		@SuppressWarnings("unchecked")
-		public Section(CompoundTag sectionData) {
+		public Section(CompoundTag sectionData, boolean unpackBlockStates) {
 			this.sectionY = sectionData.get("Y", NumberTag.class).asInt();
 			this.blockLight = sectionData.getByteArray("BlockLight");
 			this.skyLight = sectionData.getByteArray("SkyLight");
@@ -157,13 +208,13 @@ public Section(CompoundTag sectionData) {
 			//read block palette
 			ListTag<CompoundTag> paletteTag = (ListTag<CompoundTag>) sectionData.getListTag("Palette");
 			if (paletteTag != null) {
-				this.palette = new BlockState[paletteTag.size()];
+				this.palette = new int[paletteTag.size()];
 				for (int i = 0; i < this.palette.length; i++) {
 					CompoundTag stateTag = paletteTag.get(i);
 					
 					String id = stateTag.getString("Name"); //shortcut to save time and memory
-					if (id.equals(AIR_ID)) {
-						palette[i] = BlockState.AIR;
+					if (id.equals(AIR_NAME)) {
+						palette[i] = AIR_ID;
 						continue;
 					}
 					
@@ -176,42 +227,93 @@ public Section(CompoundTag sectionData) {
 						}
 					}
 					
-					palette[i] = new BlockState(id, properties);
+					palette[i] = BlockStateRegistry.getId(new BlockState(id, properties));
 				}
 			} else {
-				this.palette = new BlockState[0];
+				this.palette = new int[0];
 			}
 
 			this.bitsPerBlock = this.blocks.length >> 6; // available longs * 64 (bits per long) / 4096 (blocks per section) (floored result)
+
+			this.constantStateId = -1;
+			if (blocks.length == 0) {
+				this.constantStateId = AIR_ID;
+				this.blocks = null;
+			} else if (palette.length == 1) {
+				this.constantStateId = palette[0];
+				this.blocks = null;
+			} else if (unpackBlockStates) {
+				unpackBlockStates();
+			}
 		}
 		
+		public int estimateMemorySize() {
+			return 64 +
+					MCAChunk.estimateMemorySize(blockLight) +
+					MCAChunk.estimateMemorySize(skyLight) +
+					MCAChunk.estimateMemorySize(blocks) +
+					MCAChunk.estimateMemorySize(palette) +
+					MCAChunk.estimateMemorySize(byteIndices) +
+					MCAChunk.estimateMemorySize(shortIndices);
+		}
+
 		public int getSectionY() {
 			return sectionY;
 		}
 		
-		public BlockState getBlockState(Vector3i pos) {
-			if (blocks.length == 0) return BlockState.AIR;
+		public int getBlockStateId(int x, int y, int z) {
+			if (constantStateId >= 0) return constantStateId;
 			
-			int x = pos.getX() & 0xF; // Math.floorMod(pos.getX(), 16)
-			int y = pos.getY() & 0xF;
-			int z = pos.getZ() & 0xF;
+			x = x & 0xF; // Math.floorMod(x, 16)
+			y = y & 0xF;
+			z = z & 0xF;
 			int blockIndex = y * 256 + z * 16 + x;
 			
-			long value = MCAMath.getValueFromLongStream(blocks, blockIndex, bitsPerBlock);
+
+			long value;
+			if (byteIndices != null) value = byteIndices[blockIndex] & 0xFF;
+			else if (shortIndices != null) value = shortIndices[blockIndex] & 0xFFFF;
+			else value = MCAMath.getValueFromLongStream(blocks, blockIndex, bitsPerBlock);
+
 			if (value >= palette.length) {
 				Logger.global.noFloodWarning("palettewarning", "Got palette value " + value + " but palette has size of " + palette.length + " (Future occasions of this error will not be logged)");
-				return BlockState.MISSING;
+				return MISSING_ID;
 			}
 			
 			return palette[(int) value];
 		}
 		
-		public LightData getLightData(Vector3i pos) {
-			if (blockLight.length == 0 && skyLight.length == 0) return LightData.ZERO;
+		/**
+		 * Unpacks the palette-indices of all blocks into a byte- or short-array, so a lookup is a single array-read.<br>
+		 * Palette-values that are out of range are stored as the maximum value of the array-type, which is never a valid index
+		 * because bytes are only used for palettes with less than 256 entries.
+		 */
+		private void unpackBlockStates() {
+			if (palette.length < 0x100) {
+				this.byteIndices = new byte[4096];
+				for (int i = 0; i < 4096; i++) {
+					long value = MCAMath.getValueFromLongStream(blocks, i, bitsPerBlock);
+					byteIndices[i] = (byte) (value < palette.length ? value : 0xFF);
+				}
+			} else if (palette.length < 0x10000) {
+				this.shortIndices = new short[4096];
+				for (int i = 0; i < 4096; i++) {
+					long value = MCAMath.getValueFromLongStream(blocks, i, bitsPerBlock);
+					shortIndices[i] = (short) (value < palette.length ? value : 0xFFFF);
+				}
+			} else {
+				return;
+			}
+
+			this.blocks = null;
+		}
+
+		public int getPackedLight(int x, int y, int z) {
+			if (blockLight.length == 0 && skyLight.length == 0) return 0;
 			
-			int x = pos.getX() & 0xF; // Math.floorMod(pos.getX(), 16)
-			int y = pos.getY() & 0xF;
-			int z = pos.getZ() & 0xF;
+			x = x & 0xF; // Math.floorMod(x, 16)
+			y = y & 0xF;
+			z = z & 0xF;
 			int blockByteIndex = y * 256 + z * 16 + x;
 			int blockHalfByteIndex = blockByteIndex >> 1; // blockByteIndex / 2 
 			boolean largeHalf = (blockByteIndex & 0x1) != 0; // (blockByteIndex % 2) == 0
@@ -219,7 +321,7 @@ public LightData getLightData(Vector3i pos) {
 			int blockLight = this.blockLight.length > 0 ? MCAMath.getByteHalf(this.blockLight[blockHalfByteIndex], largeHalf) : 0;
 			int skyLight = this.skyLight.length > 0 ? MCAMath.getByteHalf(this.skyLight[blockHalfByteIndex], largeHalf) : 0;
 			
-			return new LightData(skyLight, blockLight);
+			return skyLight << 4 | blockLight;
 		}
 	}
 	
@@ -24,33 +24,50 @@
  */
 package de.bluecolored.bluemap.core.mca;
 
-import com.flowpowered.math.vector.Vector3i;
 import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.mca.mapping.BiomeMapper;
 import de.bluecolored.bluemap.core.world.Biome;
 import de.bluecolored.bluemap.core.world.BlockState;
+import de.bluecolored.bluemap.core.world.BlockStateRegistry;
 import de.bluecolored.bluemap.core.world.LightData;
 import net.querz.nbt.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
 public class ChunkAnvil116 extends MCAChunk {
-	private BiomeMapper biomeIdMapper;
+	private static final int AIR_ID = BlockState.AIR.getStateId();
+	private static final int MISSING_ID = BlockState.MISSING.getStateId();
+
+	/** The NBT-paths of the chunk-data this class reads */
+	static final String[] NBT_PATHS = {
+			"Level.Status",
+			"Level.Heightmaps.WORLD_SURFACE",
+			"Level.Biomes",
+			"Level.Sections.Y",
+			"Level.Sections.Palette",
+			"Level.Sections.BlockStates",
+			"Level.Sections.BlockLight",
+			"Level.Sections.SkyLight"
+	};
+
 
 	private boolean isGenerated;
 	private boolean hasLight;
-	private Map<Integer, Section> sections;
+	private Section[] sections; // indexed by sectionY - sectionMin
 	private int sectionMin, sectionMax;
-	private int[] biomes;
+	private Biome[] biomes;
+	private int biomeMinY;
+	private short[] worldSurfaceHeights;
 	
 	@SuppressWarnings("unchecked")
-	public ChunkAnvil116(CompoundTag chunkTag, boolean ignoreMissingLightData, BiomeMapper biomeIdMapper) {
+	public ChunkAnvil116(CompoundTag chunkTag, boolean ignoreMissingLightData, boolean unpackBlockStates, BiomeMapper biomeIdMapper) {
 		super(chunkTag);
 		
-		this.biomeIdMapper = biomeIdMapper;
 		
 		CompoundTag levelData = chunkTag.getCompoundTag("Level");
 		
@@ -62,38 +79,66 @@ public ChunkAnvil116(CompoundTag chunkTag, boolean ignoreMissingLightData, Biome
 			isGenerated = !status.equals("empty");
 		}
 
-		this.sections = new HashMap<>(); // Is using a has-map the fastest/best way for an int->Object mapping?
+		List<Section> sectionList = new ArrayList<>(16);
+		int lowestSectionY = Integer.MAX_VALUE;
 		this.sectionMin = Integer.MAX_VALUE;
 		this.sectionMax = Integer.MIN_VALUE;
 		if (levelData.containsKey("Sections")) {
 			for (CompoundTag sectionTag : ((ListTag<CompoundTag>) levelData.getListTag("Sections"))) {
-				if (sectionTag.getListTag("Palette") == null) continue; // ignore empty sections
+				NumberTag<?> yTag = sectionTag.get("Y", NumberTag.class);
+				if (yTag == null) continue;
 
-				Section section = new Section(sectionTag);
-				int y = section.getSectionY();
+				int y = yTag.asInt();
+				if (lowestSectionY > y) lowestSectionY = y;
+
+				if (sectionTag.getListTag("Palette") == null) continue; // ignore empty sections
 
+				Section section = new Section(sectionTag, unpackBlockStates);
 				if (sectionMin > y) sectionMin = y;
 				if (sectionMax < y) sectionMax = y;
 
-				sections.put(y, section);
+				sectionList.add(section);
 			}
 		}
+
+		if (sectionList.isEmpty()) {
+			this.sectionMin = 0;
+			this.sectionMax = -1;
+		}
+
+		this.sections = new Section[sectionMax - sectionMin + 1];
+		for (Section section : sectionList) {
+			sections[section.getSectionY() - sectionMin] = section;
+		}
 		
+		int[] biomeIds = null;
 		Tag<?> tag = levelData.get("Biomes"); //tag can be byte-array or int-array
 		if (tag instanceof ByteArrayTag) {
 			byte[] bs = ((ByteArrayTag) tag).getValue();
-			this.biomes = new int[bs.length];
+			biomeIds = new int[bs.length];
 			
 			for (int i = 0; i < bs.length; i++) {
-				biomes[i] = bs[i] & 0xFF;
+				biomeIds[i] = bs[i] & 0xFF;
 			}
 		}
 		else if (tag instanceof IntArrayTag) {
-			this.biomes = ((IntArrayTag) tag).getValue();
+			biomeIds = ((IntArrayTag) tag).getValue();
+		}
+		
+		if (biomeIds == null) {
+			biomeIds = new int[0];
 		}
 		
-		if (biomes == null) {
-			this.biomes = new int[0];
+		this.biomes = resolveBiomes(biomeIds, biomeIdMapper);
+
+		// the biomes start at the bottom of the world, lit chunks also store the (light-only) section below the world
+		this.biomeMinY = 0;
+		if (hasLight && lowestSectionY < 0) this.biomeMinY = (lowestSectionY + 1) * 16;
+		if (!sectionList.isEmpty() && sectionMin * 16 < biomeMinY) this.biomeMinY = sectionMin * 16;
+		
+		// the heightmaps are only complete and up to date in fully generated chunks
+		if (hasLight && sectionMin >= 0) {
+			this.worldSurfaceHeights = readWorldSurfaceHeightmap(levelData, false);
 		}
 	}
 
@@ -103,41 +148,54 @@ public boolean isGenerated() {
 	}
 
 	@Override
-	public BlockState getBlockState(Vector3i pos) {
-		int sectionY = pos.getY() >> 4;
-		
-		Section section = this.sections.get(sectionY);
-		if (section == null) return BlockState.AIR;
+	public BlockState getBlockState(int x, int y, int z) {
+		return BlockStateRegistry.get(getBlockStateId(x, y, z));
+	}
+
+	@Override
+	public int getBlockStateId(int x, int y, int z) {
+		int sectionIndex = (y >> 4) - sectionMin;
+		if (sectionIndex < 0 || sectionIndex >= sections.length) return AIR_ID;
+
+		Section section = sections[sectionIndex];
+		if (section == null) return AIR_ID;
 		
-		return section.getBlockState(pos);
+		return section.getBlockStateId(x, y, z);
+	}
+
+	@Override
+	public LightData getLightData(int x, int y, int z) {
+		return LightData.of(getPackedLight(x, y, z));
 	}
 
 	@Override
-	public LightData getLightData(Vector3i pos) {
-		if (!hasLight) return LightData.SKY;
+	public int getPackedLight(int x, int y, int z) {
+		if (!hasLight) return LightData.SKY.getPacked();
 		
-		int sectionY = pos.getY() >> 4;
+		int sectionIndex = (y >> 4) - sectionMin;
+		if (sectionIndex < 0) return LightData.ZERO.getPacked();
+		if (sectionIndex >= sections.length) return LightData.SKY.getPacked();
 
-		Section section = this.sections.get(sectionY);
-		if (section == null) return (sectionY < sectionMin) ? LightData.ZERO : LightData.SKY;
+		Section section = sections[sectionIndex];
+		if (section == null) return LightData.SKY.getPacked();
 		
-		return section.getLightData(pos);
+		return section.getPackedLight(x, y, z);
 	}
 
 	@Override
 	public Biome getBiome(int x, int y, int z) {
 		if (biomes.length < 16) return Biome.DEFAULT;
 
-		x = (x & 0xF) / 4; // Math.floorMod(pos.getX(), 16)
-		z = (z & 0xF) / 4;
-		y = y / 4;
-		int biomeIntIndex = y * 16 + z * 4 + x; // TODO: fix this for 1.17+ worlds with negative y?
+		x = (x & 0xF) >> 2; // Math.floorMod(pos.getX(), 16) / 4
+		z = (z & 0xF) >> 2;
+		y = (y - biomeMinY) >> 2; // floor-division, also for negative y
 
-		// shift y up/down if not in range
-		if (biomeIntIndex >= biomes.length) biomeIntIndex -= (((biomeIntIndex - biomes.length) >> 4) + 1) * 16;
-		if (biomeIntIndex < 0) biomeIntIndex -= (biomeIntIndex >> 4) * 16;
-		
-		return biomeIdMapper.get(biomes[biomeIntIndex]);
+		// clamp y to the stored biome-layers
+		int layers = biomes.length >> 4;
+		if (y >= layers) y = layers - 1;
+		if (y < 0) y = 0;
+
+		return biomes[(y << 4) | (z << 2) | x];
 	}
 
 	@Override
@@ -147,22 +205,38 @@ public int getMinY(int x, int z) {
 
 	@Override
 	public int getMaxY(int x, int z) {
-		return sectionMax * 16 + 15;
+		int maxY = sectionMax * 16 + 15;
+		if (worldSurfaceHeights != null) maxY = Math.min(maxY, worldSurfaceHeights[(z & 0xF) * 16 + (x & 0xF)] - 1);
+		return maxY;
+	}
+
+	@Override
+	public int estimateMemorySize() {
+		int size = super.estimateMemorySize() + estimateMemorySize(biomes) + estimateMemorySize(worldSurfaceHeights) + 64;
+		size += estimateMemorySize(sections);
+		for (Section section : sections) {
+			if (section != null) size += section.estimateMemorySize();
+		}
+		return size;
 	}
 
 	private static class Section {
-		private static final String AIR_ID = "minecraft:air";
+		private static final String AIR_NAME = "minecraft:air";
 		
 		private int sectionY;
 		private byte[] blockLight;
 		private byte[] skyLight;
 		private long[] blocks;
-		private BlockState[] palette;
+		private int[] palette;
+
+		private int constantStateId;
+		private byte[] byteIndices;
+		private short[] shortIndices;
 
 		private int bitsPerBlock;
 		
 		@SuppressWarnings("unchecked")
-		public Section(CompoundTag sectionData) {
+		public Section(CompoundTag sectionData, boolean unpackBlockStates) {
 			this.sectionY = sectionData.get("Y", NumberTag.class).asInt();
 			this.blockLight = sectionData.getByteArray("BlockLight");
 			this.skyLight = sectionData.getByteArray("SkyLight");
@@ -175,13 +249,13 @@ public Section(CompoundTag sectionData) {
 			//read block palette
 			ListTag<CompoundTag> paletteTag = (ListTag<CompoundTag>) sectionData.getListTag("Palette");
 			if (paletteTag != null) {
-				this.palette = new BlockState[paletteTag.size()];
+				this.palette = new int[paletteTag.size()];
 				for (int i = 0; i < this.palette.length; i++) {
 					CompoundTag stateTag = paletteTag.get(i);
 					
 					String id = stateTag.getString("Name"); //shortcut to save time and memory
-					if (id.equals(AIR_ID)) {
-						palette[i] = BlockState.AIR;
+					if (id.equals(AIR_NAME)) {
+						palette[i] = AIR_ID;
 						continue;
 					}
 					
@@ -194,42 +268,92 @@ public Section(CompoundTag sectionData) {
 						}
 					}
 					
-					palette[i] = new BlockState(id, properties);
+					palette[i] = BlockStateRegistry.getId(new BlockState(id, properties));
 				}
 			} else {
-				this.palette = new BlockState[0];
+				this.palette = new int[0];
 			}
 			
 			this.bitsPerBlock = this.blocks.length >> 6; // available longs * 64 (bits per long) / 4096 (blocks per section) (floored result)
+
+			this.constantStateId = -1;
+			if (blocks.length == 0) {
+				this.constantStateId = AIR_ID;
+				this.blocks = null;
+			} else if (palette.length == 1) {
+				this.constantStateId = palette[0];
+				this.blocks = null;
+			} else if (unpackBlockStates) {
+				unpackBlockStates();
+			}
 		}
 		
+		public int estimateMemorySize() {
+			return 64 +
+					MCAChunk.estimateMemorySize(blockLight) +
+					MCAChunk.estimateMemorySize(skyLight) +
+					MCAChunk.estimateMemorySize(blocks) +
+					MCAChunk.estimateMemorySize(palette) +
+					MCAChunk.estimateMemorySize(byteIndices) +
+					MCAChunk.estimateMemorySize(shortIndices);
+		}
+
 		public int getSectionY() {
 			return sectionY;
 		}
 		
-		public BlockState getBlockState(Vector3i pos) {
-			if (blocks.length == 0) return BlockState.AIR;
+		public int getBlockStateId(int x, int y, int z) {
+			if (constantStateId >= 0) return constantStateId;
 			
-			int x = pos.getX() & 0xF; // Math.floorMod(pos.getX(), 16)
-			int y = pos.getY() & 0xF;
-			int z = pos.getZ() & 0xF;
+			x = x & 0xF; // Math.floorMod(x, 16)
+			y = y & 0xF;
+			z = z & 0xF;
 			int blockIndex = y * 256 + z * 16 + x;
 
-			long value = MCAMath.getValueFromLongArray(blocks, blockIndex, bitsPerBlock);
+			long value;
+			if (byteIndices != null) value = byteIndices[blockIndex] & 0xFF;
+			else if (shortIndices != null) value = shortIndices[blockIndex] & 0xFFFF;
+			else value = MCAMath.getValueFromLongArray(blocks, blockIndex, bitsPerBlock);
+
 			if (value >= palette.length) {
 				Logger.global.noFloodWarning("palettewarning", "Got palette value " + value + " but palette has size of " + palette.length + "! (Future occasions of this error will not be logged)");
-				return BlockState.MISSING;
+				return MISSING_ID;
 			}
 			
 			return palette[(int) value];
 		}
 		
-		public LightData getLightData(Vector3i pos) {
-			if (blockLight.length == 0 && skyLight.length == 0) return LightData.ZERO;
+		/**
+		 * Unpacks the palette-indices of all blocks into a byte- or short-array, so a lookup is a single array-read.<br>
+		 * Palette-values that are out of range are stored as the maximum value of the array-type, which is never a valid index
+		 * because bytes are only used for palettes with less than 256 entries.
+		 */
+		private void unpackBlockStates() {
+			if (palette.length < 0x100) {
+				this.byteIndices = new byte[4096];
+				for (int i = 0; i < 4096; i++) {
+					long value = MCAMath.getValueFromLongArray(blocks, i, bitsPerBlock);
+					byteIndices[i] = (byte) (value < palette.length ? value : 0xFF);
+				}
+			} else if (palette.length < 0x10000) {
+				this.shortIndices = new short[4096];
+				for (int i = 0; i < 4096; i++) {
+					long value = MCAMath.getValueFromLongArray(blocks, i, bitsPerBlock);
+					shortIndices[i] = (short) (value < palette.length ? value : 0xFFFF);
+				}
+			} else {
+				return;
+			}
+
+			this.blocks = null;
+		}
+
+		public int getPackedLight(int x, int y, int z) {
+			if (blockLight.length == 0 && skyLight.length == 0) return 0;
 			
-			int x = pos.getX() & 0xF; // Math.floorMod(pos.getX(), 16)
-			int y = pos.getY() & 0xF;
-			int z = pos.getZ() & 0xF;
+			x = x & 0xF; // Math.floorMod(x, 16)
+			y = y & 0xF;
+			z = z & 0xF;
 			int blockByteIndex = y * 256 + z * 16 + x;
 			int blockHalfByteIndex = blockByteIndex >> 1; // blockByteIndex / 2 
 			boolean largeHalf = (blockByteIndex & 0x1) != 0; // (blockByteIndex % 2) == 0
@@ -237,7 +361,7 @@ public LightData getLightData(Vector3i pos) {
 			int blockLight = this.blockLight.length > 0 ? MCAMath.getByteHalf(this.blockLight[blockHalfByteIndex], largeHalf) : 0;
 			int skyLight = this.skyLight.length > 0 ? MCAMath.getByteHalf(this.skyLight[blockHalfByteIndex], largeHalf) : 0;
 			
-			return new LightData(skyLight, blockLight);
+			return skyLight << 4 | blockLight;
 		}
 	}
 	
@@ -0,0 +1,79 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.mca;
+
+import java.nio.file.Path;
+
+public interface ChunkCacheSettings {
+
+	/**
+	 * Whether the packed block-data of chunk-sections is unpacked into a byte- or short-array of palette-indices when the
+	 * chunk is loaded.<br>
+	 * This makes block-lookups faster but increases the memory used by each cached chunk.
+	 */
+	default boolean isUnpackBlockStates() {
+		return true;
+	}
+
+	/**
+	 * How many chunks around the chunks that are needed for a render-task should also be loaded in advance.<br>
+	 * A negative value disables pinning and loading chunks in advance.
+	 */
+	default int getPrefetchDepth() {
+		return 1;
+	}
+
+	/**
+	 * The maximum amount of memory in megabytes that the cached chunks of one world are estimated to retain.
+	 */
+	default int getMaxMemoryMB() {
+		return 128;
+	}
+
+	/**
+	 * The maximum amount of memory in megabytes that the cached region-files (headers and file-handles) of one world
+	 * are estimated to retain.
+	 */
+	default int getRegionMaxMemoryMB() {
+		return 1;
+	}
+
+	/**
+	 * The time in seconds after which a cached chunk or region is removed from the cache after it has been loaded.
+	 */
+	default int getExpireAfterSeconds() {
+		return 60;
+	}
+
+	/**
+	 * The folder where the decompressed and stripped data of loaded chunks is cached on disk, so it does not need to be
+	 * decompressed and parsed again the next time the chunk is loaded.<br>
+	 * Returns <code>null</code> if the disk-cache is disabled.
+	 */
+	default Path getDiskCacheFolder() {
+		return null;
+	}
+
+}
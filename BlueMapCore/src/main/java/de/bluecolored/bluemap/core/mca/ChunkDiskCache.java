@@ -0,0 +1,244 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.mca;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file that caches the already decompressed and stripped chunk-data of one region-file, so loading a chunk again
+ * does not need to inflate and parse the original chunk-data.<br>
+ * <br>
+ * The file starts with a header (<code>int magic, int formatVersion</code>) and an index with one entry per chunk:
+ * <code>int location, int timestamp, long position, int length, int reserved</code>.
+ * The <code>location</code> and <code>timestamp</code> are the values of the chunk in the header of the region-file
+ * when the data has been cached, an entry is only valid as long as both are unchanged.
+ * The cached data itself is appended to the end of the file.
+ */
+public class ChunkDiskCache implements Closeable {
+
+	private static final int MAGIC = 0x424D4343; // "BMCC"
+	private static final int CHUNK_COUNT = 1024;
+	private static final int ENTRY_SIZE = 24;
+	private static final int HEADER_SIZE = 8 + CHUNK_COUNT * ENTRY_SIZE;
+
+	/**
+	 * If the file grows larger than this, it is cleared instead of appending more data
+	 */
+	private static final long MAX_FILE_SIZE = 256L * 1024L * 1024L;
+
+	/**
+	 * A rough estimation of the memory (in bytes) a loaded cache-file retains (the index and the open file-channel)
+	 */
+	public static final int ESTIMATED_MEMORY_SIZE = CHUNK_COUNT * 20 + 1024;
+
+	private final Path file;
+	private final int formatVersion;
+
+	private FileChannel channel;
+	private int[] locations, timestamps, lengths;
+	private long[] positions;
+	private long fileEnd;
+
+	/**
+	 * Increased each time the data in the file might get moved (cleared or reopened), so a read that happened outside
+	 * of the lock can detect that it might have read data that does not belong to the chunk
+	 */
+	private volatile int generation;
+
+	/**
+	 * @param formatVersion a version of the cached data, if the file has been written with a different version it is cleared
+	 */
+	public ChunkDiskCache(Path file, int formatVersion) {
+		this.file = file;
+		this.formatVersion = formatVersion;
+		this.channel = null;
+	}
+
+	/**
+	 * Returns the cached data of the chunk, or <code>null</code> if there is no data cached for the given location
+	 * and timestamp of the chunk.
+	 */
+	public byte[] read(int xzChunk, int location, int timestamp) throws IOException {
+		FileChannel channel;
+		long position;
+		int length;
+		int generation;
+
+		synchronized (this) {
+			open();
+
+			if (locations[xzChunk] != location || timestamps[xzChunk] != timestamp) return null;
+			channel = this.channel;
+			position = positions[xzChunk];
+			length = lengths[xzChunk];
+			generation = this.generation;
+			if (length <= 0) return null;
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		readFully(channel, buffer, position);
+
+		// the file has been cleared while reading, the data might belong to a different chunk
+		if (this.generation != generation) return null;
+
+		return buffer.array();
+	}
+
+	/**
+	 * Caches the data of the chunk for the given location and timestamp of the chunk.
+	 */
+	public synchronized void write(int xzChunk, int location, int timestamp, byte[] data) throws IOException {
+		open();
+
+		if (fileEnd + data.length > MAX_FILE_SIZE) clear();
+
+		long position = fileEnd;
+		writeFully(channel, ByteBuffer.wrap(data), position);
+		fileEnd += data.length;
+
+		// the index-entry is written after the data, so it never points to data that has not been written completely
+		ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+		entry.putInt(location);
+		entry.putInt(timestamp);
+		entry.putLong(position);
+		entry.putInt(data.length);
+		entry.putInt(0);
+		entry.flip();
+		writeFully(channel, entry, 8 + (long) xzChunk * ENTRY_SIZE);
+
+		locations[xzChunk] = location;
+		timestamps[xzChunk] = timestamp;
+		positions[xzChunk] = position;
+		lengths[xzChunk] = data.length;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		generation++;
+		locations = null;
+		timestamps = null;
+		positions = null;
+		lengths = null;
+
+		if (channel != null) {
+			try {
+				channel.close();
+			} finally {
+				channel = null;
+			}
+		}
+	}
+
+	/**
+	 * Opens the file and reads the index, if it is not open yet or the channel has been closed (e.g. because a thread
+	 * got interrupted while reading or writing)
+	 */
+	private void open() throws IOException {
+		if (channel != null) {
+			if (channel.isOpen()) return;
+			channel = null;
+		}
+
+		generation++;
+
+		Files.createDirectories(file.toAbsolutePath().normalize().getParent());
+		channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+
+		locations = new int[CHUNK_COUNT];
+		timestamps = new int[CHUNK_COUNT];
+		positions = new long[CHUNK_COUNT];
+		lengths = new int[CHUNK_COUNT];
+
+		long size = channel.size();
+		if (size < HEADER_SIZE) {
+			clear();
+			return;
+		}
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		readFully(channel, header, 0);
+		header.flip();
+
+		if (header.getInt() != MAGIC || header.getInt() != formatVersion) {
+			clear();
+			return;
+		}
+
+		for (int i = 0; i < CHUNK_COUNT; i++) {
+			locations[i] = header.getInt();
+			timestamps[i] = header.getInt();
+			positions[i] = header.getLong();
+			lengths[i] = header.getInt();
+			header.getInt();
+
+			// ignore entries that point outside of the file, e.g. if the file got truncated
+			if (positions[i] < HEADER_SIZE || positions[i] + lengths[i] > size) lengths[i] = 0;
+		}
+
+		fileEnd = size;
+	}
+
+	private void clear() throws IOException {
+		// increased before truncating, so a concurrent read that could see the truncated file will notice it
+		generation++;
+		channel.truncate(0);
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC);
+		header.putInt(formatVersion);
+		header.position(0);
+		writeFully(channel, header, 0);
+
+		for (int i = 0; i < CHUNK_COUNT; i++) {
+			locations[i] = 0;
+			timestamps[i] = 0;
+			positions[i] = 0;
+			lengths[i] = 0;
+		}
+
+		fileEnd = HEADER_SIZE;
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position + buffer.position());
+			if (read < 0) throw new EOFException();
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer, position + buffer.position());
+		}
+	}
+
+}
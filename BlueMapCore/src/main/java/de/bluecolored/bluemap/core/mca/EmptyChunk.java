@@ -25,7 +25,6 @@
 package de.bluecolored.bluemap.core.mca;
 
 import com.flowpowered.math.vector.Vector2i;
-import com.flowpowered.math.vector.Vector3i;
 import de.bluecolored.bluemap.core.world.Biome;
 import de.bluecolored.bluemap.core.world.BlockState;
 import de.bluecolored.bluemap.core.world.LightData;
@@ -33,6 +32,7 @@
 public class EmptyChunk extends MCAChunk {
 
 	public static final MCAChunk INSTANCE = new EmptyChunk();
+	public static final MCAChunk LOAD_FAILED = new EmptyChunk();
 
 	@Override
 	public boolean isGenerated() {
@@ -40,15 +40,20 @@ public boolean isGenerated() {
 	}
 
 	@Override
-	public BlockState getBlockState(Vector3i pos) {
+	public BlockState getBlockState(int x, int y, int z) {
 		return BlockState.AIR;
 	}
 
 	@Override
-	public LightData getLightData(Vector3i pos) {
+	public LightData getLightData(int x, int y, int z) {
 		return LightData.ZERO;
 	}
 
+	@Override
+	public int getPackedLight(int x, int y, int z) {
+		return 0;
+	}
+
 	@Override
 	public Biome getBiome(int x, int y, int z) {
 		return Biome.DEFAULT;
@@ -25,24 +25,35 @@
 package de.bluecolored.bluemap.core.mca;
 
 import com.flowpowered.math.vector.Vector3i;
+import de.bluecolored.bluemap.core.mca.mapping.BiomeMapper;
 import de.bluecolored.bluemap.core.world.Biome;
 import de.bluecolored.bluemap.core.world.BlockState;
 import de.bluecolored.bluemap.core.world.Chunk;
 import de.bluecolored.bluemap.core.world.LightData;
-import net.querz.nbt.CompoundTag;
+import net.querz.nbt.*;
 
+import java.io.DataInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 public abstract class MCAChunk implements Chunk {
 
 	private final int dataVersion;
+	private volatile long fingerprint;
 	
 	protected MCAChunk() {
 		this.dataVersion = -1;
+		this.fingerprint = 0;
 	}
 	
 	protected MCAChunk(CompoundTag chunkTag) {
 		dataVersion = chunkTag.getInt("DataVersion");
+
+		// hashing the whole chunk is not free, so the fingerprint is only computed when it is requested while loading
+		fingerprint = 0;
 	}
 
 	@Override
@@ -51,10 +62,52 @@ protected MCAChunk(CompoundTag chunkTag) {
 	public int getDataVersion() {
 		return dataVersion;
 	}
+
+	/**
+	 * {@inheritDoc}<br>
+	 * The fingerprint is only known if it has been requested when the chunk got loaded, see {@link MCAWorld#pinChunksWithFingerprints}.
+	 */
+	@Override
+	public long getFingerprint() {
+		return fingerprint;
+	}
+
+	void setFingerprint(long fingerprint) {
+		this.fingerprint = fingerprint;
+	}
 	
-	public abstract BlockState getBlockState(Vector3i pos);
-	
-	public abstract LightData getLightData(Vector3i pos);
+	public BlockState getBlockState(Vector3i pos) {
+		return getBlockState(pos.getX(), pos.getY(), pos.getZ());
+	}
+
+	public abstract BlockState getBlockState(int x, int y, int z);
+
+	/**
+	 * Returns the {@link BlockState#getStateId() state-id} of the block at the given position
+	 */
+	public int getBlockStateId(Vector3i pos) {
+		return getBlockStateId(pos.getX(), pos.getY(), pos.getZ());
+	}
+
+	/**
+	 * Returns the {@link BlockState#getStateId() state-id} of the block at the given position
+	 */
+	public int getBlockStateId(int x, int y, int z) {
+		return getBlockState(x, y, z).getStateId();
+	}
+
+	public LightData getLightData(Vector3i pos) {
+		return getLightData(pos.getX(), pos.getY(), pos.getZ());
+	}
+
+	public abstract LightData getLightData(int x, int y, int z);
+
+	/**
+	 * Returns the light of the block at the given position packed into one int: <code>skyLight &lt;&lt; 4 | blockLight</code>
+	 */
+	public int getPackedLight(int x, int y, int z) {
+		return getLightData(x, y, z).getPacked();
+	}
 	
 	public abstract Biome getBiome(int x, int y, int z);
 
@@ -65,20 +118,237 @@ public int getMaxY(int x, int z) {
 	public int getMinY(int x, int z) {
 		return 0;
 	}
+
+	/**
+	 * Returns a rough estimation of the memory (in bytes) that is retained by this chunk.<br>
+	 * This is used to weigh the chunks in the chunk-cache.
+	 */
+	public int estimateMemorySize() {
+		return 64;
+	}
+
+	protected static int estimateMemorySize(Object[] array) {
+		return array == null ? 0 : 16 + array.length * 4;
+	}
+
+	protected static int estimateMemorySize(byte[] array) {
+		return array == null ? 0 : 16 + array.length;
+	}
+
+	protected static int estimateMemorySize(short[] array) {
+		return array == null ? 0 : 16 + array.length * 2;
+	}
+
+	protected static int estimateMemorySize(int[] array) {
+		return array == null ? 0 : 16 + array.length * 4;
+	}
+
+	protected static int estimateMemorySize(long[] array) {
+		return array == null ? 0 : 16 + array.length * 8;
+	}
 	
+	private static final int CACHE_FORMAT_VERSION = 1;
+
+	private static final long FINGERPRINT_SEED = 0x3C6EF372FE94F82BL;
+
+	private static long hash(Tag<?> tag, long hash) {
+		hash = mix(hash, tag.getID());
+
+		if (tag instanceof CompoundTag) {
+			// combine the entries order-independent, the same chunk might be saved with a different key-order
+			long entries = 0;
+			for (Map.Entry<String, Tag<?>> entry : (CompoundTag) tag) {
+				entries += hash(entry.getValue(), mix(FINGERPRINT_SEED, entry.getKey().hashCode()));
+			}
+			return mix(hash, entries);
+		}
+
+		if (tag instanceof ListTag) {
+			for (Tag<?> element : (ListTag<?>) tag) {
+				hash = hash(element, hash);
+			}
+			return hash;
+		}
+
+		if (tag instanceof LongArrayTag) {
+			for (long value : ((LongArrayTag) tag).getValue()) hash = mix(hash, value);
+			return hash;
+		}
+
+		if (tag instanceof IntArrayTag) {
+			for (int value : ((IntArrayTag) tag).getValue()) hash = mix(hash, value);
+			return hash;
+		}
+
+		if (tag instanceof ByteArrayTag) {
+			byte[] values = ((ByteArrayTag) tag).getValue();
+			int i = 0;
+			for (; i + 8 <= values.length; i += 8) {
+				long value = 0;
+				for (int b = 0; b < 8; b++) value = value << 8 | (values[i + b] & 0xFF);
+				hash = mix(hash, value);
+			}
+			for (; i < values.length; i++) hash = mix(hash, values[i]);
+			return hash;
+		}
+
+		if (tag instanceof FloatTag || tag instanceof DoubleTag) {
+			return mix(hash, Double.doubleToLongBits(((NumberTag<?>) tag).asDouble()));
+		}
+
+		if (tag instanceof NumberTag) {
+			return mix(hash, ((NumberTag<?>) tag).asLong());
+		}
+
+		if (tag instanceof StringTag) {
+			return mix(hash, ((StringTag) tag).getValue().hashCode());
+		}
+
+		return hash;
+	}
+
+	/**
+	 * Computes the {@link #getFingerprint() fingerprint} of the chunk from its chunk-tag
+	 */
+	static long fingerprint(CompoundTag chunkTag) {
+		// the chunk-tag only contains the selected NBT_PATHS, so no entities, timestamps or ticks end up in the hash
+		long hash = hash(chunkTag, FINGERPRINT_SEED);
+		return hash == 0 ? 1 : hash;
+	}
+
+	private static long mix(long hash, long value) {
+		hash = (hash ^ value) * 0x9E3779B97F4A7C15L;
+		return hash ^ (hash >>> 29);
+	}
+
+	/**
+	 * Reads the chunk from the (uncompressed) NBT-stream, only decoding the parts of the data that are actually needed.
+	 */
+	public static MCAChunk create(MCAWorld world, DataInputStream in, boolean ignoreMissingLightData) throws IOException {
+		return create(world, ChunkNBTReader.INSTANCE.read(in), ignoreMissingLightData);
+	}
+
+	/**
+	 * Reads only the parts of the (uncompressed) NBT-stream of a chunk that are needed to create the chunk with
+	 * {@link #create(MCAWorld, CompoundTag, boolean)}.
+	 */
+	static CompoundTag readChunkTag(DataInputStream in) throws IOException {
+		return ChunkNBTReader.INSTANCE.read(in);
+	}
+
+	/**
+	 * The version of the chunk-data that is stored in the {@link ChunkDiskCache}, this changes whenever the chunk-formats
+	 * read different NBT-paths.
+	 */
+	static int getCacheFormatVersion() {
+		return 31 * CACHE_FORMAT_VERSION + ChunkNBTReader.PATHS.hashCode();
+	}
+
 	public static MCAChunk create(MCAWorld world, CompoundTag chunkTag, boolean ignoreMissingLightData) throws IOException {
 		int version = chunkTag.getInt("DataVersion");
+		boolean unpackBlockStates = world.getChunkCacheSettings().isUnpackBlockStates();
 		
-		if (version < 1400) return new ChunkAnvil112(chunkTag, ignoreMissingLightData, world.getBiomeIdMapper(), world.getBlockIdMapper(), world::getForgeBlockIdMapping);
-		if (version < 2200) return new ChunkAnvil113(chunkTag, ignoreMissingLightData, world.getBiomeIdMapper());
-		if (version < 2500) return new ChunkAnvil115(chunkTag, ignoreMissingLightData, world.getBiomeIdMapper());
-		return new ChunkAnvil116(chunkTag, ignoreMissingLightData, world.getBiomeIdMapper());
+		if (version < 1400) return new ChunkAnvil112(chunkTag, ignoreMissingLightData, world.getBiomeIdMapper(), world.getBlockIdMapper(), world::getForgeBlockIdMapping, world);
+		if (version < 2200) return new ChunkAnvil113(chunkTag, ignoreMissingLightData, unpackBlockStates, world.getBiomeIdMapper());
+		if (version < 2500) return new ChunkAnvil115(chunkTag, ignoreMissingLightData, unpackBlockStates, world.getBiomeIdMapper());
+		return new ChunkAnvil116(chunkTag, ignoreMissingLightData, unpackBlockStates, world.getBiomeIdMapper());
+	}
+
+	/**
+	 * Reads the <code>WORLD_SURFACE</code> heightmap of the chunk: for each column (index <code>z * 16 + x</code>)
+	 * the y-coordinate above its highest non-air block.<br>
+	 * Returns <code>null</code> if the chunk has no such heightmap.
+	 * @param valuesSpanLongs whether the values are stored as one continuous bit-stream (before 1.16) or are padded to not span two longs
+	 */
+	protected static short[] readWorldSurfaceHeightmap(CompoundTag levelData, boolean valuesSpanLongs) {
+		CompoundTag heightmaps = levelData.getCompoundTag("Heightmaps");
+		if (heightmaps == null) return null;
+
+		long[] data = heightmaps.getLongArray("WORLD_SURFACE");
+		if (data == null || data.length == 0) return null;
+
+		int bitsPerValue;
+		if (valuesSpanLongs) {
+			bitsPerValue = data.length * 64 / 256;
+		} else {
+			int valuesPerLong = (256 + data.length - 1) / data.length;
+			bitsPerValue = 64 / valuesPerLong;
+		}
+		if (bitsPerValue <= 0 || bitsPerValue > 16) return null;
+
+		short[] heights = new short[256];
+		for (int i = 0; i < heights.length; i++) {
+			long height = valuesSpanLongs ?
+					MCAMath.getValueFromLongStream(data, i, bitsPerValue) :
+					MCAMath.getValueFromLongArray(data, i, bitsPerValue);
+			heights[i] = (short) height;
+		}
+
+		return heights;
+	}
+
+	/**
+	 * Resolves the numeral biome-ids of a chunk to their {@link Biome}s once when the chunk is loaded,
+	 * so looking up the biome of a block is a plain array-read.
+	 */
+	protected static Biome[] resolveBiomes(int[] biomeIds, BiomeMapper biomeIdMapper) {
+		Biome[] biomes = new Biome[biomeIds.length];
+
+		// neighboring entries are almost always the same biome
+		int lastId = -1;
+		Biome lastBiome = null;
+		for (int i = 0; i < biomeIds.length; i++) {
+			int id = biomeIds[i];
+			if (id != lastId || lastBiome == null) {
+				lastBiome = biomeIdMapper.get(id);
+				lastId = id;
+			}
+			biomes[i] = lastBiome;
+		}
+
+		return biomes;
 	}
 
 	public static MCAChunk empty() {
 		return EmptyChunk.INSTANCE;
 	}
 
+	/**
+	 * Returns the (empty) chunk that is used in place of a chunk that failed to load
+	 */
+	public static MCAChunk loadFailed() {
+		return EmptyChunk.LOAD_FAILED;
+	}
+
+	/**
+	 * Holder for the chunk-reader, so it is only initialized after all chunk-classes are.
+	 */
+	private static class ChunkNBTReader {
+
+		/**
+		 * The position of the DataVersion-tag in the stream is not defined, so we can't know the chunk-format before
+		 * reading the data and have to select the union of all paths any chunk-format needs.
+		 */
+		private static final List<String> PATHS = concat(
+				new String[]{ "DataVersion" },
+				ChunkAnvil112.NBT_PATHS,
+				ChunkAnvil113.NBT_PATHS,
+				ChunkAnvil115.NBT_PATHS,
+				ChunkAnvil116.NBT_PATHS
+		);
+
+		private static final SelectiveNBTReader INSTANCE = new SelectiveNBTReader(PATHS);
+
+		private static List<String> concat(String[]... arrays) {
+			List<String> list = new ArrayList<>();
+			for (String[] array : arrays) {
+				list.addAll(Arrays.asList(array));
+			}
+			return list;
+		}
+
+	}
+
 	@Override
 	public String toString() {
 		return "MCAChunk{" +
@@ -58,6 +58,21 @@ public static long getValueFromLongStream(long[] data, int valueIndex, int bitsP
 		return value & (0xFFFFFFFFFFFFFFFFL >>> -bitsPerValue);
 	}
 	
+	/**
+	 * Packs the two (chunk- or region-) coordinates into one long, e.g. to be used as a key that doesn't need to be allocated.
+	 */
+	public static long packCoordinates(int x, int z) {
+		return (long) x << 32 | (z & 0xFFFFFFFFL);
+	}
+
+	public static int unpackX(long packedCoordinates) {
+		return (int) (packedCoordinates >> 32);
+	}
+
+	public static int unpackZ(long packedCoordinates) {
+		return (int) packedCoordinates;
+	}
+
 	/**
 	 * Extracts the 4 bits of the left (largeHalf = <code>true</code>) or the right (largeHalf = <code>false</code>) side of the byte stored in <code>value</code>.<br> 
 	 * The value is treated as an unsigned byte.
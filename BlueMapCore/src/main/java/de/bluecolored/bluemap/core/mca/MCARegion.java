@@ -32,17 +32,45 @@
 import net.querz.nbt.mca.CompressionType;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.ToLongFunction;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
-public class MCARegion implements Region {
+public class MCARegion implements Region, Closeable {
+
+	private static final int SECTOR_SIZE = 4096;
+	private static final int CHUNK_COUNT = 1024; //1024 = 32 x 32 chunks per region-file
+	private static final int HEADER_SIZE = 2 * CHUNK_COUNT * 4;
+
+	/**
+	 * A rough estimation of the memory (in bytes) a loaded region retains (header-tables and the open file-channel)
+	 */
+	public static final int ESTIMATED_MEMORY_SIZE = HEADER_SIZE + 1024;
 
 	private final MCAWorld world;
 	private final File regionFile;
 	private final Vector2i regionPos;
 
+	private volatile Header header;
+	private FileChannel channel;
+
+	private final ChunkDiskCache diskCache;
+
 	public MCARegion(MCAWorld world, File regionFile) throws IllegalArgumentException {
 		this.world = world;
 		this.regionFile = regionFile;
@@ -52,43 +80,84 @@ public MCARegion(MCAWorld world, File regionFile) throws IllegalArgumentExceptio
 		int rZ = Integer.parseInt(filenameParts[2]);
 
 		this.regionPos = new Vector2i(rX, rZ);
+		this.header = null;
+		this.channel = null;
+
+		Path diskCacheFolder = world.getChunkDiskCacheFolder();
+		if (diskCacheFolder != null) {
+			this.diskCache = new ChunkDiskCache(diskCacheFolder.resolve("r." + rX + "." + rZ + ".bmc"), MCAChunk.getCacheFormatVersion());
+		} else {
+			this.diskCache = null;
+		}
 	}
 
 	@Override
 	public MCAChunk loadChunk(int chunkX, int chunkZ, boolean ignoreMissingLightData) throws IOException {
-		if (!regionFile.exists() || regionFile.length() == 0) return MCAChunk.empty();
-
-		try (RandomAccessFile raf = new RandomAccessFile(regionFile, "r")) {
+		return loadChunk(chunkX, chunkZ, ignoreMissingLightData, false);
+	}
 
+	/**
+	 * Loads the chunk and (if <code>fingerprint</code> is true) also computes its {@link MCAChunk#getFingerprint() fingerprint}.
+	 */
+	public MCAChunk loadChunk(int chunkX, int chunkZ, boolean ignoreMissingLightData, boolean fingerprint) throws IOException {
+		try {
 			int xzChunk = Math.floorMod(chunkZ, 32) * 32 + Math.floorMod(chunkX, 32);
 
-			raf.seek(xzChunk * 4);
-			int offset = raf.read() << 16;
-			offset |= (raf.read() & 0xFF) << 8;
-			offset |= raf.read() & 0xFF;
-			offset *= 4096;
+			Header header = getHeader();
+			if (header == null) return MCAChunk.empty();
 
-			int size = raf.readByte() * 4096;
-			if (size == 0) {
-				return MCAChunk.empty();
+			if (diskCache != null) {
+				MCAChunk chunk = loadCachedChunk(header, xzChunk, ignoreMissingLightData, fingerprint);
+				if (chunk != null) return chunk;
 			}
 
-			raf.seek(offset + 4); // +4 skip chunk size
+			ChunkBuffers buffers = ChunkBuffers.acquire();
+			try {
+				int dataLength;
+				try {
+					dataLength = readChunkData(header, xzChunk, buffers);
+				} catch (ClosedByInterruptException ex) {
+					// this thread has been interrupted, retrying would only close the reopened channel again
+					throw ex;
+				} catch (ClosedChannelException ex) {
+					// the channel got closed by a concurrent close(), header-reload or by an interrupted read on another
+					// thread, try again with a fresh header (getHeader() reopens closed channels)
+					header = getHeader();
+					if (header == null) return MCAChunk.empty();
+					dataLength = readChunkData(header, xzChunk, buffers);
+				}
 
-			byte compressionTypeByte = raf.readByte();
-			CompressionType compressionType = CompressionType.getFromID(compressionTypeByte);
-			if (compressionType == null) {
-				throw new IOException("Invalid compression type " + compressionTypeByte);
-			}
+				if (dataLength < 0) return MCAChunk.empty();
 
-			DataInputStream dis = new DataInputStream(new BufferedInputStream(compressionType.decompress(new FileInputStream(raf.getFD()))));
-			Tag<?> tag = Tag.deserialize(dis, Tag.DEFAULT_MAX_DEPTH);
-			if (tag instanceof CompoundTag) {
-				MCAChunk chunk = MCAChunk.create(world, (CompoundTag) tag, ignoreMissingLightData);
-				if (!chunk.isGenerated()) return MCAChunk.empty();
-				return chunk;
-			} else {
-				throw new IOException("Invalid data tag: " + (tag == null ? "null" : tag.getClass().getName()));
+				byte[] data = buffers.compressed;
+				int length = ((data[0] & 0xFF) << 24) | ((data[1] & 0xFF) << 16) | ((data[2] & 0xFF) << 8) | (data[3] & 0xFF);
+				if (length <= 1 || length + 4 > dataLength) {
+					throw new IOException("Invalid chunk length " + length);
+				}
+
+				byte compressionTypeByte = data[4];
+				CompressionType compressionType = CompressionType.getFromID(compressionTypeByte);
+				if (compressionType == null) {
+					throw new IOException("Invalid compression type " + compressionTypeByte);
+				}
+
+				DataInputStream dis;
+				if (compressionType == CompressionType.ZLIB) {
+					int inflatedLength = buffers.inflate(data, 5, length - 1);
+					dis = new DataInputStream(new ByteArrayInputStream(buffers.inflated, 0, inflatedLength));
+				} else if (compressionType == CompressionType.NONE) {
+					dis = new DataInputStream(new ByteArrayInputStream(data, 5, length - 1));
+				} else {
+					InputStream in = new ByteArrayInputStream(data, 5, length - 1);
+					dis = new DataInputStream(new BufferedInputStream(compressionType.decompress(in)));
+				}
+
+				CompoundTag chunkTag = MCAChunk.readChunkTag(dis);
+				if (diskCache != null) cacheChunk(header, xzChunk, chunkTag);
+
+				return createChunk(chunkTag, ignoreMissingLightData, fingerprint);
+			} finally {
+				buffers.release();
 			}
 
 		} catch (RuntimeException e) {
@@ -96,36 +165,70 @@ public MCAChunk loadChunk(int chunkX, int chunkZ, boolean ignoreMissingLightData
 		}
 	}
 
-	@Override
-	public Collection<Vector2i> listChunks(long modifiedSince) {
-		if (!regionFile.exists() || regionFile.length() == 0) return Collections.emptyList();
+	/**
+	 * Loads the chunk from the disk-cache, returns <code>null</code> if the chunk is not cached or the cached data is outdated
+	 */
+	private MCAChunk loadCachedChunk(Header header, int xzChunk, boolean ignoreMissingLightData, boolean fingerprint) {
+		try {
+			byte[] cached = diskCache.read(xzChunk, header.locations[xzChunk], header.timestamps[xzChunk]);
+			if (cached == null) return null;
 
-		List<Vector2i> chunks = new ArrayList<>(1024); //1024 = 32 x 32 chunks per region-file
+			CompoundTag chunkTag = MCAChunk.readChunkTag(new DataInputStream(new ByteArrayInputStream(cached)));
+			return createChunk(chunkTag, ignoreMissingLightData, fingerprint);
+		} catch (IOException | RuntimeException ex) {
+			// fall back to loading the chunk from the region-file
+			Logger.global.noFloodDebug("chunk-disk-cache-read", "Failed to read chunk from disk-cache: " + ex);
+			return null;
+		}
+	}
 
-		try (RandomAccessFile raf = new RandomAccessFile(regionFile, "r")) {
-			for (int x = 0; x < 32; x++) {
-				for (int z = 0; z < 32; z++) {
-					Vector2i chunk = new Vector2i(regionPos.getX() * 32 + x, regionPos.getY() * 32 + z);
-					int xzChunk = z * 32 + x;
+	private MCAChunk createChunk(CompoundTag chunkTag, boolean ignoreMissingLightData, boolean fingerprint) throws IOException {
+		MCAChunk chunk = MCAChunk.create(world, chunkTag, ignoreMissingLightData);
+		if (!chunk.isGenerated()) return MCAChunk.empty();
 
-					raf.seek(xzChunk * 4 + 3);
-					int size = raf.readByte() * 4096;
+		if (fingerprint) chunk.setFingerprint(MCAChunk.fingerprint(chunkTag));
+		return chunk;
+	}
 
-					if (size == 0) continue;
+	private void cacheChunk(Header header, int xzChunk, CompoundTag chunkTag) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 * 1024);
+			try (DataOutputStream out = new DataOutputStream(bytes)) {
+				chunkTag.serialize(out, Tag.DEFAULT_MAX_DEPTH);
+			}
 
-					raf.seek(xzChunk * 4 + 4096);
-					int timestamp = raf.read() << 24;
-					timestamp |= (raf.read() & 0xFF) << 16;
-					timestamp |= (raf.read() & 0xFF) << 8;
-					timestamp |= raf.read() & 0xFF;
+			diskCache.write(xzChunk, header.locations[xzChunk], header.timestamps[xzChunk], bytes.toByteArray());
+		} catch (IOException | RuntimeException ex) {
+			Logger.global.noFloodWarning("chunk-disk-cache-write", "Failed to write chunk to disk-cache: " + ex);
+		}
+	}
 
-					if (timestamp >= (modifiedSince / 1000)) {
-						chunks.add(chunk);
-					}
-				}
-			}
+	@Override
+	public Collection<Vector2i> listChunks(ToLongFunction<Vector2i> modifiedSince) {
+		Header header;
+		try {
+			header = getHeader();
 		} catch (RuntimeException | IOException ex) {
 			Logger.global.logWarning("Failed to read .mca file: " + regionFile.getAbsolutePath() + " (" + ex.toString() + ")");
+			return Collections.emptyList();
+		}
+
+		if (header == null) return Collections.emptyList();
+
+		List<Vector2i> chunks = new ArrayList<>(CHUNK_COUNT);
+
+		for (int x = 0; x < 32; x++) {
+			for (int z = 0; z < 32; z++) {
+				int xzChunk = z * 32 + x;
+
+				if ((header.locations[xzChunk] & 0xFF) == 0) continue;
+
+				Vector2i chunk = new Vector2i(regionPos.getX() * 32 + x, regionPos.getY() * 32 + z);
+				long modifiedSinceSeconds = modifiedSince.applyAsLong(chunk) / 1000;
+				if ((header.timestamps[xzChunk] & 0xFFFFFFFFL) >= modifiedSinceSeconds) {
+					chunks.add(chunk);
+				}
+			}
 		}
 
 		return chunks;
@@ -136,4 +239,231 @@ public File getRegionFile() {
 		return regionFile;
 	}
 
+	/**
+	 * Closes the file-channel that is held open to read chunks from this region-file.<br>
+	 * The region stays usable, the channel will be reopened on the next read.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		this.header = null;
+
+		try {
+			if (diskCache != null) diskCache.close();
+		} finally {
+			if (channel != null) {
+				channel.close();
+				channel = null;
+			}
+		}
+	}
+
+	/**
+	 * A rough estimation of the memory (in bytes) this region retains (header-tables and open file-channels)
+	 */
+	public int estimateMemorySize() {
+		return diskCache != null ? ESTIMATED_MEMORY_SIZE + ChunkDiskCache.ESTIMATED_MEMORY_SIZE : ESTIMATED_MEMORY_SIZE;
+	}
+
+	/**
+	 * Returns the parsed location/timestamp-header of the region-file, (re-)reading it if the file changed its size or
+	 * modification-time since the header was last read, or if the channel of the header has been closed (e.g. because
+	 * a thread got interrupted while reading from it).<br>
+	 * Returns <code>null</code> if the region-file does not exist or is empty.
+	 */
+	private Header getHeader() throws IOException {
+		BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(regionFile.toPath(), BasicFileAttributes.class);
+		} catch (NoSuchFileException | FileNotFoundException ex) {
+			close();
+			return null;
+		}
+
+		long size = attributes.size();
+		long lastModified = attributes.lastModifiedTime().toMillis();
+
+		Header header = this.header;
+		if (header != null && header.isValid(size, lastModified)) return header;
+
+		synchronized (this) {
+			header = this.header;
+			if (header != null && header.isValid(size, lastModified)) return header;
+			this.header = null;
+
+			if (size < HEADER_SIZE) {
+				close();
+				return null;
+			}
+
+			// reopen the channel, the file might have been replaced
+			if (channel != null) channel.close();
+			channel = FileChannel.open(regionFile.toPath(), StandardOpenOption.READ);
+
+			ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+			readFully(channel, buffer, 0);
+			buffer.flip();
+
+			IntBuffer ints = buffer.asIntBuffer();
+			int[] locations = new int[CHUNK_COUNT];
+			int[] timestamps = new int[CHUNK_COUNT];
+			ints.get(locations);
+			ints.get(timestamps);
+
+			header = new Header(channel, size, lastModified, locations, timestamps);
+			this.header = header;
+			return header;
+		}
+	}
+
+	/**
+	 * Reads the sectors of the chunk with one positional read into the compressed-buffer of the given {@link ChunkBuffers}.
+	 * Returns the amount of bytes that have been read, or <code>-1</code> if the chunk is not present.
+	 */
+	private int readChunkData(Header header, int xzChunk, ChunkBuffers buffers) throws IOException {
+		int location = header.locations[xzChunk];
+		int sectorOffset = location >>> 8;
+		int sectorCount = location & 0xFF;
+		if (sectorCount == 0 || sectorOffset == 0) return -1;
+
+		long position = (long) sectorOffset * SECTOR_SIZE;
+		int length = sectorCount * SECTOR_SIZE;
+		if (position + length > header.size) {
+			// the last chunk in a file is not always padded to a full sector
+			length = (int) (header.size - position);
+			if (length < 5) throw new IOException("Chunk data is out of the bounds of the region-file");
+		}
+
+		ByteBuffer buffer = buffers.compressedBuffer(length);
+		readFully(header.channel, buffer, position);
+		return length;
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position + buffer.position());
+			if (read < 0) throw new EOFException();
+		}
+	}
+
+	/**
+	 * Buffers and an {@link Inflater} that are reused by all chunk-loads on the same thread, so loading a chunk does not
+	 * allocate new buffers and native inflater-memory each time.
+	 */
+	private static class ChunkBuffers {
+
+		private static final int INITIAL_COMPRESSED_SIZE = 16 * SECTOR_SIZE;
+		private static final int INITIAL_INFLATED_SIZE = 256 * 1024;
+
+		/**
+		 * Buffers that grew larger than this (e.g. for a chunk with a huge amount of tile-entities) are not kept
+		 */
+		private static final int MAX_RETAINED_SIZE = 4 * 1024 * 1024;
+
+		private static final ThreadLocal<ChunkBuffers> THREAD_BUFFERS = ThreadLocal.withInitial(ChunkBuffers::new);
+
+		private final Inflater inflater;
+		private byte[] compressed, inflated;
+		private ByteBuffer compressedBuffer;
+		private boolean inUse;
+
+		private ChunkBuffers() {
+			this.inflater = new Inflater();
+			this.compressed = new byte[INITIAL_COMPRESSED_SIZE];
+			this.compressedBuffer = ByteBuffer.wrap(compressed);
+			this.inflated = new byte[INITIAL_INFLATED_SIZE];
+			this.inUse = false;
+		}
+
+		/**
+		 * Returns the buffers of the current thread, or new buffers if they are already in use
+		 */
+		private static ChunkBuffers acquire() {
+			ChunkBuffers buffers = THREAD_BUFFERS.get();
+			if (buffers.inUse) buffers = new ChunkBuffers();
+			buffers.inUse = true;
+			return buffers;
+		}
+
+		private void release() {
+			if (compressed.length > MAX_RETAINED_SIZE) {
+				compressed = new byte[INITIAL_COMPRESSED_SIZE];
+				compressedBuffer = ByteBuffer.wrap(compressed);
+			}
+			if (inflated.length > MAX_RETAINED_SIZE) inflated = new byte[INITIAL_INFLATED_SIZE];
+
+			if (THREAD_BUFFERS.get() == this) {
+				inUse = false;
+			} else {
+				inflater.end();
+			}
+		}
+
+		/**
+		 * Returns a buffer that is backed by the compressed-array and has the given amount of bytes remaining
+		 */
+		private ByteBuffer compressedBuffer(int length) {
+			if (compressed.length < length) {
+				compressed = new byte[Math.max(length, compressed.length * 2)];
+				compressedBuffer = ByteBuffer.wrap(compressed);
+			}
+
+			compressedBuffer.clear();
+			compressedBuffer.limit(length);
+			return compressedBuffer;
+		}
+
+		/**
+		 * Inflates the zlib-compressed data into the inflated-array and returns the inflated length
+		 */
+		private int inflate(byte[] data, int offset, int length) throws IOException {
+			inflater.reset();
+			inflater.setInput(data, offset, length);
+
+			try {
+				int inflatedLength = 0;
+				while (!inflater.finished()) {
+					if (inflatedLength == inflated.length) {
+						inflated = Arrays.copyOf(inflated, inflated.length * 2);
+					}
+
+					int read = inflater.inflate(inflated, inflatedLength, inflated.length - inflatedLength);
+					if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+						throw new EOFException("Unexpected end of compressed chunk-data");
+					}
+
+					inflatedLength += read;
+				}
+
+				return inflatedLength;
+			} catch (DataFormatException ex) {
+				throw new IOException("Invalid compressed chunk-data", ex);
+			}
+		}
+
+	}
+
+	private static class Header {
+
+		private final FileChannel channel;
+		private final long size, lastModified;
+		private final int[] locations, timestamps;
+
+		private Header(FileChannel channel, long size, long lastModified, int[] locations, int[] timestamps) {
+			this.channel = channel;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.locations = locations;
+			this.timestamps = timestamps;
+		}
+
+		/**
+		 * Whether this header still represents a region-file with the given size and modification-time and can still be
+		 * read from
+		 */
+		private boolean isValid(long size, long lastModified) {
+			return this.size == size && this.lastModified == lastModified && channel.isOpen();
+		}
+
+	}
+
 }
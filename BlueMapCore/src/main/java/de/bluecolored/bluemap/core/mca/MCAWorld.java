@@ -27,7 +27,10 @@
 import com.flowpowered.math.vector.Vector2i;
 import com.flowpowered.math.vector.Vector3i;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import de.bluecolored.bluemap.core.BlueMap;
 import de.bluecolored.bluemap.core.MinecraftVersion;
 import de.bluecolored.bluemap.core.debug.DebugDump;
@@ -47,21 +50,42 @@
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
-public class MCAWorld implements World {
+public class MCAWorld implements World, BlockAccess {
 
 	private static final Grid CHUNK_GRID = new Grid(16);
 	private static final Grid REGION_GRID = new Grid(32).multiply(CHUNK_GRID);
 
+	/**
+	 * The time after which loading a chunk that failed to load is attempted again
+	 */
+	public static final long LOAD_RETRY_DELAY_MILLIS = 1000;
+
+	/**
+	 * The time after which a failed attempt to load a chunk is forgotten, if the chunk has not been requested again since.<br>
+	 * Every request after the {@link #LOAD_RETRY_DELAY_MILLIS} loads the chunk again and renews (or removes) the failure,
+	 * so older failures are only left over from chunks that are not needed anymore.
+	 */
+	private static final long FAILED_CHUNK_EXPIRE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
 	@DebugDump private final UUID uuid;
 	@DebugDump private final Path worldFolder;
 	private final MinecraftVersion minecraftVersion;
 	@DebugDump private String name;
 	@DebugDump private Vector3i spawnPoint;
 
-	private final LoadingCache<Vector2i, MCARegion> regionCache;
-	private final LoadingCache<Vector2i, MCAChunk> chunkCache;
+	private final LoadingCache<Long, MCARegion> regionCache;
+	private final LoadingCache<Long, MCAChunk> chunkCache;
+	private final Map<Long, PinnedChunk> pinnedChunks;
+
+	private final LongAdder prefetchWaitTime, prefetchWaitCount;
+	private final LongAdder loadWaitTime, loadWaitCount;
+
+	private final Map<Long, Long> failedChunks;
+	private final LongAdder loadFailCount, loadRetryCount;
 
 	private BlockIdMapper blockIdMapper;
 	private BlockPropertiesMapper blockPropertiesMapper;
@@ -70,6 +94,8 @@ public class MCAWorld implements World {
 	private final Map<String, List<BlockStateExtension>> blockStateExtensions;
 
 	@DebugDump private boolean ignoreMissingLightData;
+	@DebugDump private final ChunkCacheSettings chunkCacheSettings;
+	@DebugDump private final Path chunkDiskCacheFolder;
 	
 	private final Map<Integer, String> forgeBlockMappings;
 	
@@ -82,7 +108,8 @@ private MCAWorld(
 			BlockIdMapper blockIdMapper,
 			BlockPropertiesMapper blockPropertiesMapper, 
 			BiomeMapper biomeMapper,
-			boolean ignoreMissingLightData
+			boolean ignoreMissingLightData,
+			ChunkCacheSettings chunkCacheSettings
 			) {
 		this.uuid = uuid;
 		this.worldFolder = worldFolder;
@@ -95,6 +122,10 @@ private MCAWorld(
 		this.biomeMapper = biomeMapper;
 		
 		this.ignoreMissingLightData = ignoreMissingLightData;
+		this.chunkCacheSettings = chunkCacheSettings;
+
+		Path diskCacheFolder = chunkCacheSettings.getDiskCacheFolder();
+		this.chunkDiskCacheFolder = diskCacheFolder != null ? diskCacheFolder.resolve(uuid.toString()) : null;
 		
 		this.forgeBlockMappings = new HashMap<>();
 		
@@ -114,19 +145,38 @@ private MCAWorld(
 		
 		this.regionCache = Caffeine.newBuilder()
 				.executor(BlueMap.THREAD_POOL)
-				.maximumSize(100)
-				.expireAfterWrite(1, TimeUnit.MINUTES)
+				.maximumWeight(chunkCacheSettings.getRegionMaxMemoryMB() * 1024L * 1024L)
+				.weigher((Long pos, MCARegion region) -> region.estimateMemorySize())
+				.expireAfterWrite(chunkCacheSettings.getExpireAfterSeconds(), TimeUnit.SECONDS)
+				.removalListener(this::onRegionRemoval)
+				.recordStats()
 				.build(this::loadRegion);
 
 		this.chunkCache = Caffeine.newBuilder()
 				.executor(BlueMap.THREAD_POOL)
-				.maximumSize(500)
-				.expireAfterWrite(1, TimeUnit.MINUTES)
+				.maximumWeight(chunkCacheSettings.getMaxMemoryMB() * 1024L * 1024L)
+				.weigher((Long pos, MCAChunk chunk) -> chunk.estimateMemorySize())
+				.expireAfter(new ChunkExpiry(chunkCacheSettings.getExpireAfterSeconds()))
+				.recordStats()
 				.build(this::loadChunk);
+
+		this.pinnedChunks = new ConcurrentHashMap<>();
+
+		this.prefetchWaitTime = new LongAdder();
+		this.prefetchWaitCount = new LongAdder();
+		this.loadWaitTime = new LongAdder();
+		this.loadWaitCount = new LongAdder();
+
+		this.failedChunks = new ConcurrentHashMap<>();
+		this.loadFailCount = new LongAdder();
+		this.loadRetryCount = new LongAdder();
 	}
 
+	@Override
 	public BlockState getBlockState(Vector3i pos) {
-		return getChunk(blockToChunk(pos)).getBlockState(pos);
+		MCAChunk chunk = getChunk(pos.getX() >> 4, pos.getZ() >> 4);
+		if (chunk instanceof ChunkAnvil112) return ((ChunkAnvil112) chunk).getRawBlockState(pos.getX(), pos.getY(), pos.getZ());
+		return chunk.getBlockState(pos);
 	}
 	
 	@Override
@@ -134,40 +184,291 @@ public Biome getBiome(int x, int y, int z) {
 		return getChunk(x >> 4, z >> 4).getBiome(x, y, z);
 	}
 	
+	@Override
+	public int getPackedLight(int x, int y, int z) {
+		return getChunk(x >> 4, z >> 4).getPackedLight(x, y, z);
+	}
+	
 	@Override
 	public Block getBlock(Vector3i pos) {
-		MCAChunk chunk = getChunk(blockToChunk(pos));
-		BlockState blockState = getExtendedBlockState(chunk, pos);
+		MCAChunk chunk = getChunk(pos.getX() >> 4, pos.getZ() >> 4);
+		BlockState blockState = getExtendedBlockState(chunk, pos.getX(), pos.getY(), pos.getZ());
 		LightData lightData = chunk.getLightData(pos);
 		Biome biome = chunk.getBiome(pos.getX(), pos.getY(), pos.getZ());
 		BlockProperties properties = blockPropertiesMapper.get(blockState);
 		return new Block(this, blockState, lightData, biome, properties, pos);
 	}
 
-	private BlockState getExtendedBlockState(MCAChunk chunk, Vector3i pos) {
-		BlockState blockState = chunk.getBlockState(pos);
-		
-		if (chunk instanceof ChunkAnvil112) { // only use extensions if old format chunk (1.12) in the new format block-states are saved with extensions
-			for (BlockStateExtension ext : blockStateExtensions.getOrDefault(blockState.getFullId(), Collections.emptyList())) {
-				blockState = ext.extend(this, pos, blockState);
+	@Override
+	public void loadBlock(BlockCursor cursor) {
+		int x = cursor.getX(), y = cursor.getY(), z = cursor.getZ();
+		int chunkX = x >> 4, chunkZ = z >> 4;
+
+		Chunk cachedChunk = cursor.getCachedChunk(chunkX, chunkZ);
+		MCAChunk chunk;
+		if (cachedChunk instanceof MCAChunk) {
+			chunk = (MCAChunk) cachedChunk;
+		} else {
+			chunk = getChunk(chunkX, chunkZ);
+			cursor.setCachedChunk(chunkX, chunkZ, chunk);
+		}
+
+		BlockState blockState = getExtendedBlockState(chunk, x, y, z);
+
+		cursor.setBlockState(blockState);
+		cursor.setLightData(LightData.of(chunk.getPackedLight(x, y, z)));
+		cursor.setBiome(chunk.getBiome(x, y, z));
+		cursor.setProperties(blockPropertiesMapper.get(blockState));
+	}
+
+	@Override
+	public void loadBlocks(BlockWindow window, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+		for (int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++) {
+			for (int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++) {
+				MCAChunk chunk = getChunk(chunkX, chunkZ);
+
+				int chunkMinX = Math.max(minX, chunkX << 4), chunkMaxX = Math.min(maxX, (chunkX << 4) + 15);
+				int chunkMinZ = Math.max(minZ, chunkZ << 4), chunkMaxZ = Math.min(maxZ, (chunkZ << 4) + 15);
+
+				for (int y = minY; y <= maxY; y++) {
+					for (int z = chunkMinZ; z <= chunkMaxZ; z++) {
+						for (int x = chunkMinX; x <= chunkMaxX; x++) {
+							BlockState blockState = getExtendedBlockState(chunk, x, y, z);
+
+							int light = chunk.getPackedLight(x, y, z);
+							window.setBlock(x, y, z,
+									blockState.getStateId(),
+									light >> 4,
+									light & 0xF,
+									chunk.getBiome(x, y, z),
+									blockPropertiesMapper.get(blockState)
+							);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private BlockState getExtendedBlockState(MCAChunk chunk, int x, int y, int z) {
+		// only old format chunks (1.12) need extensions, in the new format block-states are saved with extensions.
+		// ChunkAnvil112 already resolves them when loading the chunk, except for blocks that need to look at a neighbor-chunk
+		if (chunk instanceof ChunkAnvil112) {
+			ChunkAnvil112 legacyChunk = (ChunkAnvil112) chunk;
+			if (legacyChunk.isExtensionPending(x, y, z)) {
+				return extendBlockState(this, new Vector3i(x, y, z), legacyChunk.getRawBlockState(x, y, z));
 			}
 		}
 		
-		return blockState;
+		return BlockStateRegistry.get(chunk.getBlockStateId(x, y, z));
+	}
+	
+	/**
+	 * Returns whether there are {@link BlockStateExtension}s registered for this block-state
+	 */
+	boolean hasBlockStateExtensions(BlockState blockState) {
+		return blockStateExtensions.containsKey(blockState.getFullId());
+	}
+	
+	/**
+	 * Applies all {@link BlockStateExtension}s registered for this block-state and returns the interned result
+	 */
+	BlockState extendBlockState(BlockAccess blockAccess, Vector3i pos, BlockState blockState) {
+		List<BlockStateExtension> extensions = blockStateExtensions.get(blockState.getFullId());
+		if (extensions == null) return blockState;
+		
+		for (BlockStateExtension ext : extensions) {
+			blockState = ext.extend(blockAccess, pos, blockState);
+		}
+		
+		return BlockStateRegistry.intern(blockState);
 	}
 
 	@Override
 	public MCAChunk getChunk(int x, int z) {
-		return getChunk(new Vector2i(x, z));
+		long pos = MCAMath.packCoordinates(x, z);
+
+		if (!pinnedChunks.isEmpty()) {
+			PinnedChunk pinnedChunk = pinnedChunks.get(pos);
+			if (pinnedChunk != null) {
+				MCAChunk chunk = pinnedChunk.getChunk();
+
+				// a pinned chunk that failed to load is retried through the chunk-cache
+				if (chunk != null && chunk != MCAChunk.loadFailed()) return chunk;
+			}
+		}
+
+		return chunkCache.get(pos);
 	}
 
 	public MCAChunk getChunk(Vector2i pos) {
-		return chunkCache.get(pos);
+		return getChunk(pos.getX(), pos.getY());
+	}
+
+	/**
+	 * Pins the given chunks and all chunks within the configured prefetch-depth around them.<br>
+	 * Pinned chunks are loaded in parallel on the {@link BlueMap#THREAD_POOL} and are held outside of the chunk-cache until they
+	 * get released, so they can not be evicted while they are still needed.
+	 */
+	@Override
+	public PinnedChunks pinChunks(Collection<Vector2i> chunks) {
+		int depth = chunkCacheSettings.getPrefetchDepth();
+		if (depth < 0) return PinnedChunks.NONE;
+
+		Set<Vector2i> pinned = new LinkedHashSet<>();
+		for (Vector2i chunk : chunks) {
+			pinned.add(chunk);
+			for (int x = -depth; x <= depth; x++) {
+				for (int z = -depth; z <= depth; z++) {
+					pinned.add(chunk.add(x, z));
+				}
+			}
+		}
+
+		return pinChunks(pinned, false);
+	}
+
+	/**
+	 * Pins exactly the given chunks (without any chunks around them) and computes their
+	 * {@link MCAChunk#getFingerprint() fingerprints} while loading them.<br>
+	 * Chunks that are loaded in any other way skip computing their fingerprint, so (other than {@link #pinChunks(Collection)})
+	 * this also pins the chunks if pinning is disabled with a negative prefetch-depth.
+	 */
+	@Override
+	public PinnedChunks pinChunksWithFingerprints(Collection<Vector2i> chunks) {
+		return pinChunks(new LinkedHashSet<>(chunks), true);
+	}
+
+	private PinnedChunks pinChunks(Set<Vector2i> pinned, boolean fingerprint) {
+		long[] pinnedKeys = new long[pinned.size()];
+		int i = 0;
+		for (Vector2i chunk : pinned) {
+			pinnedKeys[i++] = MCAMath.packCoordinates(chunk.getX(), chunk.getY());
+		}
+
+		for (long chunk : pinnedKeys) {
+			pinnedChunks.compute(chunk, (pos, pinnedChunk) -> {
+				if (pinnedChunk == null) pinnedChunk = new PinnedChunk(pos, fingerprint);
+				else if (fingerprint) pinnedChunk.requireFingerprint(pos);
+				pinnedChunk.pins++;
+				return pinnedChunk;
+			});
+		}
+
+		AtomicBoolean released = new AtomicBoolean(false);
+		return () -> {
+			if (!released.compareAndSet(false, true)) return;
+
+			for (long chunk : pinnedKeys) {
+				pinnedChunks.computeIfPresent(chunk, (pos, pinnedChunk) -> {
+					if (--pinnedChunk.pins > 0) return pinnedChunk;
+
+					pinnedChunk.invalidate();
+					return null;
+				});
+			}
+
+			Logger.global.logDebug("Released " + pinnedKeys.length + " pinned chunks of world '" + name + "'. " +
+					"Chunk-load wait-time so far: " + getPrefetchWaitTime() + "ms on " + prefetchWaitCount.sum() + " prefetched chunks, " +
+					getLoadWaitTime() + "ms on " + loadWaitCount.sum() + " not prefetched chunks.");
+		};
+	}
+
+	/**
+	 * Returns true if the last attempt to load this chunk failed, e.g. because the server was writing the region-file
+	 * at the same time.<br>
+	 * Until the chunk is loaded successfully it is treated as an empty chunk. After a failure the chunk is kept in the
+	 * chunk-cache for {@link #LOAD_RETRY_DELAY_MILLIS}, a request after that tries to load it again.
+	 */
+	@Override
+	public boolean isChunkLoadFailed(int x, int z) {
+		Long failTime = failedChunks.get(MCAMath.packCoordinates(x, z));
+		return failTime != null && failTime > System.currentTimeMillis() - FAILED_CHUNK_EXPIRE_MILLIS;
+	}
+
+	/**
+	 * The total number of attempts to load a chunk that failed
+	 */
+	@DebugDump("chunkLoadFailCount")
+	public long getChunkLoadFailCount() {
+		return loadFailCount.sum();
+	}
+
+	/**
+	 * The total number of attempts to load a chunk again after loading it failed before
+	 */
+	@DebugDump("chunkLoadRetryCount")
+	public long getChunkLoadRetryCount() {
+		return loadRetryCount.sum();
+	}
+
+	/**
+	 * The number of chunks that currently failed to load and have not been loaded successfully since
+	 */
+	@DebugDump("failedChunkCount")
+	public int getFailedChunkCount() {
+		removeExpiredFailedChunks();
+		return failedChunks.size();
+	}
+
+	private void removeExpiredFailedChunks() {
+		long expireTime = System.currentTimeMillis() - FAILED_CHUNK_EXPIRE_MILLIS;
+		failedChunks.values().removeIf(failTime -> failTime <= expireTime);
+	}
+
+	/**
+	 * The total time in milliseconds that threads waited for pinned chunks that were not loaded yet when they were needed
+	 */
+	@DebugDump("prefetchWaitTimeMillis")
+	public long getPrefetchWaitTime() {
+		return TimeUnit.NANOSECONDS.toMillis(prefetchWaitTime.sum());
+	}
+
+	/**
+	 * The total time in milliseconds that threads waited for chunks that were not pinned and not cached and had to be loaded
+	 */
+	@DebugDump("loadWaitTimeMillis")
+	public long getLoadWaitTime() {
+		return TimeUnit.NANOSECONDS.toMillis(loadWaitTime.sum());
+	}
+
+	/**
+	 * The hit/miss/eviction statistics of the chunk-cache
+	 */
+	public CacheStats getChunkCacheStats() {
+		return chunkCache.stats();
+	}
+
+	/**
+	 * The hit/miss/eviction statistics of the region-cache
+	 */
+	public CacheStats getRegionCacheStats() {
+		return regionCache.stats();
+	}
+
+	/**
+	 * The estimated memory in bytes that is currently retained by the cached chunks
+	 */
+	@DebugDump("chunkCacheMemoryBytes")
+	public long getChunkCacheMemorySize() {
+		return chunkCache.policy().eviction()
+				.map(eviction -> eviction.weightedSize().orElse(0))
+				.orElse(0L);
+	}
+
+	@DebugDump("chunkCacheStats")
+	private String dumpChunkCacheStats() {
+		return getChunkCacheStats().toString();
+	}
+
+	@DebugDump("regionCacheStats")
+	private String dumpRegionCacheStats() {
+		return getRegionCacheStats().toString();
 	}
 
 	@Override
 	public MCARegion getRegion(int x, int z) {
-		return regionCache.get(new Vector2i(x, z));
+		return regionCache.get(MCAMath.packCoordinates(x, z));
 	}
 
 	@Override
@@ -241,11 +542,16 @@ public Vector3i getSpawnPoint() {
 	@Override
 	public void invalidateChunkCache() {
 		chunkCache.invalidateAll();
+		pinnedChunks.values().forEach(PinnedChunk::invalidate);
 	}
 	
 	@Override
 	public void invalidateChunkCache(int x, int z) {
-		chunkCache.invalidate(new Vector2i(x, z));
+		long pos = MCAMath.packCoordinates(x, z);
+		chunkCache.invalidate(pos);
+
+		PinnedChunk pinnedChunk = pinnedChunks.get(pos);
+		if (pinnedChunk != null) pinnedChunk.invalidate();
 	}
 	
 	@Override
@@ -257,6 +563,7 @@ public BlockIdMapper getBlockIdMapper() {
 		return blockIdMapper;
 	}
 	
+	@Override
 	public BlockPropertiesMapper getBlockPropertiesMapper() {
 		return blockPropertiesMapper;
 	}
@@ -285,6 +592,17 @@ public String getForgeBlockIdMapping(int id) {
 		return forgeBlockMappings.get(id);
 	}
 	
+	/**
+	 * The folder where the {@link ChunkDiskCache}-files of this world are stored, or <code>null</code> if the disk-cache is disabled.
+	 */
+	Path getChunkDiskCacheFolder() {
+		return chunkDiskCacheFolder;
+	}
+
+	public ChunkCacheSettings getChunkCacheSettings() {
+		return chunkCacheSettings;
+	}
+
 	public MinecraftVersion getMinecraftVersion() {
 		return minecraftVersion;
 	}
@@ -303,8 +621,8 @@ private void registerBlockStateExtension(BlockStateExtension extension) {
 		}
 	}
 
-	private MCARegion loadRegion(Vector2i regionPos) {
-		return loadRegion(regionPos.getX(), regionPos.getY());
+	private MCARegion loadRegion(long regionPos) {
+		return loadRegion(MCAMath.unpackX(regionPos), MCAMath.unpackZ(regionPos));
 	}
 
 	private MCARegion loadRegion(int x, int z) {
@@ -312,36 +630,50 @@ private MCARegion loadRegion(int x, int z) {
 		return new MCARegion(this, regionPath);
 	}
 
-	private MCAChunk loadChunk(Vector2i chunkPos) {
-		return loadChunk(chunkPos.getX(), chunkPos.getY());
-	}
+	private void onRegionRemoval(Long regionPos, MCARegion region, RemovalCause cause) {
+		if (region == null) return;
 
-	private MCAChunk loadChunk(int x, int z) {
-		final int tries = 3;
-		final int tryInterval = 1000;
+		try {
+			region.close();
+		} catch (IOException ex) {
+			Logger.global.logDebug("Failed to close region-file " + region.getRegionFile() + ": " + ex);
+		}
+	}
 
-		Exception loadException = null;
-		for (int i = 0; i < tries; i++) {
-			try {
-				return getRegion(x >> 5, z >> 5)
-						.loadChunk(x, z, ignoreMissingLightData);
-			} catch (IOException | RuntimeException e) {
-				if (loadException != null) e.addSuppressed(loadException);
-				loadException = e;
-
-				if (i + 1 < tries) {
-					try {
-						Thread.sleep(tryInterval);
-					} catch (InterruptedException ex) {
-						Thread.currentThread().interrupt();
-						break;
-					}
-				}
-			}
+	private MCAChunk loadChunk(long chunkPos) {
+		long start = System.nanoTime();
+		try {
+			return loadChunk(MCAMath.unpackX(chunkPos), MCAMath.unpackZ(chunkPos), false);
+		} finally {
+			loadWaitTime.add(System.nanoTime() - start);
+			loadWaitCount.increment();
 		}
+	}
 
-		Logger.global.logDebug("Unexpected exception trying to load chunk (x:" + x + ", z:" + z + "):" + loadException);
-		return MCAChunk.empty();
+	/**
+	 * Loads the chunk with a single attempt and never blocks to retry it.<br>
+	 * If loading fails (e.g. because the server is writing the region-file) the chunk is recorded as failed and
+	 * {@link MCAChunk#loadFailed()} is returned, which is only cached for a short time so a later request tries again.
+	 */
+	private MCAChunk loadChunk(int x, int z, boolean fingerprint) {
+		long pos = MCAMath.packCoordinates(x, z);
+		boolean isRetry = failedChunks.containsKey(pos);
+		if (isRetry) loadRetryCount.increment();
+
+		try {
+			MCAChunk chunk = getRegion(x >> 5, z >> 5)
+					.loadChunk(x, z, ignoreMissingLightData, fingerprint);
+
+			if (isRetry) failedChunks.remove(pos);
+			return chunk;
+		} catch (IOException | RuntimeException e) {
+			loadFailCount.increment();
+			removeExpiredFailedChunks();
+			failedChunks.put(pos, System.currentTimeMillis());
+
+			Logger.global.logDebug("Unexpected exception trying to load chunk (x:" + x + ", z:" + z + "):" + e);
+			return MCAChunk.loadFailed();
+		}
 	}
 
 	public static MCAWorld load(Path worldFolder, UUID uuid, MinecraftVersion version, BlockIdMapper blockIdMapper, BlockPropertiesMapper blockPropertiesMapper, BiomeMapper biomeIdMapper) throws IOException {
@@ -349,6 +681,10 @@ public static MCAWorld load(Path worldFolder, UUID uuid, MinecraftVersion versio
 	}
 	
 	public static MCAWorld load(Path worldFolder, UUID uuid, MinecraftVersion version, BlockIdMapper blockIdMapper, BlockPropertiesMapper blockPropertiesMapper, BiomeMapper biomeIdMapper, String name, boolean ignoreMissingLightData) throws IOException {
+		return load(worldFolder, uuid, version, blockIdMapper, blockPropertiesMapper, biomeIdMapper, name, ignoreMissingLightData, new ChunkCacheSettings() {});
+	}
+	
+	public static MCAWorld load(Path worldFolder, UUID uuid, MinecraftVersion version, BlockIdMapper blockIdMapper, BlockPropertiesMapper blockPropertiesMapper, BiomeMapper biomeIdMapper, String name, boolean ignoreMissingLightData, ChunkCacheSettings chunkCacheSettings) throws IOException {
 		try {
 			StringBuilder subDimensionName = new StringBuilder();
 
@@ -391,7 +727,8 @@ public static MCAWorld load(Path worldFolder, UUID uuid, MinecraftVersion versio
 					blockIdMapper,
 					blockPropertiesMapper,
 					biomeIdMapper,
-					ignoreMissingLightData
+					ignoreMissingLightData,
+					chunkCacheSettings
 					);
 			
 			try {
@@ -432,4 +769,96 @@ public String toString() {
 			   '}';
 	}
 
+	/**
+	 * Expires chunks that failed to load much earlier than loaded chunks, so they are retried soon
+	 */
+	private static class ChunkExpiry implements Expiry<Long, MCAChunk> {
+
+		private final long expireAfterNanos;
+
+		private ChunkExpiry(int expireAfterSeconds) {
+			this.expireAfterNanos = TimeUnit.SECONDS.toNanos(expireAfterSeconds);
+		}
+
+		@Override
+		public long expireAfterCreate(Long pos, MCAChunk chunk, long currentTime) {
+			if (chunk == MCAChunk.loadFailed()) return Math.min(TimeUnit.MILLISECONDS.toNanos(LOAD_RETRY_DELAY_MILLIS), expireAfterNanos);
+			return expireAfterNanos;
+		}
+
+		@Override
+		public long expireAfterUpdate(Long pos, MCAChunk chunk, long currentTime, long currentDuration) {
+			return expireAfterCreate(pos, chunk, currentTime);
+		}
+
+		@Override
+		public long expireAfterRead(Long pos, MCAChunk chunk, long currentTime, long currentDuration) {
+			return currentDuration;
+		}
+
+	}
+
+	private class PinnedChunk {
+
+		private int pins; // only modified inside of pinnedChunks.compute()
+		private boolean fingerprint; // only modified inside of pinnedChunks.compute()
+		private volatile CompletableFuture<MCAChunk> chunkFuture;
+
+		private PinnedChunk(long pos, boolean fingerprint) {
+			this.pins = 0;
+			this.fingerprint = fingerprint;
+			this.chunkFuture = load(pos);
+		}
+
+		/**
+		 * Makes sure the fingerprint of the pinned chunk is computed, the chunk is loaded again if it has been pinned without it.
+		 */
+		private void requireFingerprint(long pos) {
+			if (fingerprint) return;
+			fingerprint = true;
+
+			CompletableFuture<MCAChunk> chunkFuture = this.chunkFuture;
+			if (chunkFuture == null) return;
+
+			chunkFuture.cancel(false);
+			this.chunkFuture = load(pos);
+		}
+
+		private CompletableFuture<MCAChunk> load(long pos) {
+			boolean fingerprint = this.fingerprint;
+			return CompletableFuture.supplyAsync(() -> loadChunk(MCAMath.unpackX(pos), MCAMath.unpackZ(pos), fingerprint), BlueMap.THREAD_POOL);
+		}
+
+		/**
+		 * Returns the pinned chunk, waiting for it to be loaded if necessary.
+		 * Returns null if the chunk got invalidated.
+		 */
+		private MCAChunk getChunk() {
+			CompletableFuture<MCAChunk> chunkFuture = this.chunkFuture;
+			if (chunkFuture == null) return null;
+
+			if (chunkFuture.isDone()) {
+				return chunkFuture.isCompletedExceptionally() ? null : chunkFuture.join();
+			}
+
+			long start = System.nanoTime();
+			try {
+				return chunkFuture.join();
+			} catch (CancellationException | CompletionException ex) {
+				return null;
+			} finally {
+				prefetchWaitTime.add(System.nanoTime() - start);
+				prefetchWaitCount.increment();
+			}
+		}
+
+		private void invalidate() {
+			CompletableFuture<MCAChunk> chunkFuture = this.chunkFuture;
+			this.chunkFuture = null;
+
+			if (chunkFuture != null) chunkFuture.cancel(false);
+		}
+
+	}
+
 }
@@ -0,0 +1,301 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.mca;
+
+import net.querz.nbt.CompoundTag;
+import net.querz.nbt.ListTag;
+import net.querz.nbt.Tag;
+import net.querz.nbt.TagFactory;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Reads NBT-data from a stream but only materializes the tags on a set of selected paths, everything else is skipped
+ * without creating any tag-objects.<br>
+ * <br>
+ * Paths are dot-separated compound-keys starting at the root-compound, e.g. <code>"Level.Sections"</code>.
+ * A selected path selects the whole subtree below it. Lists are transparent: <code>"Level.Sections.Y"</code> selects
+ * the <code>Y</code> tag of every compound in the <code>Sections</code> list.<br>
+ * <br>
+ * Instances are immutable and can be shared between threads.
+ */
+public class SelectiveNBTReader {
+
+	private static final int MAX_DEPTH = Tag.DEFAULT_MAX_DEPTH;
+	private static final int SKIP_BUFFER_SIZE = 4096;
+
+	private final Node root;
+
+	public SelectiveNBTReader(String... paths) {
+		this(Arrays.asList(paths));
+	}
+
+	public SelectiveNBTReader(Collection<String> paths) {
+		NodeBuilder rootBuilder = new NodeBuilder("");
+		for (String path : paths) {
+			NodeBuilder node = rootBuilder;
+			for (String key : path.split("\\.")) {
+				if (node.selected) break;
+				node = node.children.computeIfAbsent(key, NodeBuilder::new);
+			}
+
+			node.selected = true;
+			node.children.clear();
+		}
+
+		this.root = rootBuilder.build();
+	}
+
+	/**
+	 * Reads one named root-tag from the stream, which has to be a compound-tag.
+	 * Returns a compound-tag only containing the selected paths that were present in the data.
+	 */
+	public CompoundTag read(DataInputStream in) throws IOException {
+		Reader reader = new Reader(in);
+
+		byte type = in.readByte();
+		if (type != 10) throw new IOException("Invalid root tag type " + type + ", expected a compound tag");
+		reader.skipString();
+
+		return reader.readCompound(root, 0);
+	}
+
+	private static class Reader {
+
+		private final DataInputStream in;
+		private final byte[] buffer;
+
+		private Reader(DataInputStream in) {
+			this.in = in;
+			this.buffer = new byte[SKIP_BUFFER_SIZE];
+		}
+
+		private Tag<?> read(byte type, Node node, int depth) throws IOException {
+			if (node.isLeaf()) return readFull(type, depth);
+
+			switch (type) {
+				case 10: return readCompound(node, depth);
+				case 9: return readList(node, depth);
+				default:
+					// the path continues but this tag has no children
+					skip(type, depth);
+					return null;
+			}
+		}
+
+		private Tag<?> readFull(byte type, int depth) throws IOException {
+			Tag<?> tag = TagFactory.fromID(type);
+			tag.deserializeValue(in, MAX_DEPTH - depth);
+			return tag;
+		}
+
+		private CompoundTag readCompound(Node node, int depth) throws IOException {
+			checkDepth(depth);
+
+			CompoundTag compound = new CompoundTag();
+			byte type;
+			while ((type = in.readByte()) != 0) {
+				Node child = readKey(node);
+				if (child == null) {
+					skip(type, depth + 1);
+					continue;
+				}
+
+				Tag<?> tag = read(type, child, depth + 1);
+				if (tag != null) compound.put(child.key, tag);
+			}
+
+			return compound;
+		}
+
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		private ListTag<?> readList(Node node, int depth) throws IOException {
+			checkDepth(depth);
+
+			byte elementType = in.readByte();
+			int length = in.readInt();
+
+			if (elementType != 10 && elementType != 9) {
+				// the path continues but the elements have no children
+				skipList(elementType, length, depth);
+				return null;
+			}
+
+			ListTag list = new ListTag(elementType == 10 ? CompoundTag.class : ListTag.class);
+			for (int i = 0; i < length; i++) {
+				Tag<?> element = read(elementType, node, depth + 1);
+				if (element != null) list.add(element);
+			}
+
+			return list;
+		}
+
+		private Node readKey(Node node) throws IOException {
+			int length = in.readUnsignedShort();
+			if (length > buffer.length) {
+				skipBytes(length);
+				return null;
+			}
+
+			in.readFully(buffer, 0, length);
+			for (Node child : node.children) {
+				if (child.keyEquals(buffer, length)) return child;
+			}
+
+			return null;
+		}
+
+		private void skip(byte type, int depth) throws IOException {
+			switch (type) {
+				case 1: skipBytes(1); break; // byte
+				case 2: skipBytes(2); break; // short
+				case 3: skipBytes(4); break; // int
+				case 4: skipBytes(8); break; // long
+				case 5: skipBytes(4); break; // float
+				case 6: skipBytes(8); break; // double
+				case 7: skipBytes(in.readInt()); break; // byte-array
+				case 8: skipString(); break;
+				case 9: // list
+					checkDepth(depth);
+					byte elementType = in.readByte();
+					skipList(elementType, in.readInt(), depth);
+					break;
+				case 10: // compound
+					checkDepth(depth);
+					byte childType;
+					while ((childType = in.readByte()) != 0) {
+						skipString();
+						skip(childType, depth + 1);
+					}
+					break;
+				case 11: skipBytes(in.readInt() * 4L); break; // int-array
+				case 12: skipBytes(in.readInt() * 8L); break; // long-array
+				default: throw new IOException("Invalid tag type " + type);
+			}
+		}
+
+		private void skipList(byte elementType, int length, int depth) throws IOException {
+			switch (elementType) {
+				case 0: break; // empty list
+				case 1: skipBytes(length); break;
+				case 2: skipBytes(length * 2L); break;
+				case 3: case 5: skipBytes(length * 4L); break;
+				case 4: case 6: skipBytes(length * 8L); break;
+				default:
+					for (int i = 0; i < length; i++) {
+						skip(elementType, depth + 1);
+					}
+			}
+		}
+
+		private void skipString() throws IOException {
+			skipBytes(in.readUnsignedShort());
+		}
+
+		private void skipBytes(long count) throws IOException {
+			if (count < 0) throw new IOException("Negative length " + count);
+
+			// reading into our own buffer instead of using skip(), because InflaterInputStream#skip allocates a new buffer on each call
+			while (count > 0) {
+				int length = (int) Math.min(count, buffer.length);
+				in.readFully(buffer, 0, length);
+				count -= length;
+			}
+		}
+
+		private void checkDepth(int depth) throws IOException {
+			if (depth >= MAX_DEPTH) throw new IOException("Reached maximum depth (" + MAX_DEPTH + ") of NBT data");
+		}
+
+	}
+
+	private static class Node {
+
+		private static final Node[] NO_CHILDREN = new Node[0];
+
+		private final String key;
+		private final byte[] keyBytes;
+		private final Node[] children;
+
+		private Node(String key, Node[] children) {
+			this.key = key;
+			this.keyBytes = encodeKey(key);
+			this.children = children;
+		}
+
+		private boolean isLeaf() {
+			return children.length == 0;
+		}
+
+		private boolean keyEquals(byte[] bytes, int length) {
+			if (keyBytes.length != length) return false;
+			for (int i = 0; i < length; i++) {
+				if (keyBytes[i] != bytes[i]) return false;
+			}
+			return true;
+		}
+
+		private static byte[] encodeKey(String key) {
+			// keys in NBT are encoded as "modified UTF-8" which only differs from UTF-8 for \0 and supplementary characters
+			for (int i = 0; i < key.length(); i++) {
+				char c = key.charAt(i);
+				if (c == 0 || Character.isSurrogate(c)) throw new IllegalArgumentException("Unsupported character in NBT path: " + key);
+			}
+
+			return key.getBytes(StandardCharsets.UTF_8);
+		}
+
+	}
+
+	private static class NodeBuilder {
+
+		private final String key;
+		private final Map<String, NodeBuilder> children;
+		private boolean selected;
+
+		private NodeBuilder(String key) {
+			this.key = key;
+			this.children = new LinkedHashMap<>();
+			this.selected = false;
+		}
+
+		private Node build() {
+			if (children.isEmpty()) return new Node(key, Node.NO_CHILDREN);
+
+			Node[] childNodes = new Node[children.size()];
+			int i = 0;
+			for (NodeBuilder child : children.values()) {
+				childNodes[i++] = child.build();
+			}
+
+			return new Node(key, childNodes);
+		}
+
+	}
+
+}
@@ -22,42 +22,23 @@
  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
  * THE SOFTWARE.
  */
-package de.bluecolored.bluemap.core.model;
+package de.bluecolored.bluemap.core.mca.extensions;
 
-import de.bluecolored.bluemap.core.threejs.BufferAttribute;
-import de.bluecolored.bluemap.core.threejs.BufferGeometry;
+import com.flowpowered.math.vector.Vector3i;
 
-public class ExtendedModel extends Model<ExtendedFace> {
-
-	@Override
-	public BufferGeometry toBufferGeometry() {
-		BufferGeometry geo = super.toBufferGeometry();
-
-		int count = getFaces().size();
-		float[] ao = new float[count * 3];
-		float[] blockLight = new float[count * 3];
-		float[] sunLight = new float[count * 3];
-		
-		for (int itemIndex = 0; itemIndex < count; itemIndex++){
-			ExtendedFace f = getFaces().get(itemIndex);
-			ao[itemIndex * 3 + 0] = f.getAo1();
-			ao[itemIndex * 3 + 1] = f.getAo2();
-			ao[itemIndex * 3 + 2] = f.getAo3();
-
-			blockLight[itemIndex * 3 + 0] = f.getBl1();
-			blockLight[itemIndex * 3 + 1] = f.getBl2();
-			blockLight[itemIndex * 3 + 2] = f.getBl3();
-
-			sunLight[itemIndex * 3 + 0] = f.getSl1();
-			sunLight[itemIndex * 3 + 1] = f.getSl2();
-			sunLight[itemIndex * 3 + 2] = f.getSl3();
-		}
-
-		geo.addAttribute("ao", new BufferAttribute(ao, 1));
-		geo.addAttribute("blocklight", new BufferAttribute(blockLight, 1));
-		geo.addAttribute("sunlight", new BufferAttribute(sunLight, 1));
-		
-		return geo;
-	}
+import de.bluecolored.bluemap.core.mca.mapping.BlockPropertiesMapper;
+import de.bluecolored.bluemap.core.world.BlockState;
 
+/**
+ * The view on the world that {@link BlockStateExtension}s use to look at the neighbors of the block they are extending.
+ */
+public interface BlockAccess {
+
+	/**
+	 * Returns the plain (not extended) {@link BlockState} at the given position.
+	 */
+	BlockState getBlockState(Vector3i pos);
+	
+	BlockPropertiesMapper getBlockPropertiesMapper();
+	
 }
@@ -28,12 +28,11 @@
 
 import com.flowpowered.math.vector.Vector3i;
 
-import de.bluecolored.bluemap.core.mca.MCAWorld;
 import de.bluecolored.bluemap.core.world.BlockState;
 
 public interface BlockStateExtension {
 
-	BlockState extend(MCAWorld world, Vector3i pos, BlockState state);
+	BlockState extend(BlockAccess world, Vector3i pos, BlockState state);
 	
 	Set<String> getAffectedBlockIds();
 	
@@ -28,14 +28,13 @@
 
 import com.flowpowered.math.vector.Vector3i;
 
-import de.bluecolored.bluemap.core.mca.MCAWorld;
 import de.bluecolored.bluemap.core.util.Direction;
 import de.bluecolored.bluemap.core.world.BlockState;
 
 public abstract class ConnectExtension implements BlockStateExtension {
 	
 	@Override
-	public BlockState extend(MCAWorld world, Vector3i pos, BlockState state) {
+	public BlockState extend(BlockAccess world, Vector3i pos, BlockState state) {
 		return state
 				.with("north", String.valueOf(connectsTo(world, pos.add(Direction.NORTH.toVector()))))
 				.with("east", String.valueOf(connectsTo(world, pos.add(Direction.EAST.toVector()))))
@@ -43,11 +42,11 @@ public BlockState extend(MCAWorld world, Vector3i pos, BlockState state) {
 				.with("west", String.valueOf(connectsTo(world, pos.add(Direction.WEST.toVector()))));
 	}
 
-	public boolean connectsTo(MCAWorld world, Vector3i pos) {
+	public boolean connectsTo(BlockAccess world, Vector3i pos) {
 		return connectsTo(world, pos, world.getBlockState(pos));
 	}
 	
-	public boolean connectsTo(MCAWorld world, Vector3i pos, BlockState block) {
+	public boolean connectsTo(BlockAccess world, Vector3i pos, BlockState block) {
 		return getAffectedBlockIds().contains(block.getFullId());
 	}
 	
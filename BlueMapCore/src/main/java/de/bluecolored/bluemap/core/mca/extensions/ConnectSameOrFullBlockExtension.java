@@ -26,13 +26,12 @@
 
 import com.flowpowered.math.vector.Vector3i;
 
-import de.bluecolored.bluemap.core.mca.MCAWorld;
 import de.bluecolored.bluemap.core.world.BlockState;
 
 public abstract class ConnectSameOrFullBlockExtension extends ConnectExtension {
 	
 	@Override
-	public boolean connectsTo(MCAWorld world, Vector3i pos, BlockState block) {
+	public boolean connectsTo(BlockAccess world, Vector3i pos, BlockState block) {
 		if (super.connectsTo(world, pos, block)) return true;
 		
 		return world.getBlockPropertiesMapper().get(block).isCulling();
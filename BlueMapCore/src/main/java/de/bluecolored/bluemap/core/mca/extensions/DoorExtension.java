@@ -26,7 +26,6 @@
 
 import com.flowpowered.math.vector.Vector3i;
 import de.bluecolored.bluemap.core.MinecraftVersion;
-import de.bluecolored.bluemap.core.mca.MCAWorld;
 import de.bluecolored.bluemap.core.util.Direction;
 import de.bluecolored.bluemap.core.world.BlockState;
 
@@ -64,7 +63,7 @@ public DoorExtension(MinecraftVersion version) {
 	}
 	
 	@Override
-	public BlockState extend(MCAWorld world, Vector3i pos, BlockState state) {
+	public BlockState extend(BlockAccess world, Vector3i pos, BlockState state) {
 		BlockState otherDoor;
 		
 		boolean isLower = Objects.equals(state.getProperties().get("half"), "lower"); 
@@ -25,7 +25,6 @@
 package de.bluecolored.bluemap.core.mca.extensions;
 
 import com.flowpowered.math.vector.Vector3i;
-import de.bluecolored.bluemap.core.mca.MCAWorld;
 import de.bluecolored.bluemap.core.util.Direction;
 import de.bluecolored.bluemap.core.world.BlockState;
 
@@ -41,7 +40,7 @@ public class DoubleChestExtension implements BlockStateExtension {
 		));
 	
 	@Override
-	public BlockState extend(MCAWorld world, Vector3i pos, BlockState state) {
+	public BlockState extend(BlockAccess world, Vector3i pos, BlockState state) {
 		Direction dir = Direction.fromString(state.getProperties().getOrDefault("facing", "north"));
 		
 		BlockState left = world.getBlockState(pos.add(dir.left().toVector()));
@@ -26,7 +26,6 @@
 
 import com.flowpowered.math.vector.Vector3i;
 import de.bluecolored.bluemap.core.MinecraftVersion;
-import de.bluecolored.bluemap.core.mca.MCAWorld;
 import de.bluecolored.bluemap.core.util.Direction;
 import de.bluecolored.bluemap.core.world.BlockState;
 
@@ -53,7 +52,7 @@ public DoublePlantExtension(MinecraftVersion version) {
 	}
 	
 	@Override
-	public BlockState extend(MCAWorld world, Vector3i pos, BlockState state) {
+	public BlockState extend(BlockAccess world, Vector3i pos, BlockState state) {
 		if (Objects.equals(state.getProperties().get("half"), "upper")) {
 			BlockState otherPlant = world.getBlockState(pos.add(Direction.DOWN.toVector()));
 			
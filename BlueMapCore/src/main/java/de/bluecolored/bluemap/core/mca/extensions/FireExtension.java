@@ -25,7 +25,6 @@
 package de.bluecolored.bluemap.core.mca.extensions;
 
 import com.flowpowered.math.vector.Vector3i;
-import de.bluecolored.bluemap.core.mca.MCAWorld;
 import de.bluecolored.bluemap.core.util.Direction;
 import de.bluecolored.bluemap.core.world.BlockState;
 
@@ -40,7 +39,7 @@ public class FireExtension implements BlockStateExtension {
 	));
 	
 	@Override
-	public BlockState extend(MCAWorld world, Vector3i pos, BlockState state) {
+	public BlockState extend(BlockAccess world, Vector3i pos, BlockState state) {
 		BlockState below = world.getBlockState(pos.add(0, -1, 0));
 		
 		boolean isOnGround = world.getBlockPropertiesMapper().get(below).isCulling();
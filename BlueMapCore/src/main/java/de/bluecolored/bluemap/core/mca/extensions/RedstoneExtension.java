@@ -25,7 +25,6 @@
 package de.bluecolored.bluemap.core.mca.extensions;
 
 import com.flowpowered.math.vector.Vector3i;
-import de.bluecolored.bluemap.core.mca.MCAWorld;
 import de.bluecolored.bluemap.core.util.Direction;
 import de.bluecolored.bluemap.core.world.BlockState;
 
@@ -56,9 +55,9 @@ public class RedstoneExtension implements BlockStateExtension {
 		));
 	
 	@Override
-	public BlockState extend(MCAWorld world, Vector3i pos, BlockState state) {
+	public BlockState extend(BlockAccess world, Vector3i pos, BlockState state) {
 		BlockState up = world.getBlockState(pos.add(0, 1, 0));
-		boolean upBlocking = !up.equals(BlockState.AIR);
+		boolean upBlocking = up != BlockState.AIR;
 		
 		state = state
 				.with("north", connection(world, pos, upBlocking, Direction.NORTH))
@@ -69,13 +68,13 @@ public BlockState extend(MCAWorld world, Vector3i pos, BlockState state) {
 		return state;
 	}
 
-	private String connection(MCAWorld world, Vector3i pos, boolean upBlocking, Direction direction) {
+	private String connection(BlockAccess world, Vector3i pos, boolean upBlocking, Direction direction) {
 		Vector3i directionVector = direction.toVector();
 		
 		BlockState next = world.getBlockState(pos.add(directionVector));
 		if (CONNECTIBLE.contains(next.getFullId())) return "side";
 		
-		if (next.equals(BlockState.AIR)) {
+		if (next == BlockState.AIR) {
 			BlockState nextdown = world.getBlockState(pos.add(directionVector.getX(), directionVector.getY() - 1, directionVector.getZ()));
 			if (nextdown.getFullId().equals("minecraft:redstone_wire")) return "side";
 		}
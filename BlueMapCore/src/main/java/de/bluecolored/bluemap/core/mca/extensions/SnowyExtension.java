@@ -26,7 +26,6 @@
 
 import com.flowpowered.math.vector.Vector3i;
 import de.bluecolored.bluemap.core.MinecraftVersion;
-import de.bluecolored.bluemap.core.mca.MCAWorld;
 import de.bluecolored.bluemap.core.world.BlockState;
 
 import java.util.Arrays;
@@ -59,7 +58,7 @@ public SnowyExtension(MinecraftVersion version) {
 	}
 	
 	@Override
-	public BlockState extend(MCAWorld world, Vector3i pos, BlockState state) {
+	public BlockState extend(BlockAccess world, Vector3i pos, BlockState state) {
 		BlockState above = world.getBlockState(pos.add(0, 1, 0));
 
 		if (above.getFullId().equals(snowLayerId) || above.getFullId().equals(snowBlockId)) {
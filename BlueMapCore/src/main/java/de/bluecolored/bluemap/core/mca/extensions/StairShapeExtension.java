@@ -25,7 +25,6 @@
 package de.bluecolored.bluemap.core.mca.extensions;
 
 import com.flowpowered.math.vector.Vector3i;
-import de.bluecolored.bluemap.core.mca.MCAWorld;
 import de.bluecolored.bluemap.core.util.Direction;
 import de.bluecolored.bluemap.core.world.BlockState;
 
@@ -53,7 +52,7 @@ public class StairShapeExtension implements BlockStateExtension {
 		));
 	
 	@Override
-	public BlockState extend(MCAWorld world, Vector3i pos, BlockState state) {		
+	public BlockState extend(BlockAccess world, Vector3i pos, BlockState state) {		
 		try {
 			Direction facing = Direction.fromString(state.getProperties().get("facing"));
 			BlockState back = world.getBlockState(pos.add(facing.toVector()));
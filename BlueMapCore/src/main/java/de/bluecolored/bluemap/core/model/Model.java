@@ -25,6 +25,7 @@
 package de.bluecolored.bluemap.core.model;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import com.flowpowered.math.imaginary.Quaternionf;
@@ -36,6 +37,9 @@
 import de.bluecolored.bluemap.core.threejs.MaterialGroup;
 
 public class Model<T extends Face> {
+
+	// material indices that span more than this many values are grouped using their distinct values instead of their range
+	private static final int MAX_DIRECT_BUCKETS = 1 << 16;
 	
 	private List<T> faces;
 	
@@ -81,32 +85,62 @@ public void translate(Vector3f translation){
 		}
 	}
 	
+	/**
+	 * Creates a {@link BufferGeometry} of this model.<br>
+	 * The faces are grouped by ascending material-index, within a group they keep the order they have in this model.
+	 */
 	public BufferGeometry toBufferGeometry() {
+		int count = faces.size();
+		
+		//find the range of the material indices
+		int[] materials = new int[count];
+		int minMaterial = Integer.MAX_VALUE, maxMaterial = Integer.MIN_VALUE;
+		for (int itemIndex = 0; itemIndex < count; itemIndex++){
+			int materialIndex = faces.get(itemIndex).getMaterialIndex();
+			materials[itemIndex] = materialIndex;
+			minMaterial = Math.min(minMaterial, materialIndex);
+			maxMaterial = Math.max(maxMaterial, materialIndex);
+		}
 		
-		//sort faces by material index
-		faces.sort((f1, f2) -> (int) Math.signum(f1.getMaterialIndex() - f2.getMaterialIndex()));
+		//map each material index to a bucket, the buckets are in the order of their material indices
+		int[] bucketMaterials;
+		int[] buckets = new int[count];
+		if (count > 0 && (long) maxMaterial - minMaterial < MAX_DIRECT_BUCKETS){
+			bucketMaterials = new int[maxMaterial - minMaterial + 1];
+			for (int i = 0; i < bucketMaterials.length; i++) bucketMaterials[i] = minMaterial + i;
+			for (int itemIndex = 0; itemIndex < count; itemIndex++) buckets[itemIndex] = materials[itemIndex] - minMaterial;
+		} else {
+			bucketMaterials = distinctSorted(materials);
+			for (int itemIndex = 0; itemIndex < count; itemIndex++) buckets[itemIndex] = Arrays.binarySearch(bucketMaterials, materials[itemIndex]);
+		}
 		
-		//reorganize all faces into arrays and create material-groups
-		int count = faces.size();
+		//count the faces of each bucket and create the material-groups
+		int[] bucketStarts = new int[bucketMaterials.length];
+		for (int itemIndex = 0; itemIndex < count; itemIndex++) bucketStarts[buckets[itemIndex]]++;
 		
 		List<MaterialGroup> groups = new ArrayList<>();
 		int groupStart = 0;
-		int currentMaterialIndex = -1;
-		if (count > 0) currentMaterialIndex = faces.get(0).getMaterialIndex();
+		for (int bucket = 0; bucket < bucketStarts.length; bucket++){
+			int bucketSize = bucketStarts[bucket];
+			bucketStarts[bucket] = groupStart;
+			if (bucketSize == 0) continue;
+			
+			groups.add(new MaterialGroup(bucketMaterials[bucket], groupStart * 3, bucketSize * 3));
+			groupStart += bucketSize;
+		}
+		
+		//an empty model still has one (empty) group
+		if (groups.isEmpty()) groups.add(new MaterialGroup(-1, 0, 0));
 		
+		//write each face directly into the slice of its material
 		float[] position = new float[count * 3 * 3];
 		float[] normal = new float[count * 3 * 3];
 		float[] color = new float[count * 3 * 3];
 		float[] uv = new float[count * 2 * 3];
 
-		for (int itemIndex = 0; itemIndex < count; itemIndex++){
-			T f = faces.get(itemIndex);
-			
-			if (currentMaterialIndex != f.getMaterialIndex()){
-				groups.add(new MaterialGroup(currentMaterialIndex, groupStart * 3, (itemIndex - groupStart) * 3));
-				groupStart = itemIndex;
-				currentMaterialIndex = f.getMaterialIndex();
-			}
+		for (int faceIndex = 0; faceIndex < count; faceIndex++){
+			T f = faces.get(faceIndex);
+			int itemIndex = bucketStarts[buckets[faceIndex]]++;
 			
 			addVector3fToArray( position, f.getP1(),  (itemIndex * 3 + 0) * 3 );
 			addVector3fToArray( normal,   f.getN1(),  (itemIndex * 3 + 0) * 3 );
@@ -123,8 +157,6 @@ public BufferGeometry toBufferGeometry() {
 			addVector3fToArray( color,    f.getC3(),  (itemIndex * 3 + 2) * 3 );
 			addVector2fToArray( uv,       f.getUv3(), (itemIndex * 3 + 2) * 2 );
 		}
-
-		groups.add(new MaterialGroup(currentMaterialIndex, groupStart * 3, (count - groupStart) * 3));
 		
 		return new BufferGeometry(
 				position, 
@@ -135,6 +167,18 @@ public BufferGeometry toBufferGeometry() {
 			);
 	}
 	
+	private static int[] distinctSorted(int[] values) {
+		int[] sorted = Arrays.copyOf(values, values.length);
+		Arrays.sort(sorted);
+		
+		int distinct = 0;
+		for (int i = 0; i < sorted.length; i++){
+			if (i == 0 || sorted[i] != sorted[distinct - 1]) sorted[distinct++] = sorted[i];
+		}
+		
+		return Arrays.copyOf(sorted, distinct);
+	}
+	
 	static void addVector3fToArray(float[] array, Vector3f v, int startIndex){
 		array[startIndex] = v.getX();
 		array[startIndex + 1] = v.getY();
@@ -0,0 +1,504 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.resourcepack;
+
+import com.flowpowered.math.TrigMath;
+import com.flowpowered.math.imaginary.Complexf;
+import com.flowpowered.math.imaginary.Quaternionf;
+import com.flowpowered.math.matrix.Matrix3f;
+import com.flowpowered.math.vector.Vector2f;
+import com.flowpowered.math.vector.Vector3f;
+import com.flowpowered.math.vector.Vector3i;
+import com.flowpowered.math.vector.Vector4f;
+
+import de.bluecolored.bluemap.core.model.Face;
+import de.bluecolored.bluemap.core.model.Model;
+import de.bluecolored.bluemap.core.resourcepack.BlockModelResource.Element.Rotation;
+import de.bluecolored.bluemap.core.util.Direction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The position-independent geometry of a {@link TransformedBlockModelResource}, with all element- and model-rotations, scaling and uv-rotations already applied.<br>
+ * For each combination of culled neighbors (the cull-mask) the remaining faces are prepared, so a block only needs to copy them and fill in its light, ao and tint.<br>
+ * The models of all blockstates are baked once when the {@link ResourcePack} is loaded.<br>
+ * <br>
+ * <i>Instances of this class are immutable and can be shared between threads.</i>
+ */
+public class BakedBlockModel {
+
+	private static final Vector3f HALF_3F = Vector3f.ONE.mul(0.5);
+	private static final Vector3f NEG_HALF_3F = HALF_3F.negate();
+	private static final Vector2f HALF_2F = Vector2f.ONE.mul(0.5);
+
+	private final Vector3i[] cullDirections;
+	private final BakedFace[][] facesByCullMask;
+
+	private BakedBlockModel(Vector3i[] cullDirections, BakedFace[][] facesByCullMask) {
+		this.cullDirections = cullDirections;
+		this.facesByCullMask = facesByCullMask;
+	}
+
+	/**
+	 * The (already rotated) directions of the neighbors that can cull faces of this model.<br>
+	 * Bit <code>i</code> of a cull-mask is set if the neighbor in direction <code>i</code> is culling.
+	 */
+	public Vector3i[] getCullDirections() {
+		return cullDirections;
+	}
+
+	/**
+	 * Returns the faces that are not culled with the given cull-mask
+	 * @see #getCullDirections()
+	 */
+	public BakedFace[] getFaces(int cullMask) {
+		return facesByCullMask[cullMask];
+	}
+
+	public static BakedBlockModel bake(TransformedBlockModelResource bmr) {
+		Model<Face> model = new Model<>();
+		List<BakedFaceBuilder> faces = new ArrayList<>();
+		List<Vector3i> cullDirections = new ArrayList<>(6);
+
+		for (BlockModelResource.Element element : bmr.getModel().getElements()){
+			model.merge(bakeElement(element, bmr, faces, cullDirections));
+		}
+
+		if (!bmr.getRotation().equals(Vector2f.ZERO)) {
+			model.translate(NEG_HALF_3F);
+			model.rotate(Quaternionf.fromAxesAnglesDeg(
+					-bmr.getRotation().getX(),
+					-bmr.getRotation().getY(),
+					0
+				));
+			model.translate(HALF_3F);
+		}
+
+		// there are at most 6 cull-directions, since they are rotated from the 6 cullface-directions
+		BakedFace[][] facesByCullMask = new BakedFace[1 << cullDirections.size()][];
+		for (int cullMask = 0; cullMask < facesByCullMask.length; cullMask++) {
+			List<BakedFace> remaining = new ArrayList<>(faces.size());
+			for (BakedFaceBuilder face : faces) {
+				if (face.cullIndex >= 0 && (cullMask & (1 << face.cullIndex)) != 0) continue;
+				remaining.add(face.build());
+			}
+			facesByCullMask[cullMask] = remaining.toArray(new BakedFace[0]);
+		}
+
+		return new BakedBlockModel(cullDirections.toArray(new Vector3i[0]), facesByCullMask);
+	}
+
+	private static Model<Face> bakeElement(BlockModelResource.Element bmer, TransformedBlockModelResource bmr, List<BakedFaceBuilder> faces, List<Vector3i> cullDirections) {
+		Model<Face> model = new Model<>();
+
+		//create faces
+		Vector3f min = bmer.getFrom().min(bmer.getTo());
+		Vector3f max = bmer.getFrom().max(bmer.getTo());
+
+		Vector3f[] c = new Vector3f[]{
+			new Vector3f( min .getX(), min .getY(), min .getZ()),
+			new Vector3f( min .getX(), min .getY(), max .getZ()),
+			new Vector3f( max .getX(), min .getY(), min .getZ()),
+			new Vector3f( max .getX(), min .getY(), max .getZ()),
+			new Vector3f( min .getX(), max .getY(), min .getZ()),
+			new Vector3f( min .getX(), max .getY(), max .getZ()),
+			new Vector3f( max .getX(), max .getY(), min .getZ()),
+			new Vector3f( max .getX(), max .getY(), max .getZ()),
+		};
+
+		bakeElementFace(model, faces, cullDirections, bmr, bmer, Direction.DOWN, c[0], c[2], c[3], c[1]);
+		bakeElementFace(model, faces, cullDirections, bmr, bmer, Direction.UP, c[5], c[7], c[6], c[4]);
+		bakeElementFace(model, faces, cullDirections, bmr, bmer, Direction.NORTH, c[2], c[0], c[4], c[6]);
+		bakeElementFace(model, faces, cullDirections, bmr, bmer, Direction.SOUTH, c[1], c[3], c[7], c[5]);
+		bakeElementFace(model, faces, cullDirections, bmr, bmer, Direction.WEST, c[0], c[1], c[5], c[4]);
+		bakeElementFace(model, faces, cullDirections, bmr, bmer, Direction.EAST, c[3], c[2], c[6], c[7]);
+
+		//rotate
+		Rotation rotation = bmer.getRotation();
+		if (rotation.getAngle() != 0f){
+			Vector3f translation = rotation.getOrigin();
+			model.translate(translation.negate());
+
+			Vector3f rotAxis = rotation.getAxis().toVector().toFloat();
+
+			model.rotate(Quaternionf.fromAngleDegAxis(
+					rotation.getAngle(),
+					rotAxis
+				));
+
+			if (rotation.isRescale()){
+				Vector3f scale =
+						Vector3f.ONE
+						.sub(rotAxis)
+						.mul(Math.abs(TrigMath.sin(rotation.getAngle() * TrigMath.DEG_TO_RAD)))
+						.mul(1 - (TrigMath.SQRT_OF_TWO - 1))
+						.add(Vector3f.ONE);
+				model.transform(Matrix3f.createScaling(scale));
+			}
+
+			model.translate(translation);
+
+		}
+
+		//scale down
+		model.transform(Matrix3f.createScaling(1f / 16f));
+
+		return model;
+	}
+
+	private static void bakeElementFace(Model<Face> model, List<BakedFaceBuilder> faces, List<Vector3i> cullDirections, TransformedBlockModelResource modelResource, BlockModelResource.Element element, Direction faceDir, Vector3f c0, Vector3f c1, Vector3f c2, Vector3f c3) {
+		BlockModelResource.Element.Face face = element.getFaces().get(faceDir);
+
+		if (face == null) return;
+
+		//face culling
+		int cullIndex = -1;
+		if (face.getCullface() != null){
+			Vector3i cullDirection = getRotationRelativeDirection(modelResource.getRotation(), face.getCullface().toVector());
+			cullIndex = cullDirections.indexOf(cullDirection);
+			if (cullIndex == -1) {
+				cullIndex = cullDirections.size();
+				cullDirections.add(cullDirection);
+			}
+		}
+
+		//the light is taken from the faced neighbor
+		Vector3i lightDirection = getRotationRelativeDirection(modelResource.getRotation(), faceDir.toVector());
+
+		//UV
+		Vector4f uv = face.getUv().toFloat().div(16);
+
+		//UV-Lock counter-rotation
+		int uvLockAngle = 0;
+		Vector2f rotation = modelResource.getRotation();
+		if (modelResource.isUVLock()){
+			Quaternionf rot = Quaternionf.fromAxesAnglesDeg(rotation.getX(), rotation.getY(), 0);
+			uvLockAngle = (int) rot.getAxesAnglesDeg().dot(faceDir.toVector().toFloat());
+
+			//my math has stopped working, there has to be a more consistent solution for this...
+			if (rotation.getX() >= 180 && rotation.getY() != 90 && rotation.getY() != 270) uvLockAngle += 180;
+		}
+
+		//create both triangles
+		Vector2f[] uvs = new Vector2f[4];
+		uvs[0] = new Vector2f(uv.getX(), uv.getW());
+		uvs[1] = new Vector2f(uv.getZ(), uv.getW());
+		uvs[2] = new Vector2f(uv.getZ(), uv.getY());
+		uvs[3] = new Vector2f(uv.getX(), uv.getY());
+
+		//face texture rotation
+		uvs = rotateUVOuter(uvs, uvLockAngle);
+		uvs = rotateUVInner(uvs, face.getRotation());
+
+		Texture texture = face.getTexture();
+		int textureId = texture.getId();
+
+		Face f1;
+		Face f2;
+
+		try {
+			f1 = new Face(c0, c1, c2, uvs[0], uvs[1], uvs[2], textureId);
+			f2 = new Face(c0, c2, c3, uvs[0], uvs[2], uvs[3], textureId);
+		} catch (ArithmeticException ex) {
+			// This error is thrown when a model defined a face that has no surface (all 3 points are on one line)
+			// we catch it here and simply ignore the face
+			return;
+		}
+
+		//the neighbors that can occlude each corner
+		Vector3i[][] aoDirections = null;
+		if (modelResource.getModel().isAmbientOcclusion()){
+			aoDirections = new Vector3i[][]{
+				getAoDirections(modelResource.getRotation(), c0, faceDir),
+				getAoDirections(modelResource.getRotation(), c1, faceDir),
+				getAoDirections(modelResource.getRotation(), c2, faceDir),
+				getAoDirections(modelResource.getRotation(), c3, faceDir)
+			};
+		}
+
+		//add the face
+		model.addFace(f1);
+		model.addFace(f2);
+
+		//if is top face it contributes to the model-color
+		Vector3f dir = getRotationRelativeDirectionVector(modelResource.getRotation(), faceDir.toVector().toFloat());
+
+		if (element.getRotation().getAngle() > 0){
+			Quaternionf rot = Quaternionf.fromAngleDegAxis(
+					element.getRotation().getAngle(),
+					element.getRotation().getAxis().toVector().toFloat()
+				);
+			dir = rot.rotate(dir);
+		}
+
+		faces.add(new BakedFaceBuilder(f1, f2, cullIndex, lightDirection, aoDirections, face.isTinted(), texture, dir.getY()));
+	}
+
+	private static Vector3i getRotationRelativeDirection(Vector2f modelRotation, Vector3i direction){
+		if (modelRotation.equals(Vector2f.ZERO)) return direction;
+		return getRotationRelativeDirectionVector(modelRotation, direction.toFloat()).round().toInt();
+	}
+
+	private static Vector3f getRotationRelativeDirectionVector(Vector2f modelRotation, Vector3f direction){
+		Quaternionf rot = Quaternionf.fromAxesAnglesDeg(
+				-modelRotation.getX(),
+				-modelRotation.getY(),
+				0
+			);
+		Vector3f dir = rot.rotate(direction);
+		return dir;
+	}
+
+	private static Vector3i[] getAoDirections(Vector2f modelRotation, Vector3f vertex, Direction dir){
+		List<Vector3i> directions = new ArrayList<>(4);
+
+		int x = 0;
+		if (vertex.getX() == 16){
+			x = 1;
+		} else if (vertex.getX() == 0){
+			x = -1;
+		}
+
+		int y = 0;
+		if (vertex.getY() == 16){
+			y = 1;
+		} else if (vertex.getY() == 0){
+			y = -1;
+		}
+
+		int z = 0;
+		if (vertex.getZ() == 16){
+			z = 1;
+		} else if (vertex.getZ() == 0){
+			z = -1;
+		}
+
+		Vector3i[] rels = new Vector3i[]{
+			new Vector3i(x, y, 0),
+			new Vector3i(x, 0, z),
+			new Vector3i(0, y, z),
+			new Vector3i(x, y, z)
+		};
+
+		for (Vector3i rel : rels) {
+			if (rel.dot(dir.toVector()) > 0){
+				directions.add(getRotationRelativeDirection(modelRotation, rel));
+			}
+		}
+
+		return directions.toArray(new Vector3i[0]);
+	}
+
+	private static Vector2f[] rotateUVInner(Vector2f[] uv, int angle){
+		if (uv.length == 0) return uv;
+
+		int steps = getRotationSteps(angle);
+
+		for (int i = 0; i < steps; i++){
+			Vector2f first = uv[uv.length - 1];
+			System.arraycopy(uv, 0, uv, 1, uv.length - 1);
+			uv[0] = first;
+		}
+
+		return uv;
+	}
+
+	private static Vector2f[] rotateUVOuter(Vector2f[] uv, float angle){
+		angle %= 360;
+		if (angle < 0) angle += 360;
+
+		if (angle == 0) return uv;
+
+		Complexf c = Complexf.fromAngleDeg(angle);
+
+		for (int i = 0; i < uv.length; i++){
+			uv[i] = uv[i].sub(HALF_2F);
+			uv[i] = c.rotate(uv[i]);
+			uv[i] = uv[i].add(HALF_2F);
+		}
+
+		return uv;
+	}
+
+	private static int getRotationSteps(int angle){
+		angle = -Math.floorDiv(angle, 90);
+		angle %= 4;
+		if (angle < 0) angle += 4;
+
+		return angle;
+	}
+
+	/**
+	 * A quad of a model, the two triangles are made of the corners 0, 1, 2 and 0, 2, 3.
+	 * It contains everything that is needed to light and tint a copy of it for a block.
+	 */
+	public static class BakedFace {
+
+		private final float[] positions;
+		private final float[] uvs;
+		private final float[] normals;
+		private final int materialIndex;
+		private final Vector3i lightDirection;
+		private final Vector3i[][] aoDirections;
+		private final boolean tinted;
+		private final Texture texture;
+		private final float upwardness;
+
+		private BakedFace(float[] positions, float[] uvs, float[] normals, int materialIndex, Vector3i lightDirection, Vector3i[][] aoDirections, boolean tinted, Texture texture, float upwardness) {
+			this.positions = positions;
+			this.uvs = uvs;
+			this.normals = normals;
+			this.materialIndex = materialIndex;
+			this.lightDirection = lightDirection;
+			this.aoDirections = aoDirections;
+			this.tinted = tinted;
+			this.texture = texture;
+			this.upwardness = upwardness;
+		}
+
+		/**
+		 * The x, y and z coordinates of the 4 corners, the arrays must not be modified
+		 */
+		public float[] getPositions() {
+			return positions;
+		}
+
+		/**
+		 * The u and v coordinates of the 4 corners
+		 */
+		public float[] getUvs() {
+			return uvs;
+		}
+
+		/**
+		 * The (normalized) x, y and z components of the normals of the two triangles
+		 */
+		public float[] getNormals() {
+			return normals;
+		}
+
+		public int getMaterialIndex() {
+			return materialIndex;
+		}
+
+		/**
+		 * The (rotated) direction of the neighbor whose passed light lights this face
+		 */
+		public Vector3i getLightDirection() {
+			return lightDirection;
+		}
+
+		/**
+		 * Whether the corners of this face are darkened by occluding neighbors
+		 */
+		public boolean isAmbientOcclusion() {
+			return aoDirections != null;
+		}
+
+		/**
+		 * The (rotated) directions of the neighbors that can occlude each of the 4 corners of this face,
+		 * or <code>null</code> if the model has no ambient occlusion
+		 */
+		public Vector3i[][] getAoDirections() {
+			return aoDirections;
+		}
+
+		public boolean isTinted() {
+			return tinted;
+		}
+
+		public Texture getTexture() {
+			return texture;
+		}
+
+		/**
+		 * The y-component of the (rotated) face-direction, only faces with a positive value contribute to the map-color
+		 */
+		public float getUpwardness() {
+			return upwardness;
+		}
+
+	}
+
+	/**
+	 * Holds the triangles of a face while the model is transformed
+	 */
+	private static class BakedFaceBuilder {
+
+		private final Face f1, f2;
+		private final int cullIndex;
+		private final Vector3i lightDirection;
+		private final Vector3i[][] aoDirections;
+		private final boolean tinted;
+		private final Texture texture;
+		private final float upwardness;
+
+		private BakedFace baked;
+
+		private BakedFaceBuilder(Face f1, Face f2, int cullIndex, Vector3i lightDirection, Vector3i[][] aoDirections, boolean tinted, Texture texture, float upwardness) {
+			this.f1 = f1;
+			this.f2 = f2;
+			this.cullIndex = cullIndex;
+			this.lightDirection = lightDirection;
+			this.aoDirections = aoDirections;
+			this.tinted = tinted;
+			this.texture = texture;
+			this.upwardness = upwardness;
+		}
+
+		private BakedFace build() {
+			if (baked != null) return baked;
+
+			float[] positions = new float[4 * 3];
+			put(positions, 0, f1.getP1());
+			put(positions, 3, f1.getP2());
+			put(positions, 6, f1.getP3());
+			put(positions, 9, f2.getP3());
+
+			float[] uvs = new float[]{
+				f1.getUv1().getX(), f1.getUv1().getY(),
+				f1.getUv2().getX(), f1.getUv2().getY(),
+				f1.getUv3().getX(), f1.getUv3().getY(),
+				f2.getUv3().getX(), f2.getUv3().getY()
+			};
+
+			float[] normals = new float[2 * 3];
+			put(normals, 0, f1.getN1());
+			put(normals, 3, f2.getN1());
+
+			baked = new BakedFace(positions, uvs, normals, f1.getMaterialIndex(), lightDirection, aoDirections, tinted, texture, upwardness);
+			return baked;
+		}
+
+		private static void put(float[] array, int index, Vector3f v) {
+			array[index] = v.getX();
+			array[index + 1] = v.getY();
+			array[index + 2] = v.getZ();
+		}
+
+	}
+
+}
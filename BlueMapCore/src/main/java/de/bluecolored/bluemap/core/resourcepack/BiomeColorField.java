@@ -0,0 +1,230 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.resourcepack;
+
+import com.flowpowered.math.vector.Vector3f;
+import de.bluecolored.bluemap.core.resourcepack.BlockColorCalculator.BiomeColorFunction;
+import de.bluecolored.bluemap.core.world.Biome;
+import de.bluecolored.bluemap.core.world.Block;
+import de.bluecolored.bluemap.core.world.World;
+
+import java.util.Arrays;
+
+/**
+ * The blended biome-colors (grass, foliage and water) of all blocks of a tile.<br>
+ * Instead of averaging the biomes around every tinted block, the colors of a whole layer of the tile are blended at once
+ * with a separable box-blur over the biomes of the tile, the first time a block of that layer asks for its color.
+ * The results are the same as {@link BlockColorCalculator#getGrassAverageColor(Block)} and the other average-colors.<br>
+ * Blocks outside of the loaded box fall back to the {@link BlockColorCalculator}.<br>
+ * <br>
+ * <i>A color-field is not thread-safe, every thread needs to use its own field!</i>
+ */
+public class BiomeColorField {
+
+	private static final int GRASS = 0, FOLIAGE = 1, WATER = 2;
+	private static final int RADIUS = BlockColorCalculator.BIOME_BLEND_RADIUS;
+
+	private final BlockColorCalculator calculator;
+	private final BiomeColorFunction[] colorFunctions;
+
+	private World world;
+	private int minX, minY, minZ, maxX, maxY, maxZ;
+	private int sizeX, sizeY, sizeZ;
+
+	/** the blended colors (r, g, b) of each layer and color-type, indexed by <code>type * sizeY + (y - minY)</code> */
+	private float[][] layers;
+	private boolean[] computed;
+
+	// buffers for blending a layer
+	private float[] columns, blurredX;
+
+	BiomeColorField(BlockColorCalculator calculator) {
+		this.calculator = calculator;
+		this.colorFunctions = new BiomeColorFunction[3];
+		this.colorFunctions[GRASS] = calculator::getGrassColor;
+		this.colorFunctions[FOLIAGE] = calculator::getFoliageColor;
+		this.colorFunctions[WATER] = (biome, blocksAboveSeaLevel) -> biome.getWaterColor();
+
+		this.layers = new float[0][];
+		this.computed = new boolean[0];
+		this.columns = new float[0];
+		this.blurredX = new float[0];
+
+		this.minX = this.minY = this.minZ = 0;
+		this.maxX = this.maxY = this.maxZ = -1;
+	}
+
+	/**
+	 * Moves this field to the given box (min and max inclusive) of the given world.<br>
+	 * No colors are computed yet, the layers are blended lazily when they are first needed.
+	 * The world should be able to provide the biomes {@link BlockColorCalculator#BIOME_BLEND_RADIUS} blocks around the box quickly,
+	 * e.g. a {@link de.bluecolored.bluemap.core.world.BlockWindow} with a biome-margin.
+	 */
+	public void load(World world, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+		this.world = world;
+		this.minX = minX;
+		this.minY = minY;
+		this.minZ = minZ;
+		this.maxX = maxX;
+		this.maxY = maxY;
+		this.maxZ = maxZ;
+
+		this.sizeX = maxX - minX + 1;
+		this.sizeY = maxY - minY + 1;
+		this.sizeZ = maxZ - minZ + 1;
+
+		int layerCount = 3 * sizeY;
+		if (layers.length < layerCount) {
+			this.layers = Arrays.copyOf(layers, layerCount);
+			this.computed = new boolean[layerCount];
+		} else {
+			Arrays.fill(computed, false);
+		}
+
+		int layerSize = sizeX * sizeZ * 3;
+		for (int i = 0; i < layers.length; i++) {
+			if (layers[i] != null && layers[i].length < layerSize) layers[i] = null;
+		}
+	}
+
+	public Vector3f getGrassColor(Block block) {
+		if (!isInside(block)) return calculator.getGrassAverageColor(block);
+		return getColor(GRASS, block.getX(), block.getY(), block.getZ());
+	}
+
+	public Vector3f getFoliageColor(Block block) {
+		if (!isInside(block)) return calculator.getFoliageAverageColor(block);
+		return getColor(FOLIAGE, block.getX(), block.getY(), block.getZ());
+	}
+
+	public Vector3f getWaterColor(Block block) {
+		if (!isInside(block)) return calculator.getWaterAverageColor(block);
+		return getColor(WATER, block.getX(), block.getY(), block.getZ());
+	}
+
+	private boolean isInside(Block block) {
+		int x = block.getX(), y = block.getY(), z = block.getZ();
+		return
+				block.getWorld() == world &&
+				x >= minX && x <= maxX &&
+				z >= minZ && z <= maxZ &&
+				y >= minY && y <= maxY;
+	}
+
+	private Vector3f getColor(int type, int x, int y, int z) {
+		int layerIndex = type * sizeY + (y - minY);
+		float[] layer = layers[layerIndex];
+		if (!computed[layerIndex]) {
+			if (layer == null) {
+				layer = new float[sizeX * sizeZ * 3];
+				layers[layerIndex] = layer;
+			}
+
+			blendLayer(colorFunctions[type], y, layer);
+			computed[layerIndex] = true;
+		}
+
+		int i = ((z - minZ) * sizeX + (x - minX)) * 3;
+		return new Vector3f(layer[i], layer[i + 1], layer[i + 2]);
+	}
+
+	/**
+	 * Blends the colors of all blocks with the given y into the layer: the colors are summed up vertically per column first,
+	 * then blurred along x and then along z.
+	 */
+	private void blendLayer(BiomeColorFunction colorFunction, int y, float[] layer) {
+		int blocksAboveSeaLevel = Math.max(y - world.getSeaLevel(), 0);
+		int sy = Math.max(0, y - 1), my = Math.min(255, y + 1);
+
+		int columnsX = sizeX + 2 * RADIUS, columnsZ = sizeZ + 2 * RADIUS;
+		if (columns.length < columnsX * columnsZ * 3) columns = new float[columnsX * columnsZ * 3];
+		if (blurredX.length < sizeX * columnsZ * 3) blurredX = new float[sizeX * columnsZ * 3];
+
+		// vertical sums of each column
+		Biome lastBiome = null;
+		Vector3f lastColor = Vector3f.ZERO;
+		for (int cz = 0; cz < columnsZ; cz++) {
+			for (int cx = 0; cx < columnsX; cx++) {
+				float r = 0, g = 0, b = 0;
+				for (int by = sy; by <= my; by++) {
+					Biome biome = world.getBiome(minX - RADIUS + cx, by, minZ - RADIUS + cz);
+
+					// neighboring blocks are almost always in the same biome
+					if (biome != lastBiome) {
+						lastColor = colorFunction.getColor(biome, blocksAboveSeaLevel);
+						lastBiome = biome;
+					}
+
+					r += lastColor.getX();
+					g += lastColor.getY();
+					b += lastColor.getZ();
+				}
+
+				int i = (cz * columnsX + cx) * 3;
+				columns[i] = r;
+				columns[i + 1] = g;
+				columns[i + 2] = b;
+			}
+		}
+
+		// blur along x
+		for (int cz = 0; cz < columnsZ; cz++) {
+			for (int x = 0; x < sizeX; x++) {
+				float r = 0, g = 0, b = 0;
+				for (int cx = x; cx <= x + 2 * RADIUS; cx++) {
+					int i = (cz * columnsX + cx) * 3;
+					r += columns[i];
+					g += columns[i + 1];
+					b += columns[i + 2];
+				}
+
+				int i = (cz * sizeX + x) * 3;
+				blurredX[i] = r;
+				blurredX[i + 1] = g;
+				blurredX[i + 2] = b;
+			}
+		}
+
+		// blur along z and normalize
+		float count = (2 * RADIUS + 1) * (2 * RADIUS + 1) * (my - sy + 1);
+		for (int z = 0; z < sizeZ; z++) {
+			for (int x = 0; x < sizeX; x++) {
+				float r = 0, g = 0, b = 0;
+				for (int cz = z; cz <= z + 2 * RADIUS; cz++) {
+					int i = (cz * sizeX + x) * 3;
+					r += blurredX[i];
+					g += blurredX[i + 1];
+					b += blurredX[i + 2];
+				}
+
+				int i = (z * sizeX + x) * 3;
+				layer[i] = r / count;
+				layer[i + 1] = g / count;
+				layer[i + 2] = b / count;
+			}
+		}
+	}
+
+}
@@ -25,10 +25,7 @@
 package de.bluecolored.bluemap.core.resourcepack;
 
 import com.flowpowered.math.GenericMath;
-import com.flowpowered.math.vector.Vector2f;
-import com.flowpowered.math.vector.Vector2i;
 import com.flowpowered.math.vector.Vector3f;
-import com.flowpowered.math.vector.Vector3i;
 import de.bluecolored.bluemap.core.debug.DebugDump;
 import de.bluecolored.bluemap.core.util.ConfigUtils;
 import de.bluecolored.bluemap.core.util.MathUtils;
@@ -37,25 +34,31 @@
 import de.bluecolored.bluemap.core.world.World;
 import org.spongepowered.configurate.ConfigurationNode;
 
-import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.function.Function;
 
 @DebugDump
 public class BlockColorCalculator {
 
+	/**
+	 * The horizontal radius around a block in which the biome-colors are averaged, the vertical radius is 1
+	 */
+	public static final int BIOME_BLEND_RADIUS = 2;
+
 	private BufferedImage foliageMap;
 	private BufferedImage grassMap;
+
+	// the pixels of the color-maps, so looking up a color does not go through the BufferedImage
+	private transient ColorMap foliageColors;
+	private transient ColorMap grassColors;
 	
-	private final Map<String, Function<Block, Vector3f>> blockColorMap;
+	private final Map<String, BlockColorFunction> blockColorMap;
 	
 	public BlockColorCalculator(BufferedImage foliageMap, BufferedImage grassMap) {
-		this.foliageMap = foliageMap;
-		this.grassMap = grassMap;
+		setFoliageMap(foliageMap);
+		setGrassMap(grassMap);
 		
 		this.blockColorMap = new HashMap<>();
 	}
@@ -67,7 +70,7 @@ public void loadColorConfig(ConfigurationNode colorConfig) {
 			String key = entry.getKey().toString();
 			String value = entry.getValue().getString("");
 			
-			Function<Block, Vector3f> colorFunction;
+			BlockColorFunction colorFunction;
 			switch (value) {
 			case "@foliage":
 				colorFunction = this::getFoliageAverageColor;
@@ -80,7 +83,7 @@ public void loadColorConfig(ConfigurationNode colorConfig) {
 				break;
 			default:
 				final Vector3f color = MathUtils.color3FromInt(ConfigUtils.readColorInt(entry.getValue()));
-				colorFunction = context -> color;
+				colorFunction = (block, colorField) -> color;
 				break;
 			}
 			
@@ -89,120 +92,126 @@ public void loadColorConfig(ConfigurationNode colorConfig) {
 	}
 	
 	public Vector3f getBlockColor(Block block){
+		return getBlockColor(block, null);
+	}
+	
+	/**
+	 * Returns the color of the block, biome-colors are looked up in the given {@link BiomeColorField} (if it is not <code>null</code>)
+	 * instead of averaging the biomes around the block.
+	 */
+	public Vector3f getBlockColor(Block block, BiomeColorField colorField){
 		String blockId = block.getBlockState().getFullId();
 		
-		Function<Block, Vector3f> colorFunction = blockColorMap.get(blockId);
+		BlockColorFunction colorFunction = blockColorMap.get(blockId);
 		if (colorFunction == null) colorFunction = blockColorMap.get("default");
 		if (colorFunction == null) colorFunction = this::getFoliageAverageColor;
 		
-		return colorFunction.apply(block);
+		return colorFunction.getColor(block, colorField);
+	}
+	
+	/**
+	 * Creates a new (empty) {@link BiomeColorField} that uses the colors of this calculator
+	 */
+	public BiomeColorField createColorField() {
+		return new BiomeColorField(this);
 	}
 	
 	public Vector3f getWaterAverageColor(Block block){
-		Vector3f color = Vector3f.ZERO;
-
-		int count = 0;
-		for (Biome biome : iterateAverageBiomes(block)) {
-			color = color.add(biome.getWaterColor());
-			count++;
-		}
-		
-		return color.div(count);
+		return getAverageColor(block, (biome, blocksAboveSeaLevel) -> biome.getWaterColor());
+	}
+	
+	public Vector3f getWaterAverageColor(Block block, BiomeColorField colorField){
+		if (colorField != null) return colorField.getWaterColor(block);
+		return getWaterAverageColor(block);
 	}
 
 	public Vector3f getFoliageAverageColor(Block block){
-		Vector3f color = Vector3f.ZERO;
-		
-		int blocksAboveSeaLevel = Math.max(block.getPosition().getY() - block.getWorld().getSeaLevel(), 0);
+		return getAverageColor(block, this::getFoliageColor);
+	}
 
-		int count = 0;
-		for (Biome biome : iterateAverageBiomes(block)) {
-			color = color.add(getFoliageColor(biome, blocksAboveSeaLevel));
-			count++;
-		}
-		
-		return color.div(count);
+	public Vector3f getFoliageAverageColor(Block block, BiomeColorField colorField){
+		if (colorField != null) return colorField.getFoliageColor(block);
+		return getFoliageAverageColor(block);
 	}
 	
 	public Vector3f getFoliageColor(Biome biome, int blocksAboveSeaLevel){
-		Vector3f mapColor = getColorFromMap(biome, blocksAboveSeaLevel, foliageMap);
+		Vector3f mapColor = getColorFromMap(biome, blocksAboveSeaLevel, foliageColors);
 		Vector3f overlayColor = biome.getOverlayFoliageColor().toVector3();
 		float overlayAlpha = biome.getOverlayFoliageColor().getW();
 		return mapColor.mul(1f - overlayAlpha).add(overlayColor.mul(overlayAlpha));
 	}
 
 	public Vector3f getGrassAverageColor(Block block){
-		Vector3f color = Vector3f.ZERO;
-		
-		int blocksAboveSeaLevel = Math.max(block.getPosition().getY() - block.getWorld().getSeaLevel(), 0);
-		
-		int count = 0;
-		for (Biome biome : iterateAverageBiomes(block)) {
-			color = color.add(getGrassColor(biome, blocksAboveSeaLevel));
-			count++;
-		}
-		
-		return color.div(count);
+		return getAverageColor(block, this::getGrassColor);
+	}
+
+	public Vector3f getGrassAverageColor(Block block, BiomeColorField colorField){
+		if (colorField != null) return colorField.getGrassColor(block);
+		return getGrassAverageColor(block);
 	}
 	
 	public Vector3f getGrassColor(Biome biome, int blocksAboveSeaLevel){
-		Vector3f mapColor = getColorFromMap(biome, blocksAboveSeaLevel, grassMap);
+		Vector3f mapColor = getColorFromMap(biome, blocksAboveSeaLevel, grassColors);
 		Vector3f overlayColor = biome.getOverlayGrassColor().toVector3();
 		float overlayAlpha = biome.getOverlayGrassColor().getW();
 		return mapColor.mul(1f - overlayAlpha).add(overlayColor.mul(overlayAlpha));
 	}
 	
-	private Vector3f getColorFromMap(Biome biome, int blocksAboveSeaLevel, BufferedImage map){
-		Vector2i pixel = getColorMapPosition(biome, blocksAboveSeaLevel).mul(map.getWidth(), map.getHeight()).floor().toInt();
-		int cValue = map.getRGB(GenericMath.clamp(pixel.getX(), 0, map.getWidth() - 1), GenericMath.clamp(pixel.getY(), 0, map.getHeight() - 1));
-		Color color = new Color(cValue, false);
-		return new Vector3f(color.getRed(), color.getGreen(), color.getBlue()).div(0xff);
-		
-	}
-	
-	private Vector2f getColorMapPosition(Biome biome, int blocksAboveSeaLevel){
+	private Vector3f getColorFromMap(Biome biome, int blocksAboveSeaLevel, ColorMap map){
 		float adjTemp = (float) GenericMath.clamp(biome.getTemp() - (0.00166667 * blocksAboveSeaLevel), 0d, 1d);
 		float adjHumidity = (float) GenericMath.clamp(biome.getHumidity(), 0d, 1d) * adjTemp;
-		return new Vector2f(1 - adjTemp, 1 - adjHumidity);
+
+		int x = GenericMath.floor((1 - adjTemp) * map.width);
+		int y = GenericMath.floor((1 - adjHumidity) * map.height);
+		int cValue = map.pixels[GenericMath.clamp(y, 0, map.height - 1) * map.width + GenericMath.clamp(x, 0, map.width - 1)];
+
+		return new Vector3f(
+				((cValue >> 16) & 0xFF) / 255f,
+				((cValue >> 8) & 0xFF) / 255f,
+				(cValue & 0xFF) / 255f
+		);
 	}
 	
-	private Iterable<Biome> iterateAverageBiomes(Block block){
-		Vector3i pos = block.getPosition();
-		Vector3i radius = new Vector3i(2, 1, 2);
-		
-		final World world = block.getWorld(); 
-		final int sx = pos.getX() - radius.getX(), 
-				  sy = Math.max(0,  pos.getY() - radius.getY()), 
-				  sz = pos.getZ() - radius.getZ();
-		final int mx = pos.getX() + radius.getX(), 
-				  my = Math.min(255, pos.getY() + radius.getY()), 
-				  mz = pos.getZ() + radius.getZ();
-		
-		return () -> new Iterator<Biome>() {
-			private int x = sx, 
-						y = sy, 
-						z = sz;
-
-			@Override
-			public boolean hasNext() {
-				return z < mz || y < my || x < mx;
-			}
+	/**
+	 * Averages the colors of all biomes around the block.<br>
+	 * The biomes are read directly from the block's world, when rendering this is a window that already holds the biomes of the whole tile.
+	 */
+	private Vector3f getAverageColor(Block block, BiomeColorFunction colorFunction){
+		final World world = block.getWorld();
+		int blocksAboveSeaLevel = Math.max(block.getY() - world.getSeaLevel(), 0);
 
-			@Override
-			public Biome next() {
-				x++;
-				if (x > mx) {
-					x = sx;
-					y++;
-				}
-				if (y > my) {
-					y = sy;
-					z++;
+		final int sx = block.getX() - BIOME_BLEND_RADIUS,
+				  sy = Math.max(0, block.getY() - 1),
+				  sz = block.getZ() - BIOME_BLEND_RADIUS;
+		final int mx = block.getX() + BIOME_BLEND_RADIUS,
+				  my = Math.min(255, block.getY() + 1),
+				  mz = block.getZ() + BIOME_BLEND_RADIUS;
+
+		float r = 0, g = 0, b = 0;
+		int count = 0;
+
+		Biome lastBiome = null;
+		Vector3f lastColor = Vector3f.ZERO;
+		for (int z = sz; z <= mz; z++) {
+			for (int y = sy; y <= my; y++) {
+				for (int x = sx; x <= mx; x++) {
+					Biome biome = world.getBiome(x, y, z);
+
+					// neighboring blocks are almost always in the same biome
+					if (biome != lastBiome) {
+						lastColor = colorFunction.getColor(biome, blocksAboveSeaLevel);
+						lastBiome = biome;
+					}
+
+					r += lastColor.getX();
+					g += lastColor.getY();
+					b += lastColor.getZ();
+					count++;
 				}
-				
-				return world.getBiome(x, y, z);
 			}
-		};
+		}
+
+		return new Vector3f(r / count, g / count, b / count);
 	}
 
 	public BufferedImage getFoliageMap() {
@@ -211,6 +220,7 @@ public BufferedImage getFoliageMap() {
 
 	public void setFoliageMap(BufferedImage foliageMap) {
 		this.foliageMap = foliageMap;
+		this.foliageColors = new ColorMap(foliageMap);
 	}
 
 	public BufferedImage getGrassMap() {
@@ -219,6 +229,34 @@ public BufferedImage getGrassMap() {
 
 	public void setGrassMap(BufferedImage grassMap) {
 		this.grassMap = grassMap;
+		this.grassColors = new ColorMap(grassMap);
+	}
+	
+	@FunctionalInterface
+	interface BiomeColorFunction {
+
+		Vector3f getColor(Biome biome, int blocksAboveSeaLevel);
+
+	}
+	
+	@FunctionalInterface
+	private interface BlockColorFunction {
+
+		Vector3f getColor(Block block, BiomeColorField colorField);
+
+	}
+	
+	private static class ColorMap {
+		
+		private final int width, height;
+		private final int[] pixels;
+		
+		public ColorMap(BufferedImage image) {
+			this.width = image.getWidth();
+			this.height = image.getHeight();
+			this.pixels = image.getRGB(0, 0, width, height, null, 0, width);
+		}
+		
 	}
 	
 }
@@ -59,7 +59,20 @@ public Collection<TransformedBlockModelResource> getModels(BlockState blockState
 	}
 
 	public Collection<TransformedBlockModelResource> getModels(BlockState blockState, Vector3i pos) {
-		Collection<TransformedBlockModelResource> models = new ArrayList<>(1);
+		Collection<Variant> variants = getVariants(blockState);
+		Collection<TransformedBlockModelResource> models = new ArrayList<>(variants.size());
+		for (Variant variant : variants) {
+			models.add(variant.getModel(pos));
+		}
+		return models;
+	}
+
+	/**
+	 * Returns the {@link Variant}s that are used to model the given {@link BlockState}.<br>
+	 * Which variants are used only depends on the {@link BlockState}, the position of a block only decides which (weighted) model of each variant is chosen.
+	 */
+	public Collection<Variant> getVariants(BlockState blockState) {
+		Collection<Variant> matching = new ArrayList<>(1);
 		
 		Variant allMatch = null;
 		for (Variant variant : variants) {
@@ -69,31 +82,45 @@ public Collection<TransformedBlockModelResource> getModels(BlockState blockState
 					continue;
 				}
 				
-				models.add(variant.getModel(pos));
-				return models;
+				matching.add(variant);
+				return matching;
 			}
 		}
 		
 		if (allMatch != null) {
-			models.add(allMatch.getModel(pos));
-			return models;
+			matching.add(allMatch);
+			return matching;
 		}
 
 		for (Variant variant : multipart) {
 			if (variant.condition.matches(blockState)) {
-				models.add(variant.getModel(pos));
+				matching.add(variant);
 			}
 		}
 		
 		//fallback to first variant
-		if (models.isEmpty() && !variants.isEmpty()) {
-			models.add(variants.get(0).getModel(pos));
+		if (matching.isEmpty() && !variants.isEmpty()) {
+			matching.add(variants.get(0));
 		}
 
+		return matching;
+	}
+
+	/**
+	 * All models that any of the variants of this resource can use
+	 */
+	Collection<TransformedBlockModelResource> getAllModels() {
+		Collection<TransformedBlockModelResource> models = new ArrayList<>();
+		for (Variant variant : variants) {
+			for (Weighted<TransformedBlockModelResource> w : variant.models) models.add(w.value);
+		}
+		for (Variant variant : multipart) {
+			for (Weighted<TransformedBlockModelResource> w : variant.models) models.add(w.value);
+		}
 		return models;
 	}
 
-	private static class Variant {
+	public static class Variant {
 
 		private PropertyCondition condition = PropertyCondition.all();
 		private Collection<Weighted<TransformedBlockModelResource>> models = new ArrayList<>();
@@ -104,9 +131,13 @@ private Variant() {
 		}
 
 		public TransformedBlockModelResource getModel(Vector3i pos) {
+			return getModel(pos.getX(), pos.getY(), pos.getZ());
+		}
+
+		public TransformedBlockModelResource getModel(int x, int y, int z) {
 			if (models.isEmpty()) throw new IllegalStateException("A variant must have at least one model!");
 			
-			double selection = MathUtils.hashToFloat(pos, 827364) * totalWeight; // random based on position
+			double selection = MathUtils.hashToFloat(x, y, z, 827364) * totalWeight; // random based on position
 			for (Weighted<TransformedBlockModelResource> w : models) {
 				selection -= w.weight;
 				if (selection <= 0) return w.value;
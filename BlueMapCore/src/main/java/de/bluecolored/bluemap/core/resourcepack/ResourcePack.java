@@ -33,6 +33,7 @@
 import de.bluecolored.bluemap.core.resourcepack.fileaccess.CombinedFileAccess;
 import de.bluecolored.bluemap.core.resourcepack.fileaccess.FileAccess;
 import de.bluecolored.bluemap.core.world.BlockState;
+import de.bluecolored.bluemap.core.world.BlockStateIdMap;
 import org.apache.commons.io.output.ByteArrayOutputStream;
 
 import javax.imageio.ImageIO;
@@ -56,6 +57,7 @@ public class ResourcePack {
 	private final MinecraftVersion minecraftVersion;
 	
 	protected Map<String, BlockStateResource> blockStateResources;
+	private final BlockStateIdMap<BlockStateResource> blockStateResourceCache;
 	protected Map<String, BlockModelResource> blockModelResources;
 	protected TextureGallery textures;
 	
@@ -70,6 +72,7 @@ public ResourcePack(MinecraftVersion minecraftVersion) {
 		this.minecraftVersion = minecraftVersion;
 		
 		blockStateResources = new HashMap<>();
+		blockStateResourceCache = new BlockStateIdMap<>(state -> blockStateResources.get(state.getFullId()));
 		blockModelResources = new HashMap<>();
 		textures = new TextureGallery();
 		foliageMap = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
@@ -179,6 +182,9 @@ public void load(File... sources) throws InterruptedException {
 					}
 				}
 			}
+
+			bakeBlockModels();
+			blockStateResourceCache.clear();
 			
 			try {
 				foliageMap = ImageIO.read(sourcesAccess.readFile("assets/minecraft/textures/colormap/foliage.png"));
@@ -199,6 +205,26 @@ public void load(File... sources) throws InterruptedException {
 		}
 	}
 	
+	/**
+	 * Bakes the geometry of all models that are used by the loaded {@link BlockStateResource}s,
+	 * so they don't need to be transformed again for each rendered block.<br>
+	 * Each combination of model, rotation and uv-lock is only baked once.
+	 */
+	private void bakeBlockModels() {
+		Map<TransformedBlockModelResource, BakedBlockModel> bakedModels = new HashMap<>();
+		for (BlockStateResource resource : blockStateResources.values()) {
+			for (TransformedBlockModelResource bmr : resource.getAllModels()) {
+				if (bmr.getModel().getType() == ModelType.LIQUID) continue;
+
+				try {
+					bmr.setBakedModel(bakedModels.computeIfAbsent(bmr, BakedBlockModel::bake));
+				} catch (RuntimeException ex) {
+					Logger.global.logDebug("Failed to bake a block-model: " + ex);
+				}
+			}
+		}
+	}
+	
 	/**
 	 * Returns a {@link BlockStateResource} for the given {@link BlockState} if found. 
 	 * @param state The {@link BlockState}
@@ -206,7 +232,7 @@ public void load(File... sources) throws InterruptedException {
 	 * @throws NoSuchResourceException If no resource is loaded for this {@link BlockState}
 	 */
 	public BlockStateResource getBlockStateResource(BlockState state) throws NoSuchResourceException {
-		BlockStateResource resource = blockStateResources.get(state.getFullId());
+		BlockStateResource resource = blockStateResourceCache.get(state);
 		if (resource == null) throw new NoSuchResourceException("No resource for blockstate: " + state.getFullId());
 		return resource;
 	}
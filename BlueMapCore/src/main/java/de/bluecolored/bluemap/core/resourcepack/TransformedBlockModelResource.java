@@ -32,6 +32,7 @@ public class TransformedBlockModelResource {
 	private boolean uvLock = false;
 	
 	private BlockModelResource model;
+	private volatile BakedBlockModel bakedModel;
 
 	public TransformedBlockModelResource(Vector2f rotation, boolean uvLock, BlockModelResource model) {
 		this.model = model;
@@ -50,5 +51,47 @@ public boolean isUVLock() {
 	public BlockModelResource getModel() {
 		return model;
 	}
+
+	/**
+	 * The baked geometry of this model, or <code>null</code> if this model has not been baked yet.<br>
+	 * All models of the blockstates are baked when the {@link ResourcePack} is loaded.
+	 */
+	public BakedBlockModel getBakedModel() {
+		return bakedModel;
+	}
+
+	/**
+	 * Returns the baked geometry of this model, baking it first if that did not happen yet
+	 */
+	public BakedBlockModel bake() {
+		BakedBlockModel bakedModel = this.bakedModel;
+		if (bakedModel == null) {
+			bakedModel = BakedBlockModel.bake(this);
+			this.bakedModel = bakedModel;
+		}
+		return bakedModel;
+	}
+
+	void setBakedModel(BakedBlockModel bakedModel) {
+		this.bakedModel = bakedModel;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj instanceof TransformedBlockModelResource) {
+			TransformedBlockModelResource that = (TransformedBlockModelResource) obj;
+			return
+					this.model == that.model &&
+					this.uvLock == that.uvLock &&
+					this.rotation.equals(that.rotation);
+		}
+
+		return false;
+	}
+
+	@Override
+	public int hashCode() {
+		return (System.identityHashCode(model) * 31 + rotation.hashCode()) * 31 + (uvLock ? 1 : 0);
+	}
 	
 }
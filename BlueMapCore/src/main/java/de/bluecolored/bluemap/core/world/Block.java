@@ -29,15 +29,17 @@
 
 public class Block {
 
+	private static final Direction[] DIRECTIONS = Direction.values();
+
 	private World world;
 	private BlockState blockState;
 	private LightData lightData;
 	private Biome biome;
 	private BlockProperties properties;
 	private Vector3i pos;
+	private int x, y, z;
 	
-	private float sunLight;
-	private float blockLight;
+	private int passedLight;
 	
 	public Block(World world, BlockState blockState, LightData lightData, Biome biome, BlockProperties properties, Vector3i pos) {
 		this.world = world;
@@ -45,10 +47,15 @@ public Block(World world, BlockState blockState, LightData lightData, Biome biom
 		this.lightData = lightData;
 		this.biome = biome;
 		this.properties = properties;
-		this.pos = pos;
-		
-		this.sunLight = -1;
-		this.blockLight = -1;
+		setPos(pos);
+	}
+
+	/**
+	 * Creates a block without any data on the given position, the data has to be set before the block can be used.
+	 */
+	protected Block(World world, int x, int y, int z) {
+		this.world = world;
+		setPos(x, y, z);
 	}
 	
 	public BlockState getBlockState() {
@@ -60,9 +67,30 @@ public World getWorld() {
 	}
 	
 	public Vector3i getPosition() {
+		if (pos == null) pos = new Vector3i(x, y, z);
 		return pos;
 	}
+
+	public int getX() {
+		return x;
+	}
+
+	public int getY() {
+		return y;
+	}
+
+	public int getZ() {
+		return z;
+	}
 	
+	public LightData getLightData() {
+		return lightData;
+	}
+
+	public BlockProperties getProperties() {
+		return properties;
+	}
+
 	public float getSunLightLevel() {
 		return lightData.getSkyLight();
 	}
@@ -71,6 +99,13 @@ public float getBlockLightLevel() {
 		return lightData.getBlockLight();
 	}
 
+	/**
+	 * Returns the light of this block packed into one int: <code>skyLight &lt;&lt; 4 | blockLight</code>
+	 */
+	public int getPackedLight() {
+		return lightData.getPacked();
+	}
+
 	public boolean isCullingNeighborFaces() {
 		return properties.isCulling();
 	}
@@ -92,8 +127,7 @@ public Biome getBiome() {
 	 * It is basically the sun light that is projected onto adjacent faces
 	 */
 	public float getPassedSunLight() {
-		if (sunLight < 0) calculateLight();
-		return sunLight;
+		return getPassedPackedLight() >> 4;
 	}
 	
 	/**
@@ -101,31 +135,43 @@ public float getPassedSunLight() {
 	 * It is basically the block light that is projected onto adjacent faces
 	 */
 	public float getPassedBlockLight() {
-		if (blockLight < 0) calculateLight();
-		return blockLight;
+		return getPassedPackedLight() & 0xF;
+	}
+	
+	/**
+	 * The {@link #getPassedSunLight() passed sun-light} and {@link #getPassedBlockLight() passed block-light} packed into one int:
+	 * <code>sunLight &lt;&lt; 4 | blockLight</code>
+	 */
+	public int getPassedPackedLight() {
+		if (passedLight < 0) calculateLight();
+		return passedLight;
 	}
 	
 	private void calculateLight() {
-		sunLight = getSunLightLevel();
-		blockLight = getBlockLightLevel();
-		
-		if (blockLight > 0 || sunLight > 0) return;
+		int light = getPackedLight();
+		if (light != 0) {
+			passedLight = light;
+			return;
+		}
 		
-		for (Direction direction : Direction.values()) {
-			Block neighbor = getRelativeBlock(direction);
-			sunLight = Math.max(neighbor.getSunLightLevel(), sunLight);
-			blockLight = Math.max(neighbor.getBlockLightLevel(), blockLight);
+		int sunLight = 0, blockLight = 0;
+		World world = getWorld();
+		for (Direction direction : DIRECTIONS) {
+			Vector3i dir = direction.toVector();
+			int neighborLight = world.getPackedLight(x + dir.getX(), y + dir.getY(), z + dir.getZ());
+			sunLight = Math.max(neighborLight >> 4, sunLight);
+			blockLight = Math.max(neighborLight & 0xF, blockLight);
 		}
+		
+		passedLight = sunLight << 4 | blockLight;
 	}
 	
 	public Block getRelativeBlock(int x, int y, int z) {
-		Vector3i pos = getPosition().add(x, y, z);
-		return getWorld().getBlock(pos);
+		return getWorld().getBlock(this.x + x, this.y + y, this.z + z);
 	}
 	
 	public Block getRelativeBlock(Vector3i direction) {
-		Vector3i pos = getPosition().add(direction);
-		return getWorld().getBlock(pos);
+		return getRelativeBlock(direction.getX(), direction.getY(), direction.getZ());
 	}
 	
 	public Block getRelativeBlock(Direction direction){
@@ -142,9 +188,7 @@ public void setBlockState(BlockState blockState) {
 
 	public void setLightData(LightData lightData) {
 		this.lightData = lightData;
-		
-		this.blockLight = -1f;
-		this.sunLight = -1f;
+		this.passedLight = -1;
 	}
 
 	public void setBiome(Biome biome) {
@@ -156,17 +200,25 @@ public void setProperties(BlockProperties properties) {
 	}
 
 	public void setPos(Vector3i pos) {
+		setPos(pos.getX(), pos.getY(), pos.getZ());
 		this.pos = pos;
 	}
 
+	protected void setPos(int x, int y, int z) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		this.pos = null;
+		this.passedLight = -1;
+	}
+
 	@Override
 	public String toString() {
 		return "Block{" +
 			   "blockState=" + blockState +
 			   ", biome=" + biome +
-			   ", pos=" + pos +
-			   ", sunLight=" + sunLight +
-			   ", blockLight=" + blockLight +
+			   ", pos=" + getPosition() +
+			   ", lightData=" + lightData +
 			   '}';
 	}
 
@@ -0,0 +1,87 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.world;
+
+/**
+ * A reusable {@link Block} that can be moved around in a {@link World}.<br>
+ * Moving the cursor loads the data of the block on the new position into this instance instead of creating a new {@link Block}.<br>
+ * <br>
+ * <i>A cursor is not thread-safe, every thread needs to use its own cursors!</i>
+ */
+public class BlockCursor extends Block {
+
+	private Chunk chunk;
+	private int chunkX, chunkZ;
+
+	/**
+	 * Creates a new cursor for the given world.<br>
+	 * The cursor has no data until it is moved to a position for the first time.
+	 */
+	public BlockCursor(World world) {
+		super(world, 0, 0, 0);
+	}
+
+	/**
+	 * Moves this cursor to the given position and loads the block on that position.
+	 */
+	public BlockCursor moveTo(int x, int y, int z) {
+		setPos(x, y, z);
+		getWorld().loadBlock(this);
+		return this;
+	}
+
+	/**
+	 * Moves this cursor relative to its current position and loads the block on the new position.
+	 */
+	public BlockCursor offset(int dx, int dy, int dz) {
+		return moveTo(getX() + dx, getY() + dy, getZ() + dz);
+	}
+
+	/**
+	 * Copies the data of the given block into this cursor, the position and world of this cursor are not changed.
+	 */
+	public void set(Block block) {
+		setBlockState(block.getBlockState());
+		setLightData(block.getLightData());
+		setBiome(block.getBiome());
+		setProperties(block.getProperties());
+	}
+
+	/**
+	 * Returns the chunk that a world remembered on this cursor for the given chunk-position, or null if there is none.<br>
+	 * This is used by the world to skip the chunk-lookup as long as the cursor is moved around in the same chunk.
+	 */
+	public Chunk getCachedChunk(int chunkX, int chunkZ) {
+		if (chunk == null || this.chunkX != chunkX || this.chunkZ != chunkZ) return null;
+		return chunk;
+	}
+
+	public void setCachedChunk(int chunkX, int chunkZ, Chunk chunk) {
+		this.chunkX = chunkX;
+		this.chunkZ = chunkZ;
+		this.chunk = chunk;
+	}
+
+}
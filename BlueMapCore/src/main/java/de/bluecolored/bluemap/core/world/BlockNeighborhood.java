@@ -0,0 +1,108 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.world;
+
+/**
+ * A {@link BlockCursor} that also holds the blocks around it.<br>
+ * {@link #getRelativeBlock(int, int, int) Relative blocks} within a radius of 2 blocks are loaded lazily into reusable cursors that
+ * stay valid until the neighborhood is moved again. So querying the same neighbor multiple times (e.g. for face-culling,
+ * light and ambient-occlusion) only loads it once and does not create any new objects.<br>
+ * <br>
+ * <i>The returned neighbors are reused, they should not be stored anywhere!</i>
+ */
+public class BlockNeighborhood extends BlockCursor {
+
+	private static final int RADIUS = 2;
+	private static final int DIAMETER = RADIUS * 2 + 1;
+
+	private final Neighbor[] neighbors;
+	private int generation;
+
+	public BlockNeighborhood(World world) {
+		super(world);
+
+		this.neighbors = new Neighbor[DIAMETER * DIAMETER * DIAMETER];
+		this.generation = 0;
+	}
+
+	@Override
+	public BlockNeighborhood moveTo(int x, int y, int z) {
+		super.moveTo(x, y, z);
+		generation++;
+		return this;
+	}
+
+	@Override
+	public BlockNeighborhood offset(int dx, int dy, int dz) {
+		return moveTo(getX() + dx, getY() + dy, getZ() + dz);
+	}
+
+	@Override
+	public Block getRelativeBlock(int x, int y, int z) {
+		if (x == 0 && y == 0 && z == 0) return this;
+
+		if (
+				x < -RADIUS || x > RADIUS ||
+				y < -RADIUS || y > RADIUS ||
+				z < -RADIUS || z > RADIUS
+		) return super.getRelativeBlock(x, y, z);
+
+		int index = ((y + RADIUS) * DIAMETER + z + RADIUS) * DIAMETER + x + RADIUS;
+		Neighbor neighbor = neighbors[index];
+		if (neighbor == null) {
+			neighbor = new Neighbor(x, y, z);
+			neighbors[index] = neighbor;
+		}
+
+		if (neighbor.generation != generation) {
+			neighbor.generation = generation;
+			neighbor.moveTo(getX() + x, getY() + y, getZ() + z);
+		}
+
+		return neighbor;
+	}
+
+	private class Neighbor extends BlockCursor {
+
+		private final int dx, dy, dz;
+		private int generation;
+
+		private Neighbor(int dx, int dy, int dz) {
+			super(BlockNeighborhood.this.getWorld());
+
+			this.dx = dx;
+			this.dy = dy;
+			this.dz = dz;
+			this.generation = BlockNeighborhood.this.generation - 1;
+		}
+
+		@Override
+		public Block getRelativeBlock(int x, int y, int z) {
+			return BlockNeighborhood.this.getRelativeBlock(dx + x, dy + y, dz + z);
+		}
+
+	}
+
+}
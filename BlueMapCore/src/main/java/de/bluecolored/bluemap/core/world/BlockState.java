@@ -49,6 +49,7 @@ public class BlockState {
 
 	private boolean hashed;
 	private int hash;
+	private int stateId;
 
 	private final String namespace;
 	private final String id;
@@ -62,6 +63,7 @@ public BlockState(String id) {
 	public BlockState(String id, Map<String, String> properties) {
 		this.hashed = false;
 		this.hash = 0;
+		this.stateId = -1;
 		
 		this.properties = Collections.unmodifiableMap(new HashMap<>(properties));
 		
@@ -81,6 +83,7 @@ public BlockState(String id, Map<String, String> properties) {
 	private BlockState(BlockState blockState, String withKey, String withValue) {
 		this.hashed = false;
 		this.hash = 0;
+		this.stateId = -1;
 		
 		Map<String, String> props = new HashMap<>(blockState.getProperties());
 		props.put(withKey, withValue);
@@ -127,6 +130,27 @@ public Map<String, String> getProperties() {
 		return properties;
 	}
 	
+	/**
+	 * The dense integer id of this blockstate in the {@link BlockStateRegistry}.<br>
+	 * If this instance is not interned yet, this will intern an equal state.
+	 */
+	public int getStateId() {
+		int stateId = this.stateId;
+		if (stateId >= 0) return stateId;
+		return BlockStateRegistry.getId(this);
+	}
+
+	/**
+	 * Whether this instance is the interned instance of the {@link BlockStateRegistry}, which means that it can be compared by identity
+	 */
+	public boolean isInterned() {
+		return stateId >= 0;
+	}
+
+	void setStateId(int stateId) {
+		this.stateId = stateId;
+	}
+
 	/**
 	 * Returns a new BlockState with the given property changed
 	 */
@@ -140,6 +164,7 @@ public boolean equals(Object obj) {
 		
 		if (!(obj instanceof BlockState)) return false;
 		BlockState b = (BlockState) obj;
+		if (isInterned() && b.isInterned()) return false; // interned states are unique
 		if (!Objects.equals(getFullId(), b.getFullId())) return false;
 		if (!Objects.equals(getProperties(), b.getProperties())) return false;
 		return true;
@@ -0,0 +1,103 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.world;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * A map from {@link BlockState}s to values that is backed by an array indexed with the {@link BlockState#getStateId() state-id}.<br>
+ * Values are computed lazily and at most once per state (until the map is cleared).<br>
+ * <br>
+ * <i>The implementation of this class is thread-save!</i><br>
+ */
+public class BlockStateIdMap<T> {
+
+	/**
+	 * Stored for states that the loader returned <code>null</code> for, so they are not loaded again
+	 */
+	private static final Object ABSENT = new Object();
+
+	private final Function<BlockState, T> loader;
+	private volatile AtomicReferenceArray<Object> values;
+
+	/**
+	 * @param loader The function that is used to compute the value of a state, it will always receive the interned state.
+	 *               If it returns <code>null</code>, the map returns <code>null</code> for this state without calling the
+	 *               loader again (until the map is cleared).
+	 */
+	public BlockStateIdMap(Function<BlockState, T> loader) {
+		this.loader = loader;
+		this.values = new AtomicReferenceArray<>(0);
+	}
+
+	public T get(BlockState state) {
+		int id = state.getStateId();
+
+		AtomicReferenceArray<Object> values = this.values;
+		if (id < values.length()) {
+			Object value = values.get(id);
+			if (value != null) return unwrap(value);
+		}
+
+		return load(id);
+	}
+
+	/**
+	 * Removes all computed values
+	 */
+	public synchronized void clear() {
+		this.values = new AtomicReferenceArray<>(0);
+	}
+
+	private synchronized T load(int id) {
+		AtomicReferenceArray<Object> values = this.values;
+		if (id < values.length()) {
+			Object value = values.get(id);
+			if (value != null) return unwrap(value);
+		}
+
+		T value = loader.apply(BlockStateRegistry.get(id));
+
+		values = this.values; // the loader might have loaded other values
+		if (id >= values.length()) {
+			AtomicReferenceArray<Object> grown = new AtomicReferenceArray<>(Math.max(Math.max(BlockStateRegistry.size(), id + 1), values.length() * 2));
+			for (int i = 0; i < values.length(); i++) {
+				grown.set(i, values.get(i));
+			}
+			values = grown;
+			this.values = values;
+		}
+
+		values.set(id, value != null ? value : ABSENT);
+		return value;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T unwrap(Object value) {
+		return value == ABSENT ? null : (T) value;
+	}
+
+}
@@ -0,0 +1,104 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.world;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A global registry that interns {@link BlockState}s and gives each distinct state (same id and same properties) a dense
+ * integer id, starting at 0.<br>
+ * Interned states are unique, so they can be compared by identity and their ids can be used as an index into arrays.<br>
+ * <br>
+ * <i>The implementation of this class is thread-save!</i><br>
+ */
+public final class BlockStateRegistry {
+
+	private static final ConcurrentHashMap<BlockState, BlockState> INTERNED = new ConcurrentHashMap<>();
+	private static final Object LOCK = new Object();
+
+	private static volatile BlockState[] states = new BlockState[1024];
+	private static int size = 0;
+
+	static {
+		// register these first, so their static instances are the interned ones
+		intern(BlockState.AIR);
+		intern(BlockState.MISSING);
+	}
+
+	private BlockStateRegistry() {}
+
+	/**
+	 * Returns the interned instance that is equal to the given state, registering the given state if there is none yet.
+	 */
+	public static BlockState intern(BlockState state) {
+		if (state.isInterned()) return state;
+		return INTERNED.computeIfAbsent(state, BlockStateRegistry::register);
+	}
+
+	/**
+	 * Returns the id of the interned state that is equal to the given state.
+	 */
+	public static int getId(BlockState state) {
+		return intern(state).getStateId();
+	}
+
+	/**
+	 * Returns the interned state with the given id.
+	 * @throws IndexOutOfBoundsException if no state has been registered with this id
+	 */
+	public static BlockState get(int id) {
+		BlockState state = states[id];
+		if (state == null) throw new IndexOutOfBoundsException("No BlockState registered with id " + id);
+		return state;
+	}
+
+	/**
+	 * The amount of registered states, all ids are smaller than this value.
+	 */
+	public static int size() {
+		synchronized (LOCK) {
+			return size;
+		}
+	}
+
+	private static BlockState register(BlockState state) {
+		synchronized (LOCK) {
+			int id = size++;
+
+			BlockState[] states = BlockStateRegistry.states;
+			if (id >= states.length) {
+				states = Arrays.copyOf(states, states.length * 2);
+			}
+
+			state.setStateId(id);
+			states[id] = state;
+			BlockStateRegistry.states = states;
+
+			return state;
+		}
+	}
+
+}
@@ -0,0 +1,340 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.world;
+
+import com.flowpowered.math.vector.Vector2i;
+import com.flowpowered.math.vector.Vector3i;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * A box of a {@link World} that holds the state-ids, light and biomes of all blocks inside of it in flat arrays.<br>
+ * The window is filled once with {@link World#loadBlocks} and then serves all block-lookups inside of the box without
+ * accessing the chunks of the world again. Everything outside of the box is passed on to the underlying world.<br>
+ * The biomes can be loaded for a horizontally bigger box than the blocks, so that biome-blending around the blocks does not need to
+ * leave the window either.<br>
+ * <br>
+ * <i>A window is not thread-safe, every thread needs to use its own window!</i>
+ */
+public class BlockWindow implements World {
+
+	private final World world;
+
+	private int minX, minY, minZ, maxX, maxY, maxZ;
+	private int sizeX, sizeZ;
+
+	private int biomeMinX, biomeMinZ, biomeMaxX, biomeMaxZ;
+	private int biomeSizeX, biomeSizeZ;
+
+	private int[] stateIds;
+	private byte[] light;
+	private Biome[] biomes; // covers the biome-box
+	private BlockProperties[] properties; // indexed by state-id
+
+	public BlockWindow(World world) {
+		this.world = world;
+
+		this.stateIds = new int[0];
+		this.light = new byte[0];
+		this.biomes = new Biome[0];
+		this.properties = new BlockProperties[BlockStateRegistry.size()];
+
+		this.minX = this.minY = this.minZ = 0;
+		this.maxX = this.maxY = this.maxZ = -1;
+		this.biomeMinX = this.biomeMinZ = 0;
+		this.biomeMaxX = this.biomeMaxZ = -1;
+	}
+
+	/**
+	 * Moves this window to the given box (min and max inclusive) and loads all blocks inside of it.<br>
+	 * The arrays of the window are reused if they are big enough.
+	 */
+	public void load(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+		load(minX, minY, minZ, maxX, maxY, maxZ, 0);
+	}
+
+	/**
+	 * Moves this window to the given box (min and max inclusive) and loads all blocks inside of it.<br>
+	 * The biomes are loaded for the box expanded horizontally by the given margin.<br>
+	 * The arrays of the window are reused if they are big enough.
+	 */
+	public void load(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, int biomeMargin) {
+		this.minX = minX;
+		this.minY = minY;
+		this.minZ = minZ;
+		this.maxX = maxX;
+		this.maxY = maxY;
+		this.maxZ = maxZ;
+
+		this.sizeX = maxX - minX + 1;
+		this.sizeZ = maxZ - minZ + 1;
+
+		this.biomeMinX = minX - biomeMargin;
+		this.biomeMinZ = minZ - biomeMargin;
+		this.biomeMaxX = maxX + biomeMargin;
+		this.biomeMaxZ = maxZ + biomeMargin;
+
+		this.biomeSizeX = biomeMaxX - biomeMinX + 1;
+		this.biomeSizeZ = biomeMaxZ - biomeMinZ + 1;
+
+		int sizeY = maxY - minY + 1;
+		int size = sizeX * sizeY * sizeZ;
+		if (stateIds.length < size) {
+			this.stateIds = new int[size];
+			this.light = new byte[size];
+		}
+
+		int biomeSize = biomeSizeX * sizeY * biomeSizeZ;
+		if (biomes.length < biomeSize) {
+			this.biomes = new Biome[biomeSize];
+		}
+
+		world.loadBlocks(this, minX, minY, minZ, maxX, maxY, maxZ);
+
+		// the biomes of the margin around the blocks
+		if (biomeMargin > 0) {
+			for (int x = biomeMinX; x <= biomeMaxX; x++) {
+				for (int z = biomeMinZ; z <= biomeMaxZ; z++) {
+					if (x >= minX && x <= maxX && z >= minZ && z <= maxZ) continue;
+
+					for (int y = minY; y <= maxY; y++) {
+						biomes[biomeIndex(x, y, z)] = world.getBiome(x, y, z);
+					}
+				}
+			}
+		}
+	}
+
+	public boolean isInside(int x, int y, int z) {
+		return
+				x >= minX && x <= maxX &&
+				z >= minZ && z <= maxZ &&
+				y >= minY && y <= maxY;
+	}
+
+	/**
+	 * Sets the data of the block on the given position, used by worlds to fill this window.
+	 */
+	public void setBlock(int x, int y, int z, int stateId, int skyLight, int blockLight, Biome biome, BlockProperties properties) {
+		int index = index(x, y, z);
+		stateIds[index] = stateId;
+		light[index] = (byte) ((skyLight & 0xF) << 4 | (blockLight & 0xF));
+		biomes[biomeIndex(x, y, z)] = biome;
+
+		if (stateId >= this.properties.length) {
+			this.properties = Arrays.copyOf(this.properties, Math.max(stateId + 1, this.properties.length * 2));
+		}
+		this.properties[stateId] = properties;
+	}
+
+	/**
+	 * Sets the data of the block on the given position to the data of the given block, used by worlds to fill this window.
+	 */
+	public void setBlock(int x, int y, int z, Block block) {
+		int light = block.getPackedLight();
+		setBlock(x, y, z,
+				block.getBlockState().getStateId(),
+				light >> 4,
+				light & 0xF,
+				block.getBiome(),
+				block.getProperties()
+		);
+	}
+
+	/**
+	 * Returns the state-id of the block on the given position, the position has to be {@link #isInside(int, int, int) inside} this window.
+	 */
+	public int getStateId(int x, int y, int z) {
+		return stateIds[index(x, y, z)];
+	}
+
+	/**
+	 * Returns the light of the block on the given position packed into one int (<code>skyLight &lt;&lt; 4 | blockLight</code>).
+	 */
+	@Override
+	public int getPackedLight(int x, int y, int z) {
+		if (!isInside(x, y, z)) return world.getPackedLight(x, y, z);
+		return light[index(x, y, z)] & 0xFF;
+	}
+
+	private int index(int x, int y, int z) {
+		return ((y - minY) * sizeZ + (z - minZ)) * sizeX + (x - minX);
+	}
+
+	private int biomeIndex(int x, int y, int z) {
+		return ((y - minY) * biomeSizeZ + (z - biomeMinZ)) * biomeSizeX + (x - biomeMinX);
+	}
+
+	@Override
+	public void loadBlock(BlockCursor cursor) {
+		int x = cursor.getX(), y = cursor.getY(), z = cursor.getZ();
+		if (!isInside(x, y, z)) {
+			world.loadBlock(cursor);
+			return;
+		}
+
+		int index = index(x, y, z);
+		int stateId = stateIds[index];
+		cursor.setBlockState(BlockStateRegistry.get(stateId));
+		cursor.setLightData(LightData.of(light[index]));
+		cursor.setBiome(biomes[biomeIndex(x, y, z)]);
+		cursor.setProperties(properties[stateId]);
+	}
+
+	@Override
+	public Block getBlock(Vector3i pos) {
+		return getBlock(pos.getX(), pos.getY(), pos.getZ());
+	}
+
+	@Override
+	public Block getBlock(int x, int y, int z) {
+		if (!isInside(x, y, z)) {
+			Block block = world.getBlock(x, y, z);
+			block.setWorld(this);
+			return block;
+		}
+
+		BlockCursor cursor = new BlockCursor(this);
+		cursor.moveTo(x, y, z);
+		return cursor;
+	}
+
+	@Override
+	public Biome getBiome(int x, int y, int z) {
+		if (
+				x < biomeMinX || x > biomeMaxX ||
+				z < biomeMinZ || z > biomeMaxZ ||
+				y < minY || y > maxY
+		) return world.getBiome(x, y, z);
+
+		return biomes[biomeIndex(x, y, z)];
+	}
+
+	@Override
+	public void loadBlocks(BlockWindow window, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+		world.loadBlocks(window, minX, minY, minZ, maxX, maxY, maxZ);
+	}
+
+	@Override
+	public String getName() {
+		return world.getName();
+	}
+
+	@Override
+	public UUID getUUID() {
+		return world.getUUID();
+	}
+
+	@Override
+	public Path getSaveFolder() {
+		return world.getSaveFolder();
+	}
+
+	@Override
+	public int getSeaLevel() {
+		return world.getSeaLevel();
+	}
+
+	@Override
+	public Vector3i getSpawnPoint() {
+		return world.getSpawnPoint();
+	}
+
+	@Override
+	public int getMaxY(int x, int z) {
+		return world.getMaxY(x, z);
+	}
+
+	@Override
+	public int getMinY(int x, int z) {
+		return world.getMinY(x, z);
+	}
+
+	@Override
+	public Grid getChunkGrid() {
+		return world.getChunkGrid();
+	}
+
+	@Override
+	public Grid getRegionGrid() {
+		return world.getRegionGrid();
+	}
+
+	@Override
+	public Chunk getChunk(int x, int z) {
+		return world.getChunk(x, z);
+	}
+
+	@Override
+	public Region getRegion(int x, int z) {
+		return world.getRegion(x, z);
+	}
+
+	@Override
+	public Collection<Vector2i> listRegions() {
+		return world.listRegions();
+	}
+
+	@Override
+	public PinnedChunks pinChunks(Collection<Vector2i> chunks) {
+		return world.pinChunks(chunks);
+	}
+
+	@Override
+	public PinnedChunks pinChunksWithFingerprints(Collection<Vector2i> chunks) {
+		return world.pinChunksWithFingerprints(chunks);
+	}
+
+	@Override
+	public boolean isChunkLoadFailed(int x, int z) {
+		return world.isChunkLoadFailed(x, z);
+	}
+
+	@Override
+	public void invalidateChunkCache() {
+		world.invalidateChunkCache();
+	}
+
+	@Override
+	public void invalidateChunkCache(int x, int z) {
+		world.invalidateChunkCache(x, z);
+	}
+
+	@Override
+	public void cleanUpChunkCache() {
+		world.cleanUpChunkCache();
+	}
+
+	/**
+	 * Returns the world this window is reading from
+	 */
+	public World getWorld() {
+		return world;
+	}
+
+}
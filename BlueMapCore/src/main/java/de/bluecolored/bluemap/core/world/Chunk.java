@@ -28,4 +28,14 @@ public interface Chunk {
 
 	boolean isGenerated();
 
+	/**
+	 * Returns a 64-bit hash over all data of this chunk that is relevant for rendering it (blocks, light and biomes),
+	 * but not over data like entities or timestamps that change without the chunk changing visually.<br>
+	 * Two chunks with the same fingerprint can be assumed to render the same.<br>
+	 * Returns <code>0</code> if the fingerprint of this chunk is unknown.
+	 */
+	default long getFingerprint() {
+		return 0;
+	}
+
 }
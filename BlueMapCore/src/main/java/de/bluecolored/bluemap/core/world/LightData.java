@@ -24,11 +24,23 @@
  */
 package de.bluecolored.bluemap.core.world;
 
+/**
+ * The sky- and block-light of a block.<br>
+ * There are only 256 distinct light-values, so instead of creating new instances use {@link #of(int, int)} or {@link #of(int)},
+ * which return shared instances.
+ */
 public class LightData {
 	
-	public static final LightData ZERO = new LightData(0, 0);
-	public static final LightData SKY = new LightData(15, 0);
-	public static final LightData FULL = new LightData(15, 15);
+	private static final LightData[] INTERNED = new LightData[256];
+	static {
+		for (int i = 0; i < INTERNED.length; i++) {
+			INTERNED[i] = new LightData(i >> 4, i & 0xF);
+		}
+	}
+	
+	public static final LightData ZERO = of(0, 0);
+	public static final LightData SKY = of(15, 0);
+	public static final LightData FULL = of(15, 15);
 	
 	private final int skyLight, blockLight;
 	
@@ -36,6 +48,20 @@ public LightData(int skyLight, int blockLight) {
 		this.skyLight = skyLight;
 		this.blockLight = blockLight;
 	}
+	
+	/**
+	 * Returns the shared instance with the given light-values (0-15)
+	 */
+	public static LightData of(int skyLight, int blockLight) {
+		return INTERNED[(skyLight & 0xF) << 4 | (blockLight & 0xF)];
+	}
+	
+	/**
+	 * Returns the shared instance with the given {@link #getPacked() packed} light-values
+	 */
+	public static LightData of(int packedLight) {
+		return INTERNED[packedLight & 0xFF];
+	}
 
 	public int getSkyLight() {
 		return skyLight;
@@ -45,6 +71,13 @@ public int getBlockLight() {
 		return blockLight;
 	}
 	
+	/**
+	 * Returns both light-values packed into one int: <code>skyLight &lt;&lt; 4 | blockLight</code>
+	 */
+	public int getPacked() {
+		return (skyLight & 0xF) << 4 | (blockLight & 0xF);
+	}
+	
 	@Override
 	public String toString() {
 		return "LightData[B:" + getBlockLight() + "|S:" + getSkyLight() + "]";
@@ -29,6 +29,7 @@
 import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.function.ToLongFunction;
 
 public interface Region {
 
@@ -44,7 +45,16 @@ default Collection<Vector2i> listChunks(){
 	 * Returns a collection of all chunks that have been modified at or after the specified timestamp.<br>
 	 * <i>(Be aware that the collection is not cached and recollected each time from the world-files!)</i>
 	 */
-	Collection<Vector2i> listChunks(long modifiedSince);
+	default Collection<Vector2i> listChunks(long modifiedSince) {
+		return listChunks(chunk -> modifiedSince);
+	}
+
+	/**
+	 * Returns a collection of all chunks that have been modified at or after the timestamp that the given function
+	 * returns for the chunk-position.<br>
+	 * <i>(Be aware that the collection is not cached and recollected each time from the world-files!)</i>
+	 */
+	Collection<Vector2i> listChunks(ToLongFunction<Vector2i> modifiedSince);
 
 	default Chunk loadChunk(int chunkX, int chunkZ) throws IOException {
 		return loadChunk(chunkX, chunkZ, false);
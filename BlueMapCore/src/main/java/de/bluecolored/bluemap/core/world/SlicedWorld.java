@@ -115,6 +115,57 @@ public Block getBlock(int x, int y, int z) {
 		return block;
 	}
 
+	@Override
+	public int getPackedLight(int x, int y, int z) {
+		if (!isInside(x, y, z)) return y < this.min.getY() ? LightData.ZERO.getPacked() : LightData.SKY.getPacked();
+
+		return world.getPackedLight(x, y, z);
+	}
+
+	@Override
+	public void loadBlock(BlockCursor cursor) {
+		if (!isInside(cursor.getX(), cursor.getY(), cursor.getZ())) {
+			cursor.setBlockState(BlockState.AIR);
+			cursor.setLightData(cursor.getY() < this.min.getY() ? LightData.ZERO : LightData.SKY);
+			cursor.setBiome(world.getBiome(cursor.getX(), cursor.getY(), cursor.getZ()));
+			cursor.setProperties(BlockProperties.TRANSPARENT);
+			return;
+		}
+
+		world.loadBlock(cursor);
+	}
+
+	@Override
+	public void loadBlocks(BlockWindow window, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+		int skyLightBelow = LightData.ZERO.getSkyLight(), skyLightAbove = LightData.SKY.getSkyLight();
+		int airId = BlockState.AIR.getStateId();
+
+		// clip the box once, everything outside is air
+		int clippedMinX = Math.max(minX, min.getX()), clippedMaxX = Math.min(maxX, max.getX());
+		int clippedMinY = Math.max(minY, min.getY()), clippedMaxY = Math.min(maxY, max.getY());
+		int clippedMinZ = Math.max(minZ, min.getZ()), clippedMaxZ = Math.min(maxZ, max.getZ());
+
+		for (int x = minX; x <= maxX; x++) {
+			for (int z = minZ; z <= maxZ; z++) {
+				for (int y = minY; y <= maxY; y++) {
+					if (
+							x >= clippedMinX && x <= clippedMaxX &&
+							z >= clippedMinZ && z <= clippedMaxZ &&
+							y >= clippedMinY && y <= clippedMaxY
+					) {
+						y = clippedMaxY; // skip the inside
+						continue;
+					}
+
+					window.setBlock(x, y, z, airId, y < this.min.getY() ? skyLightBelow : skyLightAbove, 0, world.getBiome(x, y, z), BlockProperties.TRANSPARENT);
+				}
+			}
+		}
+
+		if (clippedMinX > clippedMaxX || clippedMinY > clippedMaxY || clippedMinZ > clippedMaxZ) return;
+		world.loadBlocks(window, clippedMinX, clippedMinY, clippedMinZ, clippedMaxX, clippedMaxY, clippedMaxZ);
+	}
+
 	@Override
 	public Chunk getChunk(int x, int z) {
 		return world.getChunk(x, z);
@@ -139,6 +190,21 @@ public Collection<Vector2i> listRegions() {
 		return regions;
 	}
 
+	@Override
+	public PinnedChunks pinChunks(Collection<Vector2i> chunks) {
+		return world.pinChunks(chunks);
+	}
+
+	@Override
+	public PinnedChunks pinChunksWithFingerprints(Collection<Vector2i> chunks) {
+		return world.pinChunksWithFingerprints(chunks);
+	}
+
+	@Override
+	public boolean isChunkLoadFailed(int x, int z) {
+		return world.isChunkLoadFailed(x, z);
+	}
+
 	@Override
 	public void invalidateChunkCache() {
 		world.invalidateChunkCache();
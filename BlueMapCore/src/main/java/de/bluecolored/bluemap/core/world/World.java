@@ -74,6 +74,41 @@ default Block getBlock(int x, int y, int z) {
 		return getBlock(new Vector3i(x, y, z));
 	}
 
+	/**
+	 * Returns the light of the block on the specified position packed into one int: <code>skyLight &lt;&lt; 4 | blockLight</code>.<br>
+	 * The default implementation uses {@link #getBlock(int, int, int)}, implementations should override this to look up the light
+	 * without creating a new {@link Block}.
+	 */
+	default int getPackedLight(int x, int y, int z) {
+		return getBlock(x, y, z).getPackedLight();
+	}
+
+	/**
+	 * Loads the data of the block on the position of the given {@link BlockCursor} into that cursor.<br>
+	 * The default implementation copies the data of {@link #getBlock(int, int, int)}, implementations should override this
+	 * to fill the cursor without creating a new {@link Block}.
+	 */
+	default void loadBlock(BlockCursor cursor) {
+		cursor.set(getBlock(cursor.getX(), cursor.getY(), cursor.getZ()));
+	}
+
+	/**
+	 * Loads the data of all blocks inside the given box (min and max inclusive) into the given {@link BlockWindow}.<br>
+	 * The default implementation loads each block with a {@link BlockCursor}, implementations should override this to
+	 * load the blocks chunk by chunk.
+	 */
+	default void loadBlocks(BlockWindow window, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+		BlockCursor cursor = new BlockCursor(this);
+		for (int x = minX; x <= maxX; x++) {
+			for (int z = minZ; z <= maxZ; z++) {
+				for (int y = minY; y <= maxY; y++) {
+					cursor.moveTo(x, y, z);
+					window.setBlock(x, y, z, cursor);
+				}
+			}
+		}
+	}
+
 	/**
 	 * Returns the {@link Chunk} on the specified chunk-position
 	 */
@@ -90,6 +125,33 @@ default Block getBlock(int x, int y, int z) {
 	 */
 	Collection<Vector2i> listRegions();
 
+	/**
+	 * Starts loading the given chunks (and depending on the implementation also some chunks around them) in the background
+	 * and keeps them loaded until the returned {@link PinnedChunks} are released.<br>
+	 * Use this to load all chunks that are needed for some work ahead of time.
+	 */
+	default PinnedChunks pinChunks(Collection<Vector2i> chunks) {
+		return PinnedChunks.NONE;
+	}
+
+	/**
+	 * Same as {@link #pinChunks(Collection)}, but exactly the given chunks are pinned (without any chunks around them) and
+	 * their {@link Chunk#getFingerprint() fingerprints} are computed while loading them, which an implementation might
+	 * skip otherwise.
+	 */
+	default PinnedChunks pinChunksWithFingerprints(Collection<Vector2i> chunks) {
+		return PinnedChunks.NONE;
+	}
+
+	/**
+	 * Returns true if the last attempt to load the chunk on the specified chunk-position failed (e.g. because the server
+	 * was writing it at the same time) and the chunk has been treated as an empty chunk since.<br>
+	 * Requesting the chunk again later retries loading it.
+	 */
+	default boolean isChunkLoadFailed(int x, int z) {
+		return false;
+	}
+
 	/**
 	 * Invalidates the complete chunk cache (if there is a cache), so that every chunk has to be reloaded from disk
 	 */
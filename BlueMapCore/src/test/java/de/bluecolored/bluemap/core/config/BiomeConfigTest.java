@@ -0,0 +1,61 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.config;
+
+import de.bluecolored.bluemap.core.world.Biome;
+import org.junit.jupiter.api.Test;
+import org.spongepowered.configurate.BasicConfigurationNode;
+import org.spongepowered.configurate.ConfigurationNode;
+import org.spongepowered.configurate.serialize.SerializationException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BiomeConfigTest {
+
+	@Test
+	public void testGet() throws SerializationException {
+		ConfigurationNode node = BasicConfigurationNode.root();
+		node.node("minecraft:plains").node("id").set(1);
+		node.node("somemod:huge").node("id").set(100000);
+		BiomeConfig config = new BiomeConfig(node);
+
+		assertEquals("minecraft:plains", config.get(1).getId());
+		assertEquals("somemod:huge", config.get(100000).getId());
+		assertSame(Biome.DEFAULT, config.get(2));
+		assertSame(Biome.DEFAULT, config.get(-5));
+	}
+
+	@Test
+	public void testHugeIds() {
+		BiomeConfig config = new BiomeConfig(BasicConfigurationNode.root());
+
+		// ids from corrupted chunks must not grow the lookup-array to their size
+		assertSame(Biome.DEFAULT, config.get(2_000_000_000));
+		assertSame(Biome.DEFAULT, config.get(Integer.MAX_VALUE));
+		assertSame(Biome.DEFAULT, config.get(Integer.MAX_VALUE));
+		assertSame(Biome.DEFAULT, config.get(Integer.MIN_VALUE));
+	}
+
+}
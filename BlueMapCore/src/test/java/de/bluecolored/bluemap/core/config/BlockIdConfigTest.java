@@ -0,0 +1,73 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.config;
+
+import de.bluecolored.bluemap.core.world.BlockState;
+import org.junit.jupiter.api.Test;
+import org.spongepowered.configurate.BasicConfigurationNode;
+import org.spongepowered.configurate.ConfigurationNode;
+import org.spongepowered.configurate.serialize.SerializationException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BlockIdConfigTest {
+
+	private static BlockIdConfig createConfig() throws SerializationException {
+		ConfigurationNode node = BasicConfigurationNode.root();
+		node.node("1:0").set("minecraft:stone");
+		node.node("1:1").set("minecraft:granite");
+		node.node("17:0").set("minecraft:oak_log[axis=y]");
+		node.node("somemod:block:0").set("somemod:block[variant=a]");
+		return new BlockIdConfig(node);
+	}
+
+	@Test
+	public void testNumeralMappings() throws SerializationException {
+		BlockIdConfig config = createConfig();
+
+		assertSame(BlockState.AIR, config.get(0, 0));
+		assertEquals(BlockState.fromString("minecraft:stone"), config.get(1, 0));
+		assertEquals(BlockState.fromString("minecraft:granite"), config.get(1, 1));
+		assertEquals(BlockState.fromString("minecraft:oak_log[axis=y]"), config.get(17, 0));
+
+		// unknown meta falls back to meta 0, unknown ids are missing
+		assertSame(config.get(1, 0), config.get(1, 7));
+		assertSame(BlockState.MISSING, config.get(200, 3));
+		assertSame(BlockState.MISSING, config.get(5000, 0));
+	}
+
+	@Test
+	public void testIdMappings() throws SerializationException {
+		BlockIdConfig config = createConfig();
+
+		assertEquals(BlockState.fromString("somemod:block[variant=a]"), config.get("somemod:block", 3000, 0));
+		assertSame(config.get("somemod:block", 3000, 0), config.get("somemod:block", 3000, 5));
+
+		// numeral mappings are preferred, unknown ids create a default block-state
+		assertEquals(BlockState.fromString("minecraft:stone"), config.get("othermod:stone", 1, 0));
+		assertEquals(new BlockState("othermod:thing"), config.get("othermod:thing", 3001, 2));
+	}
+
+}
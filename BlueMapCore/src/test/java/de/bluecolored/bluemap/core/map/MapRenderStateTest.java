@@ -0,0 +1,126 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map;
+
+import com.flowpowered.math.vector.Vector2i;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MapRenderStateTest {
+
+	@Test
+	public void testChunkStatesArePersistedImmediately(@TempDir Path directory) throws IOException {
+		Path file = directory.resolve(".rstate.bin");
+
+		MapRenderState state = new MapRenderState(file, 4);
+		state.setChunkRenderState(new Vector2i(1, -2), 2, 1234L, 42L);
+		state.setChunkRenderState(new Vector2i(0, 0), 0, 5L, -7L);
+		state.setChunkRenderState(new Vector2i(1, -2), 3, 1235L, 43L);
+
+		// load a second instance while the first one is still open, like after a crash
+		MapRenderState loaded = new MapRenderState(file, 4);
+		loaded.load();
+
+		assertArrayEquals(new long[]{ -1, -1, 1234L, 1235L }, loaded.getChunkRenderTimes(new Vector2i(1, -2)));
+		assertArrayEquals(new long[]{ 0, 0, 42L, 43L }, loaded.getChunkFingerprints(new Vector2i(1, -2)));
+		assertArrayEquals(new long[]{ 5L, -1, -1, -1 }, loaded.getChunkRenderTimes(new Vector2i(0, 0)));
+		assertArrayEquals(new long[]{ -1, -1, -1, -1 }, loaded.getChunkRenderTimes(new Vector2i(3, 3)));
+
+		loaded.setRenderTime(new Vector2i(1, -2), 2000L);
+		assertArrayEquals(new long[]{ 2000L, 2000L, 2000L, 2000L }, loaded.getChunkRenderTimes(new Vector2i(1, -2)));
+		assertArrayEquals(new long[]{ 0, 0, 42L, 43L }, loaded.getChunkFingerprints(new Vector2i(1, -2)));
+
+		loaded.resetRegion(new Vector2i(1, -2));
+		assertArrayEquals(new long[]{ -1, -1, -1, -1 }, loaded.getChunkRenderTimes(new Vector2i(1, -2)));
+		assertArrayEquals(new long[]{ 0, 0, 0, 0 }, loaded.getChunkFingerprints(new Vector2i(1, -2)));
+
+		state.close();
+		loaded.close();
+	}
+
+	@Test
+	public void testDiscardsStateOfDifferentRegionSize(@TempDir Path directory) throws IOException {
+		Path file = directory.resolve(".rstate.bin");
+
+		MapRenderState state = new MapRenderState(file, 4);
+		state.setChunkRenderState(new Vector2i(0, 0), 1, 1234L, 42L);
+		state.close();
+
+		MapRenderState loaded = new MapRenderState(file, 16);
+		loaded.load();
+		assertEquals(-1, loaded.getChunkRenderTimes(new Vector2i(0, 0))[1]);
+		loaded.close();
+	}
+
+	@Test
+	public void testLoadLegacy(@TempDir Path directory) throws IOException {
+		File legacyFile = directory.resolve(".rstate").toFile();
+
+		// the region-granular format of older versions
+		try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(new FileOutputStream(legacyFile)))) {
+			out.writeInt(1);
+			out.writeInt(3);
+			out.writeInt(4);
+			out.writeLong(5678L);
+		}
+
+		MapRenderState state = new MapRenderState(directory.resolve(".rstate.bin"), 4);
+		state.load();
+		state.loadLegacy(legacyFile);
+
+		assertArrayEquals(new long[]{ 5678L, 5678L, 5678L, 5678L }, state.getChunkRenderTimes(new Vector2i(3, 4)));
+		assertArrayEquals(new long[]{ 0, 0, 0, 0 }, state.getChunkFingerprints(new Vector2i(3, 4)));
+		state.close();
+	}
+
+	@Test
+	public void testWriteAfterInterruptedWrite(@TempDir Path directory) throws IOException {
+		MapRenderState state = new MapRenderState(directory.resolve(".rstate.bin"), 4);
+		state.setChunkRenderState(new Vector2i(0, 0), 0, 1234L, 42L);
+
+		// an interrupted write closes the channel
+		Thread.currentThread().interrupt();
+		try {
+			assertThrows(ClosedByInterruptException.class, () -> state.setChunkRenderState(new Vector2i(0, 0), 1, 1L, 1L));
+		} finally {
+			Thread.interrupted();
+		}
+
+		state.setChunkRenderState(new Vector2i(0, 0), 2, 1235L, 43L);
+		assertArrayEquals(new long[]{ 1234L, -1, 1235L, -1 }, state.getChunkRenderTimes(new Vector2i(0, 0)));
+		state.close();
+	}
+
+}
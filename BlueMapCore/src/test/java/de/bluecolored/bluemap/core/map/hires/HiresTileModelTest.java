@@ -0,0 +1,110 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map.hires;
+
+import com.flowpowered.math.vector.Vector3f;
+import de.bluecolored.bluemap.core.threejs.BufferGeometry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class HiresTileModelTest {
+
+	// the top side of a block, with the texture mapped once over the whole side
+	private static final float[] TOP_POSITIONS = {0, 1, 0,  0, 1, 1,  1, 1, 1,  1, 1, 0};
+	private static final float[] TOP_UVS = {0, 0,  0, 1,  1, 1,  1, 0};
+	private static final float[] TOP_NORMALS = {0, 1, 0,  0, 1, 0};
+	private static final float[] NO_AO = {1, 1, 1, 1};
+
+	@Test
+	public void testWithoutGreedyMeshing() {
+		HiresTileModel model = new HiresTileModel();
+		addFloor(model);
+
+		assertEquals(7 * 2, model.toBufferGeometry().getFaceCount() / 3);
+	}
+
+	@Test
+	public void testGreedyMeshing() {
+		HiresTileModel model = new HiresTileModel(true);
+		addFloor(model);
+
+		BufferGeometry geometry = model.toBufferGeometry();
+
+		// the 3x2 floor is merged into one quad, the block with a different light is left alone
+		assertEquals(2 * 2, geometry.getFaceCount() / 3);
+		assertEquals(1, geometry.groups.length);
+
+		float[] positions = geometry.attributes.get("position").values();
+		float[] uvs = geometry.attributes.get("uv").values();
+		assertArrayEquals(new float[]{0, 1, 0,  0, 1, 2,  3, 1, 2}, copy(positions, 0, 9));
+		assertArrayEquals(new float[]{0, 1, 0,  3, 1, 2,  3, 1, 0}, copy(positions, 9, 9));
+		assertArrayEquals(new float[]{0, 0,  0, 2,  3, 2}, copy(uvs, 0, 6));
+		assertArrayEquals(new float[]{0, 0,  3, 2,  3, 0}, copy(uvs, 6, 6));
+
+		float[] blockLight = geometry.attributes.get("blocklight").values();
+		assertEquals(0f, blockLight[0]);
+		assertEquals(5f, blockLight[6]);
+	}
+
+	@Test
+	public void testNotMerged() {
+		HiresTileModel model = new HiresTileModel(true);
+
+		// moved by a fraction of a block
+		model.addQuad(0, TOP_POSITIONS, TOP_UVS, TOP_NORMALS, NO_AO, Vector3f.ONE, 0, 15, 0.5f, 0, 0);
+		model.addQuad(0, TOP_POSITIONS, TOP_UVS, TOP_NORMALS, NO_AO, Vector3f.ONE, 0, 15, 1.5f, 0, 0);
+
+		// only a part of the texture
+		float[] uvs = {0, 0,  0, 0.5f,  0.5f, 0.5f,  0.5f, 0};
+		model.addQuad(0, TOP_POSITIONS, uvs, TOP_NORMALS, NO_AO, Vector3f.ONE, 0, 15, 0, 0, 1);
+		model.addQuad(0, TOP_POSITIONS, uvs, TOP_NORMALS, NO_AO, Vector3f.ONE, 0, 15, 1, 0, 1);
+
+		// different ao on the corners
+		float[] ao = {1, 0.75f, 1, 1};
+		model.addQuad(0, TOP_POSITIONS, TOP_UVS, TOP_NORMALS, ao, Vector3f.ONE, 0, 15, 0, 0, 2);
+		model.addQuad(0, TOP_POSITIONS, TOP_UVS, TOP_NORMALS, ao, Vector3f.ONE, 0, 15, 1, 0, 2);
+
+		assertEquals(6 * 2, model.toBufferGeometry().getFaceCount() / 3);
+	}
+
+	private static void addFloor(HiresTileModel model) {
+		for (int x = 0; x < 3; x++) {
+			for (int z = 0; z < 2; z++) {
+				model.addQuad(3, TOP_POSITIONS, TOP_UVS, TOP_NORMALS, NO_AO, Vector3f.ONE, 0, 15, x, 0, z);
+			}
+		}
+
+		model.addQuad(3, TOP_POSITIONS, TOP_UVS, TOP_NORMALS, NO_AO, Vector3f.ONE, 5, 15, 3, 0, 0);
+	}
+
+	private static float[] copy(float[] array, int start, int length) {
+		float[] copy = new float[length];
+		System.arraycopy(array, start, copy, 0, length);
+		return copy;
+	}
+
+}
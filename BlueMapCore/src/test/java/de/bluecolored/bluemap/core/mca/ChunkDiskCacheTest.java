@@ -0,0 +1,87 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.mca;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChunkDiskCacheTest {
+
+	@Test
+	public void testReadWrite(@TempDir Path folder) throws IOException {
+		Path file = folder.resolve("r.0.0.bmc");
+
+		ChunkDiskCache cache = new ChunkDiskCache(file, 1);
+		assertNull(cache.read(5, 0x000201, 100));
+
+		cache.write(5, 0x000201, 100, new byte[]{ 1, 2, 3 });
+		cache.write(6, 0x000301, 100, new byte[]{ 4, 5 });
+		assertArrayEquals(new byte[]{ 1, 2, 3 }, cache.read(5, 0x000201, 100));
+		assertArrayEquals(new byte[]{ 4, 5 }, cache.read(6, 0x000301, 100));
+
+		// the chunk got saved again
+		assertNull(cache.read(5, 0x000201, 101));
+		assertNull(cache.read(5, 0x000401, 100));
+
+		cache.close();
+
+		ChunkDiskCache reopened = new ChunkDiskCache(file, 1);
+		assertArrayEquals(new byte[]{ 1, 2, 3 }, reopened.read(5, 0x000201, 100));
+		reopened.close();
+
+		ChunkDiskCache otherVersion = new ChunkDiskCache(file, 2);
+		assertNull(otherVersion.read(5, 0x000201, 100));
+		otherVersion.close();
+	}
+
+	@Test
+	public void testReadAfterInterruptedRead(@TempDir Path folder) throws IOException {
+		ChunkDiskCache cache = new ChunkDiskCache(folder.resolve("r.0.0.bmc"), 1);
+		try {
+			cache.write(5, 0x000201, 100, new byte[]{ 1, 2, 3 });
+
+			// an interrupted read closes the channel
+			Thread.currentThread().interrupt();
+			try {
+				assertThrows(ClosedByInterruptException.class, () -> cache.read(5, 0x000201, 100));
+			} finally {
+				Thread.interrupted();
+			}
+
+			assertArrayEquals(new byte[]{ 1, 2, 3 }, cache.read(5, 0x000201, 100));
+			cache.write(6, 0x000301, 100, new byte[]{ 4, 5 });
+			assertArrayEquals(new byte[]{ 4, 5 }, cache.read(6, 0x000301, 100));
+		} finally {
+			cache.close();
+		}
+	}
+
+}
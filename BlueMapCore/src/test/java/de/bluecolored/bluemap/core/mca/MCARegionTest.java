@@ -0,0 +1,122 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.mca;
+
+import de.bluecolored.bluemap.core.MinecraftVersion;
+import de.bluecolored.bluemap.core.world.Biome;
+import net.querz.nbt.CompoundTag;
+import net.querz.nbt.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MCARegionTest {
+
+	@Test
+	public void testLoadAfterInterruptedRead(@TempDir Path worldFolder) throws IOException {
+		writeLevelDat(worldFolder.resolve("level.dat").toFile());
+
+		Path regionFolder = Files.createDirectories(worldFolder.resolve("region"));
+		File regionFile = regionFolder.resolve("r.0.0.mca").toFile();
+		writeRegion(regionFile);
+
+		MCAWorld world = MCAWorld.load(worldFolder, UUID.randomUUID(), new MinecraftVersion(1, 16), null, null, id -> Biome.DEFAULT);
+		MCARegion region = new MCARegion(world, regionFile);
+		try {
+			assertTrue(region.loadChunk(0, 0, false).isGenerated());
+
+			// an interrupted read closes the shared channel
+			Thread.currentThread().interrupt();
+			try {
+				assertThrows(ClosedByInterruptException.class, () -> region.loadChunk(0, 0, false));
+			} finally {
+				Thread.interrupted();
+			}
+
+			// the next read on a (not interrupted) thread has to reopen the channel
+			assertTrue(region.loadChunk(0, 0, false).isGenerated());
+			assertEquals(1, region.listChunks(chunk -> 0).size());
+		} finally {
+			region.close();
+		}
+	}
+
+	private static void writeLevelDat(File file) throws IOException {
+		CompoundTag data = new CompoundTag();
+		data.putString("LevelName", "Test");
+		data.putInt("SpawnX", 0);
+		data.putInt("SpawnY", 64);
+		data.putInt("SpawnZ", 0);
+
+		CompoundTag level = new CompoundTag();
+		level.put("Data", data);
+
+		try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(new FileOutputStream(file)))) {
+			level.serialize(out, Tag.DEFAULT_MAX_DEPTH);
+		}
+	}
+
+	/**
+	 * Writes a region-file with one fully generated (but empty) chunk at 0, 0
+	 */
+	private static void writeRegion(File file) throws IOException {
+		CompoundTag levelData = new CompoundTag();
+		levelData.putInt("xPos", 0);
+		levelData.putInt("zPos", 0);
+		levelData.putString("Status", "full");
+
+		CompoundTag chunkTag = new CompoundTag();
+		chunkTag.putInt("DataVersion", 2586);
+		chunkTag.put("Level", levelData);
+
+		ByteArrayOutputStream chunkBytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(chunkBytes))) {
+			chunkTag.serialize(out, Tag.DEFAULT_MAX_DEPTH);
+		}
+		byte[] chunkData = chunkBytes.toByteArray();
+
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(3 * 4096);
+			raf.seek(0);
+			raf.writeInt((2 << 8) | 1); // location: sector 2, 1 sector long
+			raf.seek(4096);
+			raf.writeInt(1600000000); // timestamp
+			raf.seek(2 * 4096);
+			raf.writeInt(chunkData.length + 1);
+			raf.writeByte(2); // zlib
+			raf.write(chunkData);
+		}
+	}
+
+}
@@ -0,0 +1,229 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.mca;
+
+import com.flowpowered.math.vector.Vector3i;
+import de.bluecolored.bluemap.core.world.Biome;
+import net.querz.nbt.CompoundTag;
+import net.querz.nbt.ListTag;
+import net.querz.nbt.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SelectiveNBTReaderTest {
+
+	@Test
+	public void testSelectedPaths() throws IOException {
+		byte[] data = createChunkData(new Random(0));
+
+		CompoundTag tree = readTree(data);
+		CompoundTag selected = new SelectiveNBTReader("DataVersion", "Level.Status", "Level.Sections.Y", "Level.Sections.Palette").read(stream(data));
+
+		assertEquals(tree.getInt("DataVersion"), selected.getInt("DataVersion"));
+		assertEquals(2, selected.size());
+
+		CompoundTag treeLevel = tree.getCompoundTag("Level");
+		CompoundTag level = selected.getCompoundTag("Level");
+		assertEquals(2, level.size());
+		assertEquals("full", level.getString("Status"));
+		assertFalse(level.containsKey("Entities"));
+		assertFalse(level.containsKey("Biomes"));
+
+		ListTag<?> treeSections = treeLevel.getListTag("Sections");
+		ListTag<?> sections = level.getListTag("Sections");
+		assertEquals(treeSections.size(), sections.size());
+		for (int i = 0; i < sections.size(); i++) {
+			CompoundTag treeSection = (CompoundTag) treeSections.get(i);
+			CompoundTag section = (CompoundTag) sections.get(i);
+
+			assertEquals(treeSection.get("Y"), section.get("Y"));
+			assertEquals(treeSection.get("Palette"), section.get("Palette"));
+			assertFalse(section.containsKey("BlockStates"));
+		}
+	}
+
+	@Test
+	public void testUnselectedTagsAreSkipped() throws IOException {
+		byte[] data = createChunkData(new Random(1));
+
+		CompoundTag selected = new SelectiveNBTReader("Level.xPos", "Level.zPos").read(stream(data));
+		CompoundTag level = selected.getCompoundTag("Level");
+
+		assertEquals(1, selected.size());
+		assertEquals(2, level.size());
+		assertEquals(3, level.getInt("xPos"));
+		assertEquals(-7, level.getInt("zPos"));
+
+		// nothing selected still has to consume the whole stream
+		DataInputStream in = stream(data);
+		assertEquals(0, new SelectiveNBTReader().read(in).size());
+		assertEquals(-1, in.read());
+	}
+
+	@Test
+	public void testChunkMatchesTreeDecoding() throws IOException {
+		byte[] data = createChunkData(new Random(2));
+
+		ChunkAnvil116 treeChunk = new ChunkAnvil116(readTree(data), false, false, id -> Biome.DEFAULT);
+
+		CompoundTag selected = new SelectiveNBTReader(ChunkAnvil116.NBT_PATHS).read(stream(data));
+		selected.putInt("DataVersion", readTree(data).getInt("DataVersion"));
+		ChunkAnvil116 chunk = new ChunkAnvil116(selected, false, true, id -> Biome.DEFAULT);
+
+		assertEquals(treeChunk.isGenerated(), chunk.isGenerated());
+		assertEquals(treeChunk.getMinY(0, 0), chunk.getMinY(0, 0));
+		assertEquals(treeChunk.getMaxY(0, 0), chunk.getMaxY(0, 0));
+
+		for (int y = -16; y < 64; y++) {
+			for (int z = 0; z < 16; z++) {
+				for (int x = 0; x < 16; x++) {
+					Vector3i pos = new Vector3i(48 + x, y, -112 + z);
+					assertEquals(treeChunk.getBlockState(pos), chunk.getBlockState(pos));
+					assertEquals(treeChunk.getLightData(pos).getSkyLight(), chunk.getLightData(pos).getSkyLight());
+					assertEquals(treeChunk.getLightData(pos).getBlockLight(), chunk.getLightData(pos).getBlockLight());
+				}
+			}
+		}
+	}
+
+	private static CompoundTag readTree(byte[] data) throws IOException {
+		return (CompoundTag) Tag.deserialize(stream(data), Tag.DEFAULT_MAX_DEPTH);
+	}
+
+	private static DataInputStream stream(byte[] data) {
+		return new DataInputStream(new ByteArrayInputStream(data));
+	}
+
+	/**
+	 * Writes a 1.16 chunk with some entity and tile-entity data by hand, so that every tag-type has to be skipped.
+	 * The DataVersion is written last, to make sure the reader does not depend on the order of the tags.
+	 */
+	private static byte[] createChunkData(Random random) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		out.writeByte(10); out.writeUTF("");
+
+		out.writeByte(10); out.writeUTF("Level");
+		out.writeByte(3); out.writeUTF("xPos"); out.writeInt(3);
+		out.writeByte(3); out.writeUTF("zPos"); out.writeInt(-7);
+		out.writeByte(4); out.writeUTF("LastUpdate"); out.writeLong(random.nextLong());
+		out.writeByte(8); out.writeUTF("Status"); out.writeUTF("full");
+
+		out.writeByte(10); out.writeUTF("Heightmaps");
+		out.writeByte(12); out.writeUTF("WORLD_SURFACE"); out.writeInt(37);
+		for (int i = 0; i < 37; i++) out.writeLong(random.nextLong());
+		out.writeByte(0);
+
+		out.writeByte(9); out.writeUTF("Entities"); out.writeByte(10); out.writeInt(3);
+		for (int i = 0; i < 3; i++) {
+			out.writeByte(8); out.writeUTF("id"); out.writeUTF("minecraft:zombie");
+			out.writeByte(9); out.writeUTF("Pos"); out.writeByte(6); out.writeInt(3);
+			out.writeDouble(random.nextDouble()); out.writeDouble(random.nextDouble()); out.writeDouble(random.nextDouble());
+			out.writeByte(9); out.writeUTF("Rotation"); out.writeByte(5); out.writeInt(2);
+			out.writeFloat(random.nextFloat()); out.writeFloat(random.nextFloat());
+			out.writeByte(2); out.writeUTF("Air"); out.writeShort(300);
+			out.writeByte(1); out.writeUTF("OnGround"); out.writeByte(1);
+			out.writeByte(11); out.writeUTF("UUID"); out.writeInt(4);
+			for (int j = 0; j < 4; j++) out.writeInt(random.nextInt());
+			out.writeByte(9); out.writeUTF("Passengers"); out.writeByte(9); out.writeInt(1);
+			out.writeByte(0); out.writeInt(0);
+			out.writeByte(0);
+		}
+
+		out.writeByte(9); out.writeUTF("TileEntities"); out.writeByte(0); out.writeInt(0);
+
+		out.writeByte(11); out.writeUTF("Biomes"); out.writeInt(1024);
+		for (int i = 0; i < 1024; i++) out.writeInt(random.nextInt(10));
+
+		out.writeByte(9); out.writeUTF("Sections"); out.writeByte(10); out.writeInt(5);
+
+		// section with only light data
+		out.writeByte(1); out.writeUTF("Y"); out.writeByte(-1);
+		writeNibbleArray(out, "SkyLight", random);
+		out.writeByte(0);
+
+		for (int y = 0; y < 4; y++) {
+			String[] palette = y == 3 ?
+					new String[] { "minecraft:air" } :
+					new String[] { "minecraft:air", "minecraft:stone", "minecraft:dirt", "minecraft:oak_log" };
+
+			out.writeByte(1); out.writeUTF("Y"); out.writeByte(y);
+			out.writeByte(9); out.writeUTF("Palette"); out.writeByte(10); out.writeInt(palette.length);
+			for (String id : palette) {
+				out.writeByte(8); out.writeUTF("Name"); out.writeUTF(id);
+				if (id.equals("minecraft:oak_log")) {
+					out.writeByte(10); out.writeUTF("Properties");
+					out.writeByte(8); out.writeUTF("axis"); out.writeUTF("x");
+					out.writeByte(0);
+				}
+				out.writeByte(0);
+			}
+
+			// 4 bits per block, 16 blocks per long
+			out.writeByte(12); out.writeUTF("BlockStates"); out.writeInt(256);
+			for (int i = 0; i < 256; i++) {
+				long value = 0;
+				for (int j = 0; j < 16; j++) value |= (long) random.nextInt(palette.length) << (j * 4);
+				out.writeLong(value);
+			}
+
+			writeNibbleArray(out, "BlockLight", random);
+			writeNibbleArray(out, "SkyLight", random);
+			out.writeByte(0);
+		}
+
+		out.writeByte(10); out.writeUTF("Structures");
+		out.writeByte(10); out.writeUTF("References");
+		out.writeByte(0);
+		out.writeByte(0);
+
+		out.writeByte(0); // end of Level
+
+		out.writeByte(3); out.writeUTF("DataVersion"); out.writeInt(2586);
+
+		out.writeByte(0); // end of root
+		out.flush();
+
+		return bytes.toByteArray();
+	}
+
+	private static void writeNibbleArray(DataOutputStream out, String key, Random random) throws IOException {
+		byte[] data = new byte[2048];
+		random.nextBytes(data);
+
+		out.writeByte(7); out.writeUTF(key); out.writeInt(data.length);
+		out.write(data);
+	}
+
+}
@@ -0,0 +1,130 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.model;
+
+import com.flowpowered.math.vector.Vector2f;
+import com.flowpowered.math.vector.Vector3f;
+import de.bluecolored.bluemap.core.threejs.BufferGeometry;
+import de.bluecolored.bluemap.core.threejs.MaterialGroup;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ModelTest {
+
+	@Test
+	public void testEmptyModel() {
+		BufferGeometry geometry = new Model<>().toBufferGeometry();
+
+		assertEquals(1, geometry.groups.length);
+		assertGroup(geometry.groups[0], -1, 0, 0);
+		assertEquals(0, geometry.getFaceCount());
+	}
+
+	@Test
+	public void testGroupsByMaterial() {
+		Model<Face> model = new Model<>();
+		model.addFace(createFace(0, 3));
+		model.addFace(createFace(1, -1));
+		model.addFace(createFace(2, 3));
+		model.addFace(createFace(3, 0));
+		model.addFace(createFace(4, -1));
+
+		BufferGeometry geometry = model.toBufferGeometry();
+
+		assertEquals(3, geometry.groups.length);
+		assertGroup(geometry.groups[0], -1, 0, 6);
+		assertGroup(geometry.groups[1], 0, 6, 3);
+		assertGroup(geometry.groups[2], 3, 9, 6);
+
+		// faces of the same material keep their order
+		assertArrayEquals(new float[]{1, 4, 3, 0, 2}, faceIds(geometry));
+	}
+
+	@Test
+	public void testStableOrder() {
+		Random random = new Random(42);
+
+		// a small range of materials, and one that is too large to be counted directly
+		for (int materialRange : new int[]{ 300, Integer.MAX_VALUE }) {
+			Model<Face> model = new Model<>();
+			List<Face> expected = new ArrayList<>();
+			for (int i = 0; i < 1000; i++) {
+				int materialIndex = random.nextInt(10) * (materialRange / 10) - 1;
+				Face face = createFace(i, materialIndex);
+				model.addFace(face);
+				expected.add(face);
+			}
+			expected.sort(Comparator.comparingInt(Face::getMaterialIndex));
+
+			float[] expectedIds = new float[expected.size()];
+			for (int i = 0; i < expectedIds.length; i++) expectedIds[i] = expected.get(i).getP1().getX();
+
+			BufferGeometry geometry = model.toBufferGeometry();
+			assertArrayEquals(expectedIds, faceIds(geometry));
+
+			int start = 0;
+			for (MaterialGroup group : geometry.groups) {
+				assertEquals(start, group.getStart());
+				for (int vertex = group.getStart(); vertex < group.getStart() + group.getCount(); vertex += 3) {
+					assertEquals(group.getMaterialIndex(), expected.get(vertex / 3).getMaterialIndex());
+				}
+				start += group.getCount();
+			}
+			assertEquals(expected.size() * 3, start);
+		}
+	}
+
+	private static void assertGroup(MaterialGroup group, int materialIndex, int start, int count) {
+		assertEquals(materialIndex, group.getMaterialIndex());
+		assertEquals(start, group.getStart());
+		assertEquals(count, group.getCount());
+	}
+
+	/**
+	 * The id of each face of the geometry (stored in the x-coordinate of its first point)
+	 */
+	private static float[] faceIds(BufferGeometry geometry) {
+		float[] positions = geometry.attributes.get("position").values();
+		float[] ids = new float[positions.length / 9];
+		for (int i = 0; i < ids.length; i++) ids[i] = positions[i * 9];
+		return ids;
+	}
+
+	private static Face createFace(int id, int materialIndex) {
+		return new Face(
+				new Vector3f(id, 0, 0), new Vector3f(id, 1, 0), new Vector3f(id, 0, 1),
+				Vector2f.ZERO, Vector2f.ONE, Vector2f.ZERO,
+				materialIndex
+		);
+	}
+
+}
@@ -0,0 +1,100 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.resourcepack;
+
+import com.flowpowered.math.vector.Vector3f;
+import com.flowpowered.math.vector.Vector3i;
+import com.flowpowered.math.vector.Vector4f;
+import de.bluecolored.bluemap.core.world.*;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.lang.reflect.Proxy;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BiomeColorFieldTest {
+
+	private static final Biome[] BIOMES = {
+			new Biome("test:cold", 0, 0.3f, 0.1f, new Vector3f(0.1f, 0.2f, 0.9f)),
+			new Biome("test:warm", 1, 0.8f, 0.9f, new Vector3f(0.2f, 0.6f, 0.5f), new Vector4f(0.5f, 0.4f, 0.1f, 0.5f), new Vector4f(0f, 0f, 0f, 0f)),
+			new Biome("test:dry", 2, 0f, 1f, new Vector3f(0.3f, 0.3f, 0.3f))
+	};
+
+	private static World createWorld() {
+		return (World) Proxy.newProxyInstance(World.class.getClassLoader(), new Class<?>[]{ World.class }, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "getBiome":
+					int x = (int) args[0], y = (int) args[1], z = (int) args[2];
+					return BIOMES[Math.floorMod((x >> 2) * 7 + (z >> 1) * 3 + (y >> 3), BIOMES.length)];
+				case "getSeaLevel":
+					return 63;
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "equals":
+					return proxy == args[0];
+				default:
+					throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+
+	private static BufferedImage createColorMap() {
+		BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
+		for (int x = 0; x < 16; x++) {
+			for (int y = 0; y < 16; y++) {
+				image.setRGB(x, y, 0xFF000000 | (x * 16) << 16 | (y * 16) << 8 | ((x + y) * 8));
+			}
+		}
+		return image;
+	}
+
+	private static void assertColorEquals(Vector3f expected, Vector3f actual) {
+		assertEquals(expected.getX(), actual.getX(), 1e-5);
+		assertEquals(expected.getY(), actual.getY(), 1e-5);
+		assertEquals(expected.getZ(), actual.getZ(), 1e-5);
+	}
+
+	@Test
+	public void testFieldMatchesAverages() {
+		BlockColorCalculator calculator = new BlockColorCalculator(createColorMap(), createColorMap());
+		World world = createWorld();
+
+		BiomeColorField field = calculator.createColorField();
+		field.load(world, -5, 60, 3, 12, 70, 18);
+
+		for (int x = -6; x <= 13; x++) {
+			for (int z = 2; z <= 19; z++) {
+				for (int y = 59; y <= 71; y += 3) {
+					Block block = new Block(world, BlockState.AIR, LightData.ZERO, Biome.DEFAULT, BlockProperties.TRANSPARENT, new Vector3i(x, y, z));
+					assertColorEquals(calculator.getGrassAverageColor(block), field.getGrassColor(block));
+					assertColorEquals(calculator.getFoliageAverageColor(block), field.getFoliageColor(block));
+					assertColorEquals(calculator.getWaterAverageColor(block), field.getWaterColor(block));
+				}
+			}
+		}
+	}
+
+}
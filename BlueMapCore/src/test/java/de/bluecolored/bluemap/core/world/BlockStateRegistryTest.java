@@ -0,0 +1,103 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.world;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BlockStateRegistryTest {
+
+	@Test
+	public void testStaticStatesAreInterned() {
+		assertSame(BlockState.AIR, BlockStateRegistry.intern(new BlockState("minecraft:air")));
+		assertSame(BlockState.MISSING, BlockStateRegistry.intern(BlockState.fromString("bluemap:missing[]")));
+		assertSame(BlockState.AIR, BlockStateRegistry.get(BlockState.AIR.getStateId()));
+	}
+
+	@Test
+	public void testIntern() {
+		Map<String, String> properties = new HashMap<>();
+		properties.put("facing", "north");
+		properties.put("half", "top");
+
+		BlockState a = BlockStateRegistry.intern(new BlockState("stairs_test", properties));
+		BlockState b = BlockStateRegistry.intern(BlockState.fromString("minecraft:stairs_test[half=top,facing=north]"));
+		BlockState c = BlockStateRegistry.intern(BlockState.fromString("minecraft:stairs_test[half=bottom,facing=north]"));
+
+		assertSame(a, b);
+		assertNotSame(a, c);
+		assertTrue(a.isInterned());
+		assertEquals(a.getStateId(), b.getStateId());
+		assertNotEquals(a.getStateId(), c.getStateId());
+		assertNotEquals(a, c);
+
+		// not interned instances still get the id of the equal interned state
+		BlockState notInterned = a.with("half", "bottom");
+		assertFalse(notInterned.isInterned());
+		assertEquals(c.getStateId(), notInterned.getStateId());
+		assertEquals(c, notInterned);
+	}
+
+	@Test
+	public void testIdsAreDense() {
+		int start = BlockStateRegistry.size();
+
+		for (int i = 0; i < 2000; i++) {
+			BlockState state = BlockStateRegistry.intern(new BlockState("dense_test_" + i));
+			assertEquals(start + i, state.getStateId());
+			assertSame(state, BlockStateRegistry.get(state.getStateId()));
+		}
+
+		assertEquals(start + 2000, BlockStateRegistry.size());
+	}
+
+	@Test
+	public void testIdMapLoadsMissingValuesOnce() {
+		AtomicInteger loads = new AtomicInteger();
+		BlockStateIdMap<String> map = new BlockStateIdMap<>(state -> {
+			loads.incrementAndGet();
+			return state.getFullId().endsWith("_missing") ? null : state.getFullId();
+		});
+
+		BlockState present = BlockStateRegistry.intern(new BlockState("idmap_test_present"));
+		BlockState missing = BlockStateRegistry.intern(new BlockState("idmap_test_missing"));
+
+		for (int i = 0; i < 3; i++) {
+			assertEquals("minecraft:idmap_test_present", map.get(present));
+			assertNull(map.get(missing));
+		}
+		assertEquals(2, loads.get());
+
+		map.clear();
+		assertNull(map.get(missing));
+		assertEquals(3, loads.get());
+	}
+
+}
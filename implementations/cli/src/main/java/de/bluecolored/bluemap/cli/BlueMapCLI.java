@@ -144,7 +144,9 @@ public void run() {
 			}
 
 			Logger.global.logInfo("Saving...");
-			saveTask.run();
+			for (BmMap map : maps.values()) {
+				map.close();
+			}
 
 			Logger.global.logInfo("Stopped.");
 		};